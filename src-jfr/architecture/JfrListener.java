@@ -0,0 +1,134 @@
+package architecture;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This listener commits the events of the simulator (see SimulatorEvents) as Flight Recorder events,
+ * so they are seen in the same recording as the garbage collection, the cpu and the other threads.
+ *
+ * It uses jdk.jfr, so it is kept in the src-jfr source folder and built only by Java 11 or later, over the
+ * classes of src (javac --release 11 -cp bin -d bin src-jfr/architecture/*.java). SimulatorEvents loads it
+ * by its name (see SimulatorEvents.createJfrListener()), so the rest of the simulator still runs in Java 7.
+ *
+ * A run is recorded from its start to its halt. The loads and the assembly phases are only known when they
+ * finish, so their events are committed then, with their duration as a field.
+ */
+public class JfrListener implements SimulatorEvents.Listener {
+
+	@Name("simulator.ProgramLoad")
+	@Label("Program Load")
+	@Category("Simulator")
+	static class ProgramLoadEvent extends Event {
+		@Label("File")
+		String filename;
+		@Label("Words")
+		int words;
+		@Label("Load Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long loadDuration;
+	}
+
+	@Name("simulator.Run")
+	@Label("Program Run")
+	@Category("Simulator")
+	static class RunEvent extends Event {
+		@Label("Architecture")
+		int arch;
+		@Label("Instructions")
+		long instructions;
+	}
+
+	@Name("simulator.AssemblyPhase")
+	@Label("Assembly Phase")
+	@Category("Simulator")
+	static class AssemblyPhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Phase Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long phaseDuration;
+	}
+
+	@Name("simulator.InstructionSample")
+	@Label("Instruction Sample")
+	@Category("Simulator")
+	static class InstructionSampleEvent extends Event {
+		@Label("Architecture")
+		int arch;
+		@Label("PC")
+		int pc;
+		@Label("Opcode")
+		int opcode;
+		@Label("Command")
+		String command;
+	}
+
+	private Map<Architecture, RunEvent> runs; //the runs started and not halted yet
+
+	public JfrListener() {
+		runs = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void programLoaded(String filename, int words, long start, long duration) {
+		ProgramLoadEvent event = new ProgramLoadEvent();
+		if (!event.shouldCommit())
+			return;
+		event.filename = filename;
+		event.words = words;
+		event.loadDuration = duration;
+		event.commit();
+	}
+
+	@Override
+	public void runStarted(Architecture arch, long start) {
+		RunEvent event = new RunEvent();
+		if (!event.isEnabled())
+			return;
+		event.arch = System.identityHashCode(arch);
+		event.begin();
+		runs.put(arch, event);
+	}
+
+	@Override
+	public void runHalted(Architecture arch, long start, long duration, long instructions) {
+		RunEvent event = runs.remove(arch);
+		if (event == null) //the recording was off when the run started
+			return;
+		event.end();
+		event.instructions = instructions;
+		if (event.shouldCommit())
+			event.commit();
+	}
+
+	@Override
+	public void assemblyPhase(String phase, long start, long duration) {
+		AssemblyPhaseEvent event = new AssemblyPhaseEvent();
+		if (!event.shouldCommit())
+			return;
+		event.phase = phase;
+		event.phaseDuration = duration;
+		event.commit();
+	}
+
+	@Override
+	public void instructionSampled(Architecture arch, int pc, int opcode) {
+		InstructionSampleEvent event = new InstructionSampleEvent();
+		if (!event.shouldCommit())
+			return;
+		event.arch = System.identityHashCode(arch);
+		event.pc = pc;
+		event.opcode = opcode;
+		if ((opcode >= 0)&&(opcode < arch.getCommandsList().size()))
+			event.command = arch.getCommandsList().get(opcode);
+		event.commit();
+	}
+
+}
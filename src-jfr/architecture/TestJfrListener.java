@@ -0,0 +1,76 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class TestJfrListener {
+
+	//0: jz 4 (not taken), 2: jmp 6, 4: -1, 6: jmp 4
+	private static final int PROGRAM[] = {18, 4, 16, 6, -1, -1, 16, 4};
+
+	/**
+	 * This method returns the recorded events of a type
+	 */
+	private List<RecordedEvent> events(List<RecordedEvent> all, String name) {
+		List<RecordedEvent> events = new ArrayList<>();
+		for (RecordedEvent event : all)
+			if (event.getEventType().getName().equals(name))
+				events.add(event);
+		return events;
+	}
+
+	@Test
+	public void testRecording() throws IOException {
+		SimulatorEvents.Listener listener = SimulatorEvents.createJfrListener();
+		assertTrue(listener instanceof JfrListener);
+		Path file = Files.createTempFile("simulator", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("simulator.Run");
+			recording.enable("simulator.AssemblyPhase");
+			recording.enable("simulator.InstructionSample");
+			recording.start();
+			SimulatorEvents.setListener(listener, 0);
+			try {
+				Architecture arch = new Architecture(false, true);
+				arch.reset(PROGRAM);
+				arch.controlUnitEexec();
+				SimulatorEvents.assemblyPhase("parse", SimulatorEvents.begin());
+				long start = SimulatorEvents.runStarted(arch); //sampled while it stays in its halt
+				SimulatorEvents.sample();
+				SimulatorEvents.runHalted(arch, start, 0);
+			} finally {
+				SimulatorEvents.setListener(null, 0);
+			}
+			recording.stop();
+			recording.dump(file);
+		}
+		try {
+			List<RecordedEvent> all = RecordingFile.readAllEvents(file);
+			List<RecordedEvent> runs = events(all, "simulator.Run");
+			assertEquals(2, runs.size());
+			assertEquals(3, runs.get(0).getLong("instructions"));
+			assertFalse(runs.get(0).getDuration().isNegative());
+			List<RecordedEvent> phases = events(all, "simulator.AssemblyPhase");
+			assertEquals(1, phases.size());
+			assertEquals("parse", phases.get(0).getString("phase"));
+			List<RecordedEvent> samples = events(all, "simulator.InstructionSample");
+			assertEquals(1, samples.size());
+			assertEquals(4, samples.get(0).getInt("pc"));
+			assertEquals(-1, samples.get(0).getInt("opcode"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+}
@@ -1,24 +1,49 @@
 package architecture;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
+import java.util.Locale;
 import java.util.Scanner;
 
 import components.Bus;
+import components.Counters;
 import components.Demux;
 import components.Memory;
+import components.OffHeapMemory;
+import components.SparseMemory;
 import components.Register;
 import components.Ula;
 
 public class Architecture {
 	
+	public static final int DEFAULT_MEMORY_SIZE = 128;
+	
+	//kinds of memory
+	public static final int HEAP_MEMORY = 0; //one single array (see Memory)
+	public static final int OFF_HEAP_MEMORY = 1; //out of the java heap (see OffHeapMemory)
+	public static final int SPARSE_MEMORY = 2; //pages allocated in the first store (see SparseMemory)
+
+	/**
+	 * The microsteps of the microprogram of each command, measured only once (see measureMicrosteps())
+	 */
+	private static class Microsteps {
+		static final int TABLE[] = measureMicrosteps();
+	}
+
 	private boolean simulation; //this boolean indicates if the execution is done in simulation mode.
 								//simulation mode shows the components' status after each instruction
 	
+	private boolean fastPath; //this boolean indicates if the execution is done by the functional interpreter
+							  //instead of the microprograms (it has no effect in simulation mode)
+	private FastInterpreter fastInterpreter;
+	private long instructions; //amount of commands executed by the microprograms in the last execution
+	private int currentCommand; //the command decoded for the microprograms (see getCurrentCommand())
+	private Scanner input; //used by the simulation mode to wait for <Enter>. Each instance has its own
+	
 	
 	private boolean halt;
 	//bus
@@ -28,6 +53,7 @@ public class Architecture {
 	private Memory memory;
 	private Memory statusMemory;
 	private int memorySize;
+	private int memoryType; //HEAP_MEMORY, OFF_HEAP_MEMORY or SPARSE_MEMORY
 	private Register PC;
 	private Register IR;
 	
@@ -46,6 +72,10 @@ public class Architecture {
 	//registers
 	private ArrayList<String> commandsList;
 	private ArrayList<Register> registersList;
+	private MethodHandle microprograms[]; //dispatch table: the microprogram of each command, indexed by the command number
+	private Counters counters; //operations of the components by command, null if they are not counted
+	private Heatmap heatmap; //executions and cycles of each address, null if they are not counted
+	private RunControl control; //watches the runs, null if there is none
 	
 	
 
@@ -53,6 +83,16 @@ public class Architecture {
 	 * Instanciates all components in this architecture
 	 */
 	private void componentsInstances() {
+		componentsInstances(DEFAULT_MEMORY_SIZE, HEAP_MEMORY, null);
+	}
+
+	/**
+	 * Instanciates all components in this architecture.
+	 * @param memorySize the amount of positions in the memory
+	 * @param memoryType HEAP_MEMORY, OFF_HEAP_MEMORY or SPARSE_MEMORY
+	 * @param parent if not null, the memory is a copy-on-write fork of the parent's memory
+	 */
+	private void componentsInstances(int memorySize, int memoryType, Architecture parent) {
 		//don't forget the instantiation order
 		//buses -> registers -> ula -> memory
 		
@@ -72,11 +112,19 @@ public class Architecture {
 		Flags = new Register(2, intbus);
 
 		fillRegistersList();
-		ula = new Ula(null, intbus);
+		ula = new Ula(extbus, intbus);
 
 		statusMemory = new Memory(2, extbus);
-		memorySize = 128;
-		memory = new Memory(memorySize, extbus);
+		this.memorySize = memorySize;
+		this.memoryType = memoryType;
+		if (parent != null) //each kind of memory forks itself
+			memory = parent.memory.fork(extbus);
+		else if (memoryType == OFF_HEAP_MEMORY)
+			memory = new OffHeapMemory(memorySize, extbus);
+		else if (memoryType == SPARSE_MEMORY)
+			memory = new SparseMemory(memorySize, extbus);
+		else
+			memory = new Memory(memorySize, extbus);
 		demux = new Demux(); //this bus is used only for multiple register operations
 
 		
@@ -119,6 +167,214 @@ public class Architecture {
 		simulation = sim;
 	}
 
+	/**
+	 * Constructor that also chooses the execution mode.
+	 * @param sim simulation mode on or off
+	 * @param fastPath if true, the programs are executed by the functional interpreter
+	 * instead of the microprograms
+	 */
+	public Architecture(boolean sim, boolean fastPath) {
+		this(sim);
+		setFastPath(fastPath);
+	}
+
+	/**
+	 * Constructor that also chooses the memory.
+	 * Variables are placed from the top of the memory (see Assembler), so programs must be
+	 * assembled for the same memory size
+	 * @param sim simulation mode on or off
+	 * @param fastPath if true, the programs are executed by the functional interpreter
+	 * @param memorySize the amount of positions in the memory
+	 * @param memoryType HEAP_MEMORY (one single array), OFF_HEAP_MEMORY (out of the java heap,
+	 * see OffHeapMemory) or SPARSE_MEMORY (only the pages stored into are allocated, see SparseMemory)
+	 */
+	public Architecture(boolean sim, boolean fastPath, int memorySize, int memoryType) {
+		componentsInstances(memorySize, memoryType, null);
+		simulation = sim;
+		setFastPath(fastPath);
+	}
+
+	/**
+	 * This constructor builds a fork of another architecture: see fork()
+	 * @param parent
+	 */
+	private Architecture(Architecture parent) {
+		componentsInstances(parent.memorySize, parent.memoryType, parent);
+		simulation = parent.simulation;
+		setFastPath(parent.fastPath);
+		for (int i=0;i<registersList.size();i++)
+			registersList.get(i).setData(parent.registersList.get(i).getData());
+		Flags.setBit(0, parent.Flags.getBit(0));
+		Flags.setBit(1, parent.Flags.getBit(1));
+		ula.setData(0, parent.ula.getData(0));
+		ula.setData(1, parent.ula.getData(1));
+		System.arraycopy(parent.statusMemory.getDataList(), 0, statusMemory.getDataList(), 0, 2);
+		statusMemory.setStorePosition(parent.statusMemory.getStorePosition());
+	}
+
+	/**
+	 * This method builds a new architecture in the same state of this one.
+	 * Heap memories share their directory of pages until one of them stores into a page (copy-on-write),
+	 * so forking does not depend on the size of the memory (see Memory.fork()). Off-heap and sparse
+	 * memories copy the chunks or pages already stored into.
+	 * Both architectures can run independently after the fork.
+	 * Both execution modes work over the pages, so only the pages stored into are ever copied
+	 * @return
+	 */
+	public Architecture fork() {
+		return new Architecture(this);
+	}
+
+	public boolean isFastPath() {
+		return fastPath;
+	}
+
+	/**
+	 * This method returns the functional interpreter, or null if the fast path was never turned on
+	 * @return
+	 */
+	public FastInterpreter getFastInterpreter() {
+		return fastInterpreter;
+	}
+
+	/**
+	 * This method turns the counting of the executions on or off. While counting, the microprograms count
+	 * the operations of the components (bus transfers, register reads and stores, memory reads and stores
+	 * and ula operations) of each command, and the fast interpreter counts the executions of each command.
+	 * A CPI report (see getCpiReport()) is printed each time the machine halts
+	 * @param counting
+	 */
+	public void setCounting(boolean counting) {
+		if (counting && (counters == null))
+			counters = new Counters(commandsList.size() + 1); //the last row keeps the fetch of the command that halts
+		else if (!counting)
+			counters = null;
+		for (Bus bus : new Bus[] {intbus, extbus})
+			bus.setCounters(counters);
+		for (Register register : registersList)
+			register.setCounters(counters);
+		memory.setCounters(counters);
+		statusMemory.setCounters(counters);
+		ula.setCounters(counters);
+		if (fastInterpreter != null)
+			fastInterpreter.setCounting(counting);
+	}
+
+	public boolean isCounting() {
+		return counters != null;
+	}
+
+	/**
+	 * This method returns the operations of the components counted in the last execution by the microprograms.
+	 * The row of each command is its number, and the last row keeps the fetch of the command that halted the machine
+	 * @return null if the counting is off
+	 */
+	public Counters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * This method turns the heatmap on or off. While it is on, each execution counts the commands
+	 * executed in each address and their cycles, in both execution modes (see Heatmap)
+	 * @param on
+	 */
+	public void setHeatmap(boolean on) {
+		if (on && (heatmap == null))
+			heatmap = new Heatmap(memorySize);
+		else if (!on)
+			heatmap = null;
+		if (fastInterpreter != null)
+			fastInterpreter.setHeatmap(heatmap);
+	}
+
+	/**
+	 * This method returns the heatmap of the last execution
+	 * @return null if the heatmap is off
+	 */
+	public Heatmap getHeatmap() {
+		return heatmap;
+	}
+
+	public RunControl getRunControl() {
+		return control;
+	}
+
+	/**
+	 * This method sets the control that watches the runs of both execution modes and may pause them
+	 * (null removes it). See RunControl
+	 * @param control
+	 */
+	public void setRunControl(RunControl control) {
+		this.control = control;
+	}
+
+	/**
+	 * This method brings the architecture back to the state it had just after being built,
+	 * without allocating anything, and stores a new program into the memory.
+	 * The execution mode (simulation and fast path) is kept
+	 * @param programImage the program, stored from the position 0 (the remaining positions are cleared)
+	 */
+	public void reset(int programImage[]) {
+		intbus.reset();
+		extbus.reset();
+		for (Register r : registersList)
+			r.reset();
+		ula.reset();
+		demux.setValue(0);
+		statusMemory.reset();
+		memory.load(programImage);
+		halt = false;
+		instructions = 0;
+	}
+
+	/**
+	 * This method captures the whole state of the machine: the registers, the flags bits,
+	 * both ula registers, the memory, the status memory and the pending stores
+	 * @return an immutable snapshot, that can be restored into any architecture with the same memory size
+	 */
+	public Snapshot snapshot() {
+		int state[] = new int[Snapshot.sizeOf(memorySize)];
+		for (int i=0;i<registersList.size();i++)
+			state[Snapshot.REGISTERS + i] = registersList.get(i).getData();
+		state[Snapshot.BIT_ZERO] = Flags.getBit(0);
+		state[Snapshot.BIT_NEGATIVE] = Flags.getBit(1);
+		state[Snapshot.ULA_REG0] = ula.getData(0);
+		state[Snapshot.ULA_REG1] = ula.getData(1);
+		state[Snapshot.STORE_POSITION] = memory.getStorePosition();
+		state[Snapshot.STATUS_STORE_POSITION] = statusMemory.getStorePosition();
+		System.arraycopy(statusMemory.getDataList(), 0, state, Snapshot.STATUS_MEMORY, 2);
+		memory.copyTo(state, Snapshot.MEMORY);
+		return new Snapshot(state);
+	}
+
+	/**
+	 * This method brings the machine back to the state captured in a snapshot.
+	 * The memory is restored by one single array copy
+	 * @param snapshot
+	 */
+	public void restore(Snapshot snapshot) {
+		int state[] = snapshot.state;
+		if (snapshot.getMemorySize() != memorySize)
+			throw new IllegalArgumentException("The snapshot has "+snapshot.getMemorySize()+" memory positions, but the memory has "+memorySize);
+		for (int i=0;i<registersList.size();i++)
+			registersList.get(i).setData(state[Snapshot.REGISTERS + i]);
+		Flags.setBit(0, state[Snapshot.BIT_ZERO]);
+		Flags.setBit(1, state[Snapshot.BIT_NEGATIVE]);
+		ula.setData(0, state[Snapshot.ULA_REG0]);
+		ula.setData(1, state[Snapshot.ULA_REG1]);
+		memory.setStorePosition(state[Snapshot.STORE_POSITION]);
+		statusMemory.setStorePosition(state[Snapshot.STATUS_STORE_POSITION]);
+		System.arraycopy(state, Snapshot.STATUS_MEMORY, statusMemory.getDataList(), 0, 2);
+		memory.copyFrom(state, Snapshot.MEMORY);
+		halt = false;
+	}
+
+	public void setFastPath(boolean fastPath) {
+		this.fastPath = fastPath;
+		if (fastPath && fastInterpreter == null)
+			fastInterpreter = new FastInterpreter(this);
+	}
+
 
 
 	//getters
@@ -232,6 +488,79 @@ public class Architecture {
 		commandsList.add("jneq"); //20
 		commandsList.add("jgt"); //21
 		commandsList.add("jlw"); //22
+		
+		fillMicroprogramsTable();
+	}
+
+	/**
+	 * This method builds the dispatch table used in the decode/execute phase.
+	 * For each command in the commands list, the microprogram with the same name is searched.
+	 * Commands without a microprogram are kept null in the table, and they halt the machine.
+	 * So, a new command only needs to be inserted in the commands list and have its microprogram implemented
+	 */
+	private void fillMicroprogramsTable() {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType microprogramType = MethodType.methodType(void.class);
+		microprograms = new MethodHandle[commandsList.size()];
+		for (int i=0;i<commandsList.size();i++) {
+			try {
+				microprograms[i] = lookup.findVirtual(Architecture.class, commandsList.get(i), microprogramType).bindTo(this);
+			} catch (NoSuchMethodException e) {
+				microprograms[i] = null; //this command has no microprogram yet
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Microprogram "+commandsList.get(i)+" is not accessible", e);
+			}
+		}
+	}
+
+	/**
+	 * This method returns the amount of microsteps (operations of the components) in the microprogram of a command,
+	 * including the fetch and the decoding, just like the CPI report of the microprograms.
+	 * It is used to know how much work the microprograms would do for a program executed by the fast interpreter.
+	 * @param command
+	 * @return 0 if the command is unknown or has no microprogram (the microprograms halt on it)
+	 */
+	public static int getMicrosteps(int command) {
+		int table[] = Microsteps.TABLE;
+		if ((command < 0)||(command >= table.length-1))
+			return 0;
+		return table[command];
+	}
+
+	/**
+	 * This method returns the microsteps of the fetch and the decoding of the command that halts the machine
+	 * @return
+	 */
+	public static int getHaltMicrosteps() {
+		int table[] = Microsteps.TABLE;
+		return table[table.length-1];
+	}
+
+	/**
+	 * This method measures the microsteps of each command by running its microprogram once, with the counting on.
+	 * The microprograms perform the same operations whatever their operands are, so each command is run in the
+	 * position 0 with zeros as operands. The last position keeps the fetch of the command that halts
+	 * @return
+	 */
+	private static int[] measureMicrosteps() {
+		Architecture arch = new Architecture(false, false);
+		int size = arch.commandsList.size();
+		int microsteps[] = new int[size + 1];
+		arch.setCounting(true);
+		for (int command=0;command<=size;command++) {
+			arch.memory.setData(0, (command < size)?command:-1);
+			for (int i=1;i<4;i++)
+				arch.memory.setData(i, 0);
+			arch.PC.setData(0);
+			arch.counters.clear();
+			arch.fetch();
+			arch.decodeExecute();
+			if (command == size)
+				microsteps[command] = (int) arch.counters.getMicrosteps(size);
+			else if (arch.counters.getExecutions(command) > 0) //commands without microprogram halt, so they are not measured
+				microsteps[command] = (int) arch.counters.getMicrosteps(command);
+		}
+		return microsteps;
 	}
 
 	
@@ -1774,48 +2103,180 @@ public void moveMemReg() {
 	
 	/**
 	 * This method reads an entire file in machine code and
-	 * stores it into the memory
-	 * NOT TESTED
-	 * @param filename
+	 * stores it into the memory, starting from the position 0.
+	 * The file is memory-mapped and copied into the memory at once (see ExecutableReader)
+	 * @param filename without the .dxf extension
 	 * @throws IOException 
 	 */
-	@SuppressWarnings("resource")
 	public void readExec(String filename) throws IOException {
-	    BufferedReader br = new BufferedReader(new FileReader(filename + ".dxf"));
-	    String linha;
-	    int i = 0;
-	    
-	    File file = new File("C:/Users/igorc/Downloads/S_Architecture/program.dxf");
-	    if (!file.exists()) {
-	        throw new FileNotFoundException("Arquivo não encontrado: " + file.getAbsolutePath());
-	    }
-
-	    while ((linha = br.readLine()) != null) {
-	        // Inicializa o extbus1 antes de usá-lo
-	        Bus extbus1 = new Bus(); 
-	        
-	        extbus1.put(i);            // Coloca o valor de 'i' no barramento
-	        memory.store();           // Armazena na memória
-	        
-	        extbus1.put(Integer.parseInt(linha)); // Coloca o valor da linha no barramento
-	        memory.store();           // Armazena novamente na memória
-	        
-	        i++;                      // Incrementa 'i'
-	    }
-	    br.close();
+		long start = SimulatorEvents.begin();
+		int image[] = ExecutableReader.read(filename + ".dxf");
+		if (image.length > memorySize) {
+			System.out.println("FATAL ERROR! The executable "+filename+" does not fit into the memory");
+			return;
+		}
+		memory.load(image);
+		SimulatorEvents.programLoaded(filename + ".dxf", image.length, start);
+	}
+
+	/**
+	 * This method reads an executable in the binary format (see BinaryExecutable),
+	 * stores its code and its data into the memory and sets the PC to its entry point
+	 * @param filename without the .dxb extension
+	 * @throws IOException 
+	 */
+	public void readBinaryExec(String filename) throws IOException {
+		long start = SimulatorEvents.begin();
+		BinaryExecutable executable = BinaryExecutable.read(filename + ".dxb");
+		if (executable.getRequiredMemorySize() > memorySize) {
+			System.out.println("FATAL ERROR! The executable "+filename+" does not fit into the memory");
+			return;
+		}
+		executable.load(memory);
+		PC.setData(executable.getEntry());
+		SimulatorEvents.programLoaded(filename + ".dxb", executable.getCode().length + executable.getData().length, start);
 	}
 
 	
 	/**
-	 * This method executes a program that is stored in the memory
+	 * This method executes a program that is stored in the memory.
+	 * If the fast path is on, the functional interpreter is used instead of the microprograms
 	 */
 	public void controlUnitEexec() {
+		long start = SimulatorEvents.runStarted(this);
+		try {
+			run();
+		} finally {
+			SimulatorEvents.runHalted(this, start, getInstructions());
+		}
+		if (counters != null)
+			System.out.print(getCpiReport());
+	}
+
+	/**
+	 * This method runs the program by the fast interpreter or by the microprograms
+	 */
+	private void run() {
+		if (heatmap != null)
+			heatmap.clear();
+		if (fastPath && !simulation) { //the simulation mode always shows the microprograms
+			if (counters != null)
+				fastInterpreter.setCounting(true);
+			if (heatmap != null)
+				fastInterpreter.setHeatmap(heatmap);
+			fastInterpreter.setRunControl(control);
+			fastInterpreter.run();
+			return;
+		}
 		halt = false;
+		instructions = 0;
+		if (counters != null)
+			counters.clear();
+		if (control != null) {
+			runControlled();
+			return;
+		}
+		while (!halt) {
+			fetch();
+			decodeExecute();
+		}
+	}
+
+	/**
+	 * This method runs the microprograms calling the control whenever the commands it allowed were executed
+	 */
+	private void runControlled() {
+		long reported = 0; //instructions already reported to the control
+		long nextCheck = control.started(this);
 		while (!halt) {
+			if (instructions >= nextCheck) {
+				long allowed = control.checkpoint(this, instructions - reported, PC.getData());
+				reported = instructions;
+				nextCheck = instructions + allowed;
+			}
 			fetch();
 			decodeExecute();
 		}
+		control.halted(this, instructions - reported);
+	}
+
+	/**
+	 * This method returns the PC of the running program. It may be called by other threads
+	 * while the program runs (see SimulatorEvents), so the value may be some commands behind
+	 * @return
+	 */
+	public int getCurrentPC() {
+		if (fastPath && !simulation)
+			return fastInterpreter.getCurrentPC();
+		return PC.getData();
+	}
 
+	/**
+	 * This method returns the command being executed by the running program: the IR of the fast interpreter,
+	 * or the command decoded for the microprograms (whose IR also carries the operands). Like getCurrentPC(),
+	 * it may be called by other threads, and the memory is not read, so it is safe while the program runs
+	 * @return
+	 */
+	public int getCurrentCommand() {
+		if (fastPath && !simulation)
+			return fastInterpreter.getCurrentCommand();
+		return currentCommand;
+	}
+
+	/**
+	 * This method builds a report of the last execution, counted by setCounting(): for each command,
+	 * its executions, its microsteps (operations of the registers, the memories and the ula) and the
+	 * microsteps per execution (CPI). The microprograms also show each kind of operation.
+	 * The fast interpreter does not use the components, so its microsteps are the ones the microprograms
+	 * would perform (see getMicrosteps()), and both modes report the same microsteps for the same program.
+	 * In both modes the microsteps of a command include its fetch and decoding, and the halt row keeps the fetch
+	 * of the command that halts. Commands without microprogram are counted with no microsteps
+	 * @return the report, one line per executed command; empty if the counting is off
+	 */
+	public String getCpiReport() {
+		if (counters == null)
+			return "";
+		boolean fast = fastPath && !simulation;
+		long counts[] = fast?fastInterpreter.getCounts():null;
+		StringBuilder report = new StringBuilder();
+		report.append(fast?"CPI report (fast path, microsteps of the microprograms)\n":"CPI report (microprograms)\n");
+		report.append(String.format("%-12s %12s %14s %8s", "command", "executions", "microsteps", "CPI"));
+		if (!fast)
+			for (String kind : Counters.KIND_NAMES)
+				report.append(String.format(" %12s", kind));
+		report.append("\n");
+		long totalExecutions = 0;
+		long totalMicrosteps = 0;
+		for (int row=0;row<=commandsList.size();row++) {
+			long executions;
+			long microsteps;
+			if (fast && (row == commandsList.size())) { //every run ends by fetching the command that halts
+				executions = 0;
+				microsteps = getHaltMicrosteps();
+			}
+			else if (fast) {
+				executions = counts[row];
+				microsteps = executions*getMicrosteps(row);
+			}
+			else {
+				executions = counters.getExecutions(row);
+				microsteps = counters.getMicrosteps(row);
+			}
+			if ((executions == 0)&&(microsteps == 0))
+				continue;
+			totalExecutions += executions;
+			totalMicrosteps += microsteps;
+			String name = (row < commandsList.size())?commandsList.get(row):"halt";
+			report.append(String.format(Locale.ROOT, "%-12s %12d %14d %8.2f", name, executions, microsteps,
+					(executions == 0)?0.0:(double) microsteps/executions));
+			if (!fast)
+				for (int kind=0;kind<Counters.KINDS;kind++)
+					report.append(String.format(" %12d", counters.get(row, kind)));
+			report.append("\n");
+		}
+		report.append(String.format(Locale.ROOT, "%-12s %12d %14d %8.2f\n", "total", totalExecutions, totalMicrosteps,
+				(totalExecutions == 0)?0.0:(double) totalMicrosteps/totalExecutions));
+		return report.toString();
 	}
 	
 
@@ -1828,28 +2289,43 @@ public void moveMemReg() {
 	private void decodeExecute() {
 		IR.internalRead(); //the instruction is in the internalbus2
 		int command = intbus.get();
-		simulationDecodeExecuteBefore(command);
-		switch (command) {
-		case 2:
-			jmp();
-			break;
-		case 3:
-			jz();
-			break;
-		case 4:
-			jn();
-			break;
-		case 9:
-			moveRegReg();
-			break;
-		default:
+		currentCommand = command;
+		if (simulation)
+			simulationDecodeExecuteBefore(command);
+		MethodHandle microprogram = null;
+		if ((command >= 0)&&(command < microprograms.length))
+			microprogram = microprograms[command];
+		if (microprogram == null) //-1 (end of program) or any command without microprogram
 			halt = true;
-			break;
+		else {
+			if (counters != null) { //the fetch and the decoding are part of the command
+				counters.move(commandsList.size(), command);
+				counters.select(command);
+				counters.executed(command);
+			}
+			if (heatmap != null) //the microprograms move the PC only after the decoding
+				heatmap.executed(PC.getData(), command);
+			executeMicroprogram(microprogram);
+			instructions++;
 		}
 		if (simulation)
 			simulationDecodeExecuteAfter();
 	}
 
+	/**
+	 * This method runs a microprogram taken from the dispatch table
+	 * @param microprogram
+	 */
+	private void executeMicroprogram(MethodHandle microprogram) {
+		try {
+			microprogram.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) { //microprograms do not throw checked exceptions
+			throw new IllegalStateException(t);
+		}
+	}
+
 	/**
 	 * This method is used to show the components status in simulation conditions
 	 * NOT TESTED
@@ -1862,18 +2338,18 @@ public void moveMemReg() {
 		for (Register r:registersList) {
 			System.out.println(r.getRegisterName()+": "+r.getData());
 		}
-		if (command !=-1)
+		if ((command >= 0)&&(command < commandsList.size()))
 			instruction = commandsList.get(command);
 		else
 			instruction = "END";
 		if (hasOperands(instruction)) {
-			parameter = memory.getDataList()[PC.getData()+1];
+			parameter = memory.getData(PC.getData()+1);
 			System.out.println("Instruction: "+instruction+" "+parameter);
 		}
 		else
 			System.out.println("Instruction: "+instruction);
 		if ("read".equals(instruction))
-			System.out.println("memory["+parameter+"]="+memory.getDataList()[parameter]);
+			System.out.println("memory["+parameter+"]="+memory.getData(parameter));
 		
 	}
 
@@ -1890,12 +2366,40 @@ public void moveMemReg() {
 		for (Register r:registersList) {
 			System.out.println(r.getRegisterName()+": "+r.getData());
 		}
-		Scanner entrada = new Scanner(System.in);
+		if (input == null)
+			input = new Scanner(System.in);
 		System.out.println("Press <Enter>");
-		String mensagem = entrada.nextLine();
+		String mensagem = input.hasNextLine()?input.nextLine():"";
 		System.out.println(mensagem + instruction);
-		
-		entrada.close();
+	}
+
+	/**
+	 * This method sets where the simulation mode reads the <Enter> between the commands.
+	 * By default it is System.in, which is never closed, so many instances can share it
+	 * @param in
+	 */
+	public void setInput(InputStream in) {
+		input = new Scanner(in);
+	}
+
+	/**
+	 * This method returns the amount of commands executed in the last call of controlUnitEexec(),
+	 * both by the microprograms and by the fast interpreter
+	 * @return
+	 */
+	public long getInstructions() {
+		if (fastPath && !simulation)
+			return fastInterpreter.getInstructions();
+		return instructions;
+	}
+
+	/**
+	 * This method executes one single command by the microprograms: fetch and decodeExecute.
+	 * It is used to measure them (see Benchmarks)
+	 */
+	void step() {
+		fetch();
+		decodeExecute();
 	}
 
 	/**
@@ -1905,7 +2409,11 @@ public void moveMemReg() {
 	 * NOT TESTED!
 	 */
 	private void fetch() {
-		PC.read();
+		if (counters != null)
+			counters.select(commandsList.size()); //the command is not known yet
+		PC.internalRead(); //PC is connected only to the internal bus
+		IR.internalStore();
+		IR.read(); //now the PC value is in the external bus
 		memory.read();
 		IR.store();
 		simulationFetch();
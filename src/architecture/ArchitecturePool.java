@@ -0,0 +1,81 @@
+package architecture;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * This class keeps architectures that can be used again, so running a new program
+ * does not build all the components again (see Architecture.reset()).
+ *
+ * The instances are built and warmed up in the beginning, running a program that
+ * halts at once, so the fast interpreter already has its caches allocated.
+ * The pool can be used by many threads at the same time.
+ */
+public class ArchitecturePool {
+
+	private static final int HALT[] = {-1};
+
+	private ConcurrentLinkedDeque<Architecture> free;
+	private boolean fastPath;
+	private int memorySize;
+
+	/**
+	 * @param size the amount of instances built in the beginning
+	 * @param fastPath the execution mode of all the instances
+	 */
+	public ArchitecturePool(int size, boolean fastPath) {
+		this.fastPath = fastPath;
+		free = new ConcurrentLinkedDeque<>();
+		for (int i=0;i<size;i++)
+			free.push(newInstance());
+		memorySize = (size > 0)?free.peek().getMemorySize():new Architecture().getMemorySize();
+	}
+
+	/**
+	 * This method builds and warms up a new instance
+	 */
+	private Architecture newInstance() {
+		Architecture arch = new Architecture(false, fastPath);
+		arch.reset(HALT);
+		arch.controlUnitEexec();
+		return arch;
+	}
+
+	public boolean isFastPath() {
+		return fastPath;
+	}
+
+	public int getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * This method returns the amount of instances waiting in the pool
+	 * @return
+	 */
+	public int available() {
+		return free.size();
+	}
+
+	/**
+	 * This method takes an instance from the pool (or builds a new one if the pool is empty)
+	 * with the program already in its memory
+	 * @param programImage
+	 * @return
+	 */
+	public Architecture acquire(int programImage[]) {
+		Architecture arch = free.poll();
+		if (arch == null)
+			arch = newInstance();
+		arch.reset(programImage);
+		return arch;
+	}
+
+	/**
+	 * This method gives an instance back to the pool. It must not be used after that
+	 * @param arch
+	 */
+	public void release(Architecture arch) {
+		free.push(arch);
+	}
+
+}
@@ -0,0 +1,367 @@
+package architecture;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class watches and controls the programs run by the architectures it is set into
+ * (see Architecture.setRunControl() and BatchRunner.setMonitor()), and can be registered as
+ * an MBean (see register()), so long batches can be watched and throttled from a JMX console.
+ *
+ * The architectures call the monitor in checkpoints, every interval commands (see RunControl),
+ * so nothing is done by the monitor between them. Each thread adds its progress into its own
+ * stripe of counters, written only by that thread, and the readings add all the stripes,
+ * so the threads never wait for each other to count.
+ *
+ * Pausing and the step budget are applied in the checkpoints: a paused program waits in its next
+ * checkpoint, and each checkpoint takes its next commands from the budget. The commands already
+ * taken by running programs (at most interval each) are executed even if the budget is changed.
+ *
+ * The executions of each command and the microsteps are counted only while counting is on, and only
+ * by the fast interpreter (see FastInterpreter.setCounting()). Counting turns off the loop compilation
+ * and the superinstructions.
+ */
+public class BatchMonitor implements RunControl, BatchMonitorMXBean {
+
+	public static final long DEFAULT_INTERVAL = 1 << 16;
+	public static final long NO_BUDGET = -1;
+	private static final long RATE_WINDOW = 1000000000L; //ns
+
+	//counters of each stripe
+	private static final int INSTRUCTIONS = 0;
+	private static final int MICROSTEPS = 1;
+	private static final int HALTED = 2;
+
+	/**
+	 * The counters of one thread. Only that thread writes them
+	 */
+	static class Stripe {
+		final AtomicLongArray totals = new AtomicLongArray(3);
+		volatile AtomicLongArray opcodes;
+		volatile String program; //the running program, null if there is none
+		volatile Architecture arch; //the architecture running the program, read by getCurrentPCs()
+		String nextProgram; //the name of the next program started by this thread
+		long granted; //commands allowed by the last checkpoint
+		long seen[]; //executions of each command already added, in the current run
+
+		void add(AtomicLongArray counters, int i, long delta) {
+			counters.lazySet(i, counters.get(i) + delta); //there is one single writer
+		}
+	}
+
+	private String name;
+	private long interval;
+	private boolean counting;
+	private volatile boolean paused;
+	private AtomicLong budget;
+	private Object lock; //the paused programs wait on it
+	private volatile ArrayList<String> commandNames;
+	private CopyOnWriteArrayList<Stripe> stripes;
+	private ThreadLocal<Stripe> stripe;
+	private long rateTime;
+	private long rateInstructions;
+	private double rate;
+	private ObjectName objectName;
+
+	/**
+	 * @param name the name of the monitor, also used in the MBean name
+	 * @param counting if true, the executions of each command are counted
+	 */
+	public BatchMonitor(String name, boolean counting) {
+		this(name, counting, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * @param name
+	 * @param counting
+	 * @param interval the amount of commands between two checkpoints
+	 */
+	public BatchMonitor(String name, boolean counting, long interval) {
+		this.name = name;
+		this.counting = counting;
+		this.interval = Math.max(1, interval);
+		budget = new AtomicLong(NO_BUDGET);
+		lock = new Object();
+		stripes = new CopyOnWriteArrayList<>();
+		stripe = new ThreadLocal<Stripe>() {
+			@Override
+			protected Stripe initialValue() {
+				Stripe s = new Stripe();
+				stripes.add(s);
+				return s;
+			}
+		};
+		rateTime = System.nanoTime();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * This method names the next program started by the current thread, as shown by getCurrentPCs()
+	 * @param program
+	 */
+	public void setProgram(String program) {
+		stripe.get().nextProgram = program;
+	}
+
+	@Override
+	public long started(Architecture arch) {
+		Stripe s = stripe.get();
+		if (commandNames == null)
+			commandNames = new ArrayList<>(arch.getCommandsList());
+		if (s.opcodes == null) {
+			s.opcodes = new AtomicLongArray(commandNames.size());
+			s.seen = new long[commandNames.size()];
+		}
+		Arrays.fill(s.seen, 0);
+		s.arch = arch;
+		s.program = (s.nextProgram != null)?s.nextProgram:Thread.currentThread().getName();
+		s.nextProgram = null;
+		s.granted = allow();
+		return s.granted;
+	}
+
+	@Override
+	public long checkpoint(Architecture arch, long executed, int pc) {
+		Stripe s = stripe.get();
+		report(s, arch, executed);
+		s.granted = allow();
+		return s.granted;
+	}
+
+	@Override
+	public void halted(Architecture arch, long executed) {
+		Stripe s = stripe.get();
+		report(s, arch, executed);
+		if (s.granted > executed)
+			giveBack(s.granted - executed);
+		s.add(s.totals, HALTED, 1);
+		s.program = null;
+		s.arch = null;
+	}
+
+	/**
+	 * This method adds the progress of a run into the stripe of its thread
+	 */
+	private void report(Stripe s, Architecture arch, long executed) {
+		s.add(s.totals, INSTRUCTIONS, executed);
+		FastInterpreter interpreter = arch.getFastInterpreter();
+		if (!counting || !arch.isFastPath() || (interpreter == null) || !interpreter.isCounting())
+			return;
+		long counts[] = interpreter.getCounts();
+		long microsteps = 0;
+		for (int i=0;(i<counts.length)&&(i<s.seen.length);i++) {
+			long delta = counts[i] - s.seen[i];
+			if (delta == 0)
+				continue;
+			s.add(s.opcodes, i, delta);
+			s.seen[i] = counts[i];
+			microsteps += delta*Architecture.getMicrosteps(i);
+		}
+		s.add(s.totals, MICROSTEPS, microsteps);
+	}
+
+	/**
+	 * This method waits until the programs may run, and takes the next commands from the budget
+	 * @return the commands allowed until the next checkpoint
+	 */
+	private long allow() {
+		while (true) {
+			if (!paused) {
+				long allowed = take(interval);
+				if (allowed > 0)
+					return allowed;
+			}
+			synchronized (lock) {
+				while (paused || (budget.get() == 0)) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) { //the batch is being stopped, so the program is let go
+						Thread.currentThread().interrupt();
+						return interval;
+					}
+				}
+			}
+		}
+	}
+
+	private long take(long wanted) {
+		while (true) {
+			long left = budget.get();
+			if (left < 0) //no budget
+				return wanted;
+			long taken = Math.min(left, wanted);
+			if (budget.compareAndSet(left, left - taken))
+				return taken;
+		}
+	}
+
+	private void giveBack(long steps) {
+		while (true) {
+			long left = budget.get();
+			if ((left < 0) || budget.compareAndSet(left, left + steps))
+				return;
+		}
+	}
+
+	@Override
+	public long getInstructions() {
+		return sum(INSTRUCTIONS);
+	}
+
+	@Override
+	public long getMicrosteps() {
+		return sum(MICROSTEPS);
+	}
+
+	private long sum(int counter) {
+		long total = 0;
+		for (Stripe s : stripes)
+			total += s.totals.get(counter);
+		return total;
+	}
+
+	@Override
+	public synchronized double getInstructionsPerSecond() {
+		long now = System.nanoTime();
+		if (now - rateTime >= RATE_WINDOW) {
+			long instructions = getInstructions();
+			rate = (instructions - rateInstructions)*1e9/(now - rateTime);
+			rateTime = now;
+			rateInstructions = instructions;
+		}
+		return rate;
+	}
+
+	/**
+	 * This method reads the PC of each running architecture while it runs (see Architecture.getCurrentPC()),
+	 * not the one seen in its last checkpoint
+	 */
+	@Override
+	public Map<String, Integer> getCurrentPCs() {
+		Map<String, Integer> pcs = new LinkedHashMap<>();
+		for (Stripe s : stripes) {
+			String program = s.program;
+			Architecture arch = s.arch;
+			if ((program != null) && (arch != null)) //the program may halt between both readings
+				pcs.put(program, arch.getCurrentPC());
+		}
+		return pcs;
+	}
+
+	@Override
+	public int getProgramsRunning() {
+		int running = 0;
+		for (Stripe s : stripes)
+			if (s.program != null)
+				running++;
+		return running;
+	}
+
+	@Override
+	public long getProgramsHalted() {
+		return sum(HALTED);
+	}
+
+	@Override
+	public Map<String, Long> getOpcodeCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		ArrayList<String> names = commandNames;
+		if (names == null)
+			return counts;
+		long totals[] = new long[names.size()];
+		for (Stripe s : stripes) {
+			AtomicLongArray opcodes = s.opcodes;
+			if (opcodes == null)
+				continue;
+			for (int i=0;i<totals.length;i++)
+				totals[i] += opcodes.get(i);
+		}
+		for (int i=0;i<totals.length;i++)
+			if (totals[i] > 0)
+				counts.put(names.get(i), totals[i]);
+		return counts;
+	}
+
+	@Override
+	public boolean isCounting() {
+		return counting;
+	}
+
+	@Override
+	public boolean isPaused() {
+		return paused;
+	}
+
+	@Override
+	public void pause() {
+		paused = true;
+	}
+
+	@Override
+	public void resume() {
+		synchronized (lock) {
+			paused = false;
+			lock.notifyAll();
+		}
+	}
+
+	@Override
+	public long getStepBudget() {
+		return budget.get();
+	}
+
+	@Override
+	public void setStepBudget(long steps) {
+		synchronized (lock) {
+			budget.set((steps < 0)?NO_BUDGET:steps);
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * This method registers the monitor in the platform MBean server, as architecture:type=BatchMonitor,name=...
+	 * @return the name of the MBean, or null if it could not be registered
+	 */
+	public ObjectName register() {
+		try {
+			ObjectName objectName = new ObjectName("architecture:type=BatchMonitor,name="+ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			this.objectName = objectName;
+			return objectName;
+		} catch (JMException e) {
+			System.out.println("FATAL ERROR! The monitor "+name+" can not be registered: "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * This method removes the monitor from the platform MBean server
+	 */
+	public void unregister() {
+		if (objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			System.out.println("FATAL ERROR! The monitor "+name+" can not be unregistered: "+e.getMessage());
+		}
+		objectName = null;
+	}
+
+}
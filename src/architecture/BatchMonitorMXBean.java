@@ -0,0 +1,61 @@
+package architecture;
+
+import java.util.Map;
+
+/**
+ * This interface is the management view of a BatchMonitor, as shown by JMX consoles (such as JConsole)
+ */
+public interface BatchMonitorMXBean {
+
+	/**
+	 * @return the commands executed by all the programs, updated at each checkpoint
+	 */
+	long getInstructions();
+
+	/**
+	 * @return the microsteps the microprograms would perform for the executed commands, fetch included
+	 * (see Architecture.getMicrosteps()). Only counted while counting is on
+	 */
+	long getMicrosteps();
+
+	/**
+	 * @return the commands executed per second since the previous reading (at least one second before)
+	 */
+	double getInstructionsPerSecond();
+
+	/**
+	 * @return the address of the command being executed by each running program. It is read while the program
+	 * runs, so it may be some commands behind
+	 */
+	Map<String, Integer> getCurrentPCs();
+
+	int getProgramsRunning();
+
+	long getProgramsHalted();
+
+	/**
+	 * @return the executions of each command. Only counted while counting is on
+	 */
+	Map<String, Long> getOpcodeCounts();
+
+	boolean isCounting();
+
+	boolean isPaused();
+
+	void pause();
+
+	void resume();
+
+	/**
+	 * @return the commands still allowed, or -1 if there is no budget
+	 */
+	long getStepBudget();
+
+	/**
+	 * This method allows the programs to execute some more commands. When they are executed,
+	 * the programs wait until a new budget is set
+	 * @param steps negative values remove the budget
+	 */
+	void setStepBudget(long steps);
+
+}
@@ -0,0 +1,295 @@
+package architecture;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs many executables (.dxf) at the same time, each one in its own Architecture,
+ * using a pool of threads. The result of each program has its final registers, a digest
+ * of its final memory, the amount of executed commands and the time spent running it.
+ *
+ * The instances share nothing, so the only limit is the number of threads in the pool.
+ * Each thread takes its architectures from an ArchitecturePool, so they are built only once.
+ * A BatchMonitor (see setMonitor()) watches the programs while they run, and may pause them.
+ */
+public class BatchRunner {
+
+	private int threads;
+	private boolean fastPath;
+	private ArchitecturePool architectures;
+	private BatchMonitor monitor; //null if the programs are not watched
+
+	/**
+	 * @param threads the size of the thread pool
+	 * @param fastPath if true, the programs are executed by the fast interpreter,
+	 * otherwise by the microprograms
+	 */
+	public BatchRunner(int threads, boolean fastPath) {
+		this.threads = Math.max(1, threads);
+		this.fastPath = fastPath;
+		architectures = new ArchitecturePool(this.threads, fastPath);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public boolean isFastPath() {
+		return fastPath;
+	}
+
+	public BatchMonitor getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * This method sets the monitor that watches the programs (null removes it)
+	 * @param monitor
+	 */
+	public void setMonitor(BatchMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * This method runs all the executables and waits until all of them halt
+	 * @param filenames the executables, with or without the .dxf extension
+	 * @return the results, in the same order of the filenames
+	 */
+	public ArrayList<Result> run(List<String> filenames) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Result>> futures = new ArrayList<>();
+		try {
+			for (final String filename : filenames) {
+				futures.add(pool.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						return runProgram(filename);
+					}
+				}));
+			}
+			ArrayList<Result> results = new ArrayList<>();
+			for (int i=0;i<futures.size();i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					results.add(new Result(filenames.get(i), "the execution failed: "+e.getCause()));
+				}
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The batch was interrupted", e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * This method runs one single executable in an architecture taken from the pool
+	 * @param filename
+	 * @return
+	 */
+	public Result runProgram(String filename) {
+		int image[];
+		try {
+			image = readImage(filename);
+		} catch (IOException | NumberFormatException e) {
+			return new Result(filename, "the executable can not be read: "+e.getMessage());
+		}
+		if (image.length > architectures.getMemorySize())
+			return new Result(filename, "the executable does not fit into the memory");
+		Architecture arch = architectures.acquire(image);
+		try {
+			arch.setRunControl(monitor);
+			if (monitor != null) {
+				monitor.setProgram(filename);
+				if (fastPath)
+					arch.getFastInterpreter().setCounting(monitor.isCounting());
+			}
+			long start = System.nanoTime();
+			arch.controlUnitEexec();
+			long time = System.nanoTime() - start;
+			int registers[] = new int[arch.getRegistersList().size()];
+			for (int i=0;i<registers.length;i++)
+				registers[i] = arch.getRegistersList().get(i).getData();
+			int memory[] = new int[arch.getMemory().getSize()]; //copied, so a pooled memory is kept as it is (paged, off-heap or sparse)
+			arch.getMemory().copyTo(memory, 0);
+			return new Result(filename, registers, digest(memory), arch.getInstructions(), time);
+		} finally {
+			architectures.release(arch);
+		}
+	}
+
+	/**
+	 * This method reads an executable file: one word per line, blank lines are ignored
+	 * @param filename with or without the .dxf extension
+	 * @return
+	 * @throws IOException
+	 */
+	public static int[] readImage(String filename) throws IOException {
+		if (!filename.endsWith(".dxf"))
+			filename = filename+".dxf";
+		return ExecutableReader.read(filename);
+	}
+
+	/**
+	 * This method computes the SHA-256 digest of the memory words
+	 * @param memory
+	 * @return the digest in hexadecimal
+	 */
+	public static String digest(int memory[]) {
+		ByteBuffer bytes = ByteBuffer.allocate(memory.length*4);
+		bytes.asIntBuffer().put(memory);
+		try {
+			byte hash[] = MessageDigest.getInstance("SHA-256").digest(bytes.array());
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash)
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * This class keeps the final state of one program of the batch
+	 */
+	public static class Result {
+		private String filename;
+		private int registers[];
+		private String memoryDigest;
+		private long instructions;
+		private long wallTime; //nanoseconds
+		private String error; //null if the program was executed
+
+		Result(String filename, int registers[], String memoryDigest, long instructions, long wallTime) {
+			this.filename = filename;
+			this.registers = registers;
+			this.memoryDigest = memoryDigest;
+			this.instructions = instructions;
+			this.wallTime = wallTime;
+		}
+
+		Result(String filename, String error) {
+			this.filename = filename;
+			this.error = error;
+		}
+
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * @return the final registers, in the same order of Architecture.getRegistersList()
+		 */
+		public int[] getRegisters() {
+			return registers;
+		}
+
+		public String getMemoryDigest() {
+			return memoryDigest;
+		}
+
+		public long getInstructions() {
+			return instructions;
+		}
+
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		public boolean isOk() {
+			return error == null;
+		}
+
+		@Override
+		public String toString() {
+			if (error != null)
+				return filename+": FATAL ERROR! "+error;
+			StringBuilder line = new StringBuilder(filename).append(":");
+			String names[] = {"REG0", "REG1", "REG2", "REG3", "PC", "IR", "Flags"};
+			for (int i=0;i<registers.length;i++)
+				line.append(" ").append((i < names.length)?names[i]:"R"+i).append("=").append(registers[i]);
+			line.append(" instructions=").append(instructions);
+			line.append(" time=").append(wallTime/1000).append("us");
+			line.append(" memory=").append(memoryDigest);
+			return line.toString();
+		}
+	}
+
+	/**
+	 * Usage: BatchRunner [-threads n] [-micro] [-list file] [-jmx] [-count] executables...
+	 * -threads n: size of the thread pool (default: number of processors)
+	 * -micro: runs the microprograms instead of the fast interpreter
+	 * -list file: reads the executables from a file, one per line
+	 * -jmx: registers a BatchMonitor as an MBean, so the batch can be watched and paused from a JMX console
+	 * -count: the monitor counts the executions of each command (the loops are not compiled)
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean fastPath = true;
+		boolean jmx = false;
+		boolean counting = false;
+		ArrayList<String> filenames = new ArrayList<>();
+		for (int i=0;i<args.length;i++) {
+			if ("-threads".equals(args[i]) && (i+1 < args.length))
+				threads = Integer.parseInt(args[++i]);
+			else if ("-micro".equals(args[i]))
+				fastPath = false;
+			else if ("-jmx".equals(args[i]))
+				jmx = true;
+			else if ("-count".equals(args[i]))
+				counting = true;
+			else if ("-list".equals(args[i]) && (i+1 < args.length)) {
+				try (BufferedReader br = new BufferedReader(new FileReader(args[++i]))) {
+					String linha;
+					while ((linha = br.readLine()) != null) {
+						if (!linha.trim().isEmpty())
+							filenames.add(linha.trim());
+					}
+				}
+			}
+			else
+				filenames.add(args[i]);
+		}
+		if (filenames.isEmpty()) {
+			System.out.println("Usage: BatchRunner [-threads n] [-micro] [-list file] [-jmx] [-count] executables...");
+			return;
+		}
+		BatchRunner runner = new BatchRunner(threads, fastPath);
+		if (jmx || counting) {
+			BatchMonitor monitor = new BatchMonitor("batch", counting);
+			if (jmx && (monitor.register() != null))
+				System.out.println("Monitor registered: architecture:type=BatchMonitor,name=\"batch\"");
+			runner.setMonitor(monitor);
+		}
+		long start = System.nanoTime();
+		ArrayList<Result> results = runner.run(filenames);
+		long time = System.nanoTime() - start;
+		int failures = 0;
+		for (Result result : results) {
+			System.out.println(result);
+			if (!result.isOk())
+				failures++;
+		}
+		System.out.println(results.size()+" programs, "+failures+" failures, "+threads+" threads, "+(time/1000000)+"ms");
+	}
+
+}
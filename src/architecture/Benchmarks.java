@@ -0,0 +1,293 @@
+package architecture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import assembler.Assembler;
+import components.Bus;
+import components.Memory;
+import components.Ula;
+
+/**
+ * This class measures the speed of the components, of the architecture and of the assembler.
+ *
+ * Each benchmark runs a batch of operations many times: the first runs warm up the JIT and are
+ * discarded, the other ones are measured. The results (median and best time per operation) are
+ * printed and written into a CSV file, so they can be compared between releases.
+ *
+ * Usage: Benchmarks [-out file] [-quick]
+ * -out file: the CSV file (default: benchmarks.csv)
+ * -quick: less runs, for a fast check
+ */
+public class Benchmarks {
+
+	//the program.dsf loop (a <- 1, b <- 3, c <- loops, t <- b; repeat b <- b+t, a++ while a < c)
+	//written in the current commands, since program.dsf uses an older set of commands
+	private static final String LOOP[] = {
+		"a", "b", "c", "t",
+		"move 1 %REG0", "move %REG0 a",
+		"move 3 %REG0", "move %REG0 b",
+		"move LOOPS %REG0", "move %REG0 c",
+		"move b %REG0", "move %REG0 t",
+		"laco:",
+		"move t %REG0", "add b %REG0", "move %REG0 b",
+		"move a %REG0", "inc %REG0", "move %REG0 a",
+		"move c %REG1", "sub %REG0 %REG1", "jn laco"};
+
+	private int warmups;
+	private int runs;
+	private ArrayList<String> results; //the CSV lines
+	private int sink; //results are kept here, so the JIT can not remove the work
+
+	public Benchmarks(int warmups, int runs) {
+		this.warmups = warmups;
+		this.runs = runs;
+		results = new ArrayList<>();
+		results.add("benchmark,operations,median_ns_per_op,best_ns_per_op,ops_per_second");
+	}
+
+	/**
+	 * A batch of operations measured together
+	 */
+	private static abstract class Batch {
+		abstract int run(); //returns any value computed by the batch
+	}
+
+	/**
+	 * This method measures a batch, printing and keeping its result
+	 * @param name
+	 * @param operations the amount of operations performed by each run of the batch
+	 * @param batch
+	 */
+	private void measure(String name, long operations, Batch batch) {
+		for (int i=0;i<warmups;i++)
+			sink += batch.run();
+		double time[] = new double[runs];
+		for (int i=0;i<runs;i++) {
+			long start = System.nanoTime();
+			sink += batch.run();
+			time[i] = (double) (System.nanoTime() - start)/operations;
+		}
+		Arrays.sort(time);
+		double median = time[runs/2];
+		String line = String.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%.0f", name, operations, median, time[0], 1e9/median);
+		results.add(line);
+		System.out.println(line);
+	}
+
+	public ArrayList<String> getResults() {
+		return results;
+	}
+
+	/**
+	 * This method writes the results into a CSV file
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void write(String filename) throws IOException {
+		try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+			for (String line : results)
+				writer.println(line);
+		}
+	}
+
+	public void components() {
+		final int n = 100000;
+		final Bus ext1 = new Bus();
+		final Bus ext2 = new Bus();
+		final Ula ula = new Ula(ext1, ext2);
+		measure("ula.add", n, new Batch() {
+			@Override
+			int run() {
+				ext1.put(1);
+				ula.store(0);
+				for (int i=0;i<n;i++) {
+					ext1.put(i);
+					ula.store(1);
+					ula.add();
+				}
+				ula.read(1);
+				return ext1.get();
+			}
+		});
+		measure("ula.sub", n, new Batch() {
+			@Override
+			int run() {
+				ext1.put(1);
+				ula.store(0);
+				for (int i=0;i<n;i++) {
+					ext1.put(i);
+					ula.store(1);
+					ula.sub();
+				}
+				ula.read(1);
+				return ext1.get();
+			}
+		});
+		measure("ula.inc", n, new Batch() {
+			@Override
+			int run() {
+				ext1.put(0);
+				ula.store(1);
+				for (int i=0;i<n;i++)
+					ula.inc();
+				ula.read(1);
+				return ext1.get();
+			}
+		});
+		final Bus bus = new Bus();
+		final Memory memory = new Memory(Architecture.DEFAULT_MEMORY_SIZE, bus);
+		final int mask = Architecture.DEFAULT_MEMORY_SIZE - 1;
+		measure("memory.read", n, new Batch() {
+			@Override
+			int run() {
+				int sum = 0;
+				for (int i=0;i<n;i++) {
+					bus.put(i & mask);
+					memory.read();
+					sum += bus.get();
+				}
+				return sum;
+			}
+		});
+		measure("memory.store", n, new Batch() {
+			@Override
+			int run() {
+				for (int i=0;i<n;i++) {
+					bus.put(i & mask);
+					memory.store(); //the position
+					bus.put(i);
+					memory.store(); //the data
+				}
+				return memory.getData(0);
+			}
+		});
+	}
+
+	public void architecture() {
+		//jmp 0, forever: the only microprograms that are always working are the jumps
+		final int n = 100000;
+		final Architecture arch = new Architecture(false, false);
+		measure("architecture.fetch_decodeExecute", n, new Batch() {
+			@Override
+			int run() {
+				arch.reset(new int[] {16, 0});
+				for (int i=0;i<n;i++)
+					arch.step();
+				return arch.getPC().getData();
+			}
+		});
+		//whole programs run only in the fast path: the microprograms of the moves are not working
+		final int loops = 100000;
+		final int program[] = assemble(source(loopSource(loops)), 128);
+		final Architecture fast = new Architecture(false, true);
+		fast.reset(program);
+		fast.controlUnitEexec();
+		measure("program.loop.fastpath", fast.getInstructions(), new Batch() {
+			@Override
+			int run() {
+				fast.reset(program);
+				fast.controlUnitEexec();
+				return fast.getMemory().getData(126);
+			}
+		});
+	}
+
+	public void assembler() {
+		final ArrayList<String> smallLines = loopSource(4);
+		final String small = source(smallLines);
+		measure("assembler.small", smallLines.size(), new Batch() {
+			@Override
+			int run() {
+				return assemble(small, 128).length;
+			}
+		});
+		final ArrayList<String> large = new ArrayList<>();
+		for (int i=0;i<1000;i++)
+			large.add("v"+i);
+		for (int i=0;i<5000;i++) {
+			large.add("l"+i+":\tmove v"+(i%1000)+" %REG1");
+			large.add("add "+i+" %REG1 ; comment");
+			large.add("move %REG1 v"+((i*7)%1000));
+			large.add("jz l"+(4999-i));
+		}
+		final String largeSource = source(large);
+		measure("assembler.large", large.size(), new Batch() {
+			@Override
+			int run() {
+				return assemble(largeSource, 1 << 20).length;
+			}
+		});
+	}
+
+	private static ArrayList<String> loopSource(int loops) {
+		ArrayList<String> lines = new ArrayList<>();
+		for (String line : LOOP)
+			lines.add(line.replace("LOOPS", Integer.toString(loops)));
+		return lines;
+	}
+
+	/**
+	 * This method writes a source into a temporary file, returning its name without extension
+	 */
+	private static String source(ArrayList<String> lines) {
+		try {
+			File file = File.createTempFile("benchmark", ".dsf");
+			String filename = file.getPath().substring(0, file.getPath().length()-4);
+			new File(filename+".dxf").deleteOnExit();
+			file.deleteOnExit();
+			try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+				for (String line : lines)
+					writer.println(line);
+			}
+			return filename;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * This method assembles a source with read(), parse() and makeExecutable(), returning the executable
+	 */
+	private static int[] assemble(String filename, int memorySize) {
+		PrintStream out = System.out;
+		try {
+			Assembler assembler = new Assembler(memorySize);
+			System.setOut(new PrintStream(new ByteArrayOutputStream())); //the assembler messages
+			assembler.read(filename);
+			assembler.parse();
+			if (!assembler.makeExecutable(filename))
+				throw new IllegalStateException("The benchmark source has errors");
+			return ExecutableReader.read(filename+".dxf");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String out = "benchmarks.csv";
+		boolean quick = false;
+		for (int i=0;i<args.length;i++) {
+			if ("-out".equals(args[i]) && (i+1 < args.length))
+				out = args[++i];
+			else if ("-quick".equals(args[i]))
+				quick = true;
+		}
+		Benchmarks benchmarks = quick?new Benchmarks(3, 5):new Benchmarks(20, 15);
+		benchmarks.components();
+		benchmarks.architecture();
+		benchmarks.assembler();
+		benchmarks.write(out);
+		System.out.println("Results written into "+out+" ("+benchmarks.sink+")");
+	}
+
+}
@@ -0,0 +1,213 @@
+package architecture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import components.Memory;
+
+/**
+ * This class keeps an executable in the binary format (.dxb), an alternative to the text .dxf.
+ * All the fields are little-endian ints:
+ *
+ * magic ("DXB\0"), version, entry point, code size, data address, data size, variables
+ * code (code size words, loaded from the position 0)
+ * data (data size words, loaded from the data address)
+ * variable table (for each variable: its address, the length of its name and the name in UTF-8)
+ *
+ * The code and the data are copied as they are, so loading needs no parsing at all.
+ * Unlike the text format, the data section keeps the initial values of the variables,
+ * the entry point does not need to be 0, and the variable table keeps their names.
+ */
+public class BinaryExecutable {
+
+	public static final int MAGIC = 'D' | ('X' << 8) | ('B' << 16); //"DXB\0" in the file
+	public static final int VERSION = 1;
+	private static final int HEADER_WORDS = 7;
+	public static final int HEADER_BYTES = HEADER_WORDS*4; //the code starts after the header
+
+	private int entry;
+	private int code[];
+	private int dataAddress;
+	private int data[];
+	private ArrayList<String> variables;
+	private ArrayList<Integer> variablesAddresses;
+
+	/**
+	 * @param entry the initial value of the PC
+	 * @param code the words loaded from the position 0
+	 * @param dataAddress the position where the data section is loaded
+	 * @param data the initial values of the data section
+	 */
+	public BinaryExecutable(int entry, int code[], int dataAddress, int data[]) {
+		this.entry = entry;
+		this.code = code;
+		this.dataAddress = dataAddress;
+		this.data = data;
+		variables = new ArrayList<>();
+		variablesAddresses = new ArrayList<>();
+	}
+
+	/**
+	 * This method adds a variable into the variable table
+	 * @param name
+	 * @param address
+	 */
+	public void addVariable(String name, int address) {
+		variables.add(name);
+		variablesAddresses.add(address);
+	}
+
+	public int getEntry() {
+		return entry;
+	}
+
+	public int[] getCode() {
+		return code;
+	}
+
+	public int getDataAddress() {
+		return dataAddress;
+	}
+
+	public int[] getData() {
+		return data;
+	}
+
+	public ArrayList<String> getVariables() {
+		return variables;
+	}
+
+	public ArrayList<Integer> getVariablesAddresses() {
+		return variablesAddresses;
+	}
+
+	/**
+	 * This method returns the lowest memory size able to keep the code and the data
+	 * @return
+	 */
+	public int getRequiredMemorySize() {
+		return Math.max(code.length, (data.length > 0)?dataAddress + data.length:0);
+	}
+
+	/**
+	 * This method stores the code and the data into a memory, clearing all the other positions.
+	 * The memory must be large enough (see getRequiredMemorySize())
+	 * @param memory
+	 */
+	public void load(Memory memory) {
+		memory.load(code);
+		for (int i=0;i<data.length;i++)
+			memory.setData(dataAddress + i, data[i]);
+	}
+
+	/**
+	 * This method writes the executable into a file
+	 * @param filename the complete filename, with its extension
+	 * @throws IOException
+	 */
+	public void write(String filename) throws IOException {
+		byte names[][] = new byte[variables.size()][];
+		int bytes = (HEADER_WORDS + code.length + data.length)*4;
+		for (int i=0;i<names.length;i++) {
+			names[i] = variables.get(i).getBytes(StandardCharsets.UTF_8);
+			bytes += 8 + names[i].length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(header(entry, code.length, dataAddress, data.length, names.length));
+		buffer.asIntBuffer().put(code).put(data);
+		buffer.position(buffer.position() + (code.length + data.length)*4);
+		for (int i=0;i<names.length;i++)
+			buffer.putInt(variablesAddresses.get(i)).putInt(names[i].length).put(names[i]);
+		buffer.flip();
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	/**
+	 * This method builds the header of a binary executable, ready to be written.
+	 * It is used by the writers that produce the code as a stream (see assembler.StreamingAssembler)
+	 * @return HEADER_BYTES bytes
+	 */
+	public static ByteBuffer header(int entry, int codeSize, int dataAddress, int dataSize, int variables) {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(entry);
+		buffer.putInt(codeSize).putInt(dataAddress).putInt(dataSize).putInt(variables);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * This method builds an entry of the variable table, ready to be written
+	 * @param name
+	 * @param address
+	 * @return
+	 */
+	public static ByteBuffer variable(String name, int address) {
+		byte bytes[] = name.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(8 + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(address).putInt(bytes.length).put(bytes);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * This method reads an executable from a file. The file is memory-mapped
+	 * and the code and the data are copied in bulk
+	 * @param filename the complete filename, with its extension
+	 * @return
+	 * @throws IOException if the file is not a valid binary executable
+	 */
+	public static BinaryExecutable read(String filename) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if ((size < HEADER_BYTES) || (size > Integer.MAX_VALUE))
+				throw new IOException("Invalid binary executable: "+filename);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != MAGIC)
+				throw new IOException("Not a binary executable: "+filename);
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported binary executable version "+version+": "+filename);
+			int entry = buffer.getInt();
+			int codeSize = buffer.getInt();
+			int dataAddress = buffer.getInt();
+			int dataSize = buffer.getInt();
+			int numVariables = buffer.getInt();
+			if ((codeSize < 0) || (dataSize < 0) || (dataAddress < 0) || (numVariables < 0)
+					|| ((long) codeSize + dataSize)*4 > buffer.remaining())
+				throw new IOException("Invalid binary executable: "+filename);
+			int code[] = new int[codeSize];
+			int data[] = new int[dataSize];
+			IntBuffer words = buffer.asIntBuffer();
+			words.get(code);
+			words.get(data);
+			buffer.position(buffer.position() + (codeSize + dataSize)*4);
+			BinaryExecutable executable = new BinaryExecutable(entry, code, dataAddress, data);
+			for (int i=0;i<numVariables;i++) {
+				if (buffer.remaining() < 8)
+					throw new IOException("Invalid binary executable: "+filename);
+				int address = buffer.getInt();
+				int length = buffer.getInt();
+				if ((length < 0) || (length > buffer.remaining()))
+					throw new IOException("Invalid binary executable: "+filename);
+				byte name[] = new byte[length];
+				buffer.get(name);
+				executable.addVariable(new String(name, StandardCharsets.UTF_8), address);
+			}
+			return executable;
+		}
+	}
+
+}
@@ -0,0 +1,293 @@
+package architecture;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+
+/**
+ * This class compiles hot loops of the fast interpreter into method handles.
+ *
+ * A loop is a basic block that starts in the target of a backward branch and ends
+ * in a jmp, jn or jz to its own first command. Each command becomes a method handle
+ * with its operands already bound, and the handles are chained with the
+ * java.lang.invoke combinators, so the JVM generates (and compiles) the bytecode of the
+ * whole block, working directly over the interpreter's registers and memory.
+ *
+ * A compiled block receives the interpreter and runs one iteration of the loop. It returns -1
+ * when the loop must be repeated, or the index (in the block) of the command that left the loop.
+ * Leaving the loop is a side exit: the PC is already set, and the interpreter goes on from there.
+ */
+public class BlockCompiler {
+
+	//returned by a compiled block when its last command jumped back to the first one
+	public static final int REPEAT = -1;
+
+	private static final MethodType COMMAND_TYPE = MethodType.methodType(void.class, FastInterpreter.class, int.class, int.class);
+	private static final MethodType BRANCH_TYPE = MethodType.methodType(boolean.class, FastInterpreter.class, int.class, int.class);
+
+	private MethodHandle commands[]; //commands 0 to 15, indexed by the command number
+	private MethodHandle jn;
+	private MethodHandle jz;
+
+	/**
+	 * The command handles are found by the same names used in the commands list of the architecture
+	 * @param commandsList
+	 */
+	public BlockCompiler(ArrayList<String> commandsList) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		commands = new MethodHandle[16];
+		try {
+			for (int i=0;i<commands.length;i++) {
+				commands[i] = lookup.findStatic(BlockCompiler.class, commandsList.get(i), COMMAND_TYPE);
+			}
+			jn = lookup.findStatic(BlockCompiler.class, "jn", BRANCH_TYPE);
+			jz = lookup.findStatic(BlockCompiler.class, "jz", BRANCH_TYPE);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * This method compiles the loop starting in the address head.
+	 * Only loops made of commands 0 to 18 using REG0 to REG3 and addresses inside the memory
+	 * are compiled, and the loop can not store into its own code.
+	 * @param decoded the decode cache of the interpreter
+	 * @param memorySize
+	 * @param head
+	 * @return the compiled block, or null if the loop can not be compiled
+	 */
+	public CompiledBlock compile(DecodedInstruction decoded[], int memorySize, int head) {
+		ArrayList<DecodedInstruction> block = new ArrayList<DecodedInstruction>();
+		ArrayList<Integer> addresses = new ArrayList<Integer>();
+		int pc = head;
+		while (true) {
+			if ((pc < 0)||(pc >= decoded.length)||(block.size() > memorySize))
+				return null;
+			DecodedInstruction instruction = decoded[pc];
+			if (instruction == null) //this command was never executed
+				return null;
+			if (instruction.parts != null) { //a superinstruction is compiled as its commands
+				for (int i=0;i<instruction.parts.length-1;i++) {
+					block.add(instruction.parts[i]);
+					addresses.add(pc);
+					pc += instruction.parts[i].length;
+				}
+				instruction = instruction.parts[instruction.parts.length-1];
+			}
+			if (!canCompile(instruction, memorySize))
+				return null;
+			block.add(instruction);
+			addresses.add(pc);
+			pc += instruction.length;
+			if ((instruction.command == 16)||(instruction.command == 17)||(instruction.command == 18)) {
+				if (instruction.operand1 == head) //the loop is closed
+					break;
+				if (instruction.command == 16) //the block jumps to another place
+					return null;
+			}
+		}
+		int end = pc;
+		for (DecodedInstruction instruction : block) {
+			int address = storedAddress(instruction);
+			if ((address >= head)&&(address < end)) //the loop changes its own code
+				return null;
+		}
+		return new CompiledBlock(head, end, block.size(), chain(block, addresses, head, 0));
+	}
+
+	/**
+	 * This method builds the handle for the commands from index i to the end of the block
+	 */
+	private MethodHandle chain(ArrayList<DecodedInstruction> block, ArrayList<Integer> addresses, int head, int i) {
+		DecodedInstruction instruction = block.get(i);
+		if (i == block.size()-1) { //the last command jumps back to head
+			if (instruction.command == 16)
+				return constant(REPEAT);
+			MethodHandle taken = MethodHandles.insertArguments(branch(instruction), 1, instruction.operand1, addresses.get(i)+instruction.length);
+			return MethodHandles.guardWithTest(taken, constant(REPEAT), constant(i));
+		}
+		MethodHandle rest = chain(block, addresses, head, i+1);
+		if ((instruction.command == 17)||(instruction.command == 18)) { //a side exit in the middle of the block
+			int next = addresses.get(i)+instruction.length;
+			MethodHandle taken = MethodHandles.insertArguments(branch(instruction), 1, instruction.operand1, next);
+			return MethodHandles.guardWithTest(taken, constant(i), rest);
+		}
+		MethodHandle command = MethodHandles.insertArguments(commands[instruction.command], 1, instruction.operand1, instruction.operand2);
+		return MethodHandles.foldArguments(rest, command);
+	}
+
+	private MethodHandle branch(DecodedInstruction instruction) {
+		return (instruction.command == 17)?jn:jz;
+	}
+
+	/**
+	 * This method returns a handle (FastInterpreter)int that always returns value
+	 */
+	private static MethodHandle constant(int value) {
+		return MethodHandles.dropArguments(MethodHandles.constant(int.class, value), 0, FastInterpreter.class);
+	}
+
+	/**
+	 * This method checks if a command can be compiled: only registers REG0 to REG3 can be used
+	 * (PC, IR and Flags are kept by the interpreter) and the addresses must be in the memory
+	 */
+	static boolean canCompile(DecodedInstruction instruction, int memorySize) {
+		int a = instruction.operand1;
+		int b = instruction.operand2;
+		switch (instruction.command) {
+		case 0: case 4: case 10: case 13: //regA regB
+			return isRegister(a) && isRegister(b);
+		case 1: case 5: case 8: case 11: //mem regB
+			return isAddress(a, memorySize) && isRegister(b);
+		case 2: case 6: case 9: case 12: //regA mem
+			return isRegister(a) && isAddress(b, memorySize);
+		case 3: case 7: case 14: //imm regB
+			return isRegister(b);
+		case 15: //regA
+			return isRegister(a);
+		case 16: case 17: case 18: //address
+			return isAddress(a, memorySize);
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isRegister(int id) {
+		return (id >= 0)&&(id < FastInterpreter.PC);
+	}
+
+	private static boolean isAddress(int address, int memorySize) {
+		return (address >= 0)&&(address < memorySize);
+	}
+
+	/**
+	 * This method returns the memory position changed by a command, or -1 if it changes no position
+	 */
+	private static int storedAddress(DecodedInstruction instruction) {
+		switch (instruction.command) {
+		case 2: case 6: case 9: case 12:
+			return instruction.operand2;
+		default:
+			return -1;
+		}
+	}
+
+	//the commands. They are named as in the commands list of the architecture
+
+	static void addRegReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, f.reg[a] + f.reg[b]);
+	}
+
+	static void addMemReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, f.readMemory(a) + f.reg[b]);
+	}
+
+	static void addRegMem(FastInterpreter f, int a, int b) {
+		int result = f.reg[a] + f.readMemory(b);
+		f.setStatusFlags(result);
+		f.storeMemory(b, result);
+	}
+
+	static void addImmReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, a + f.reg[b]);
+	}
+
+	static void subRegReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, f.reg[a] - f.reg[b]);
+	}
+
+	static void subMemReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, f.readMemory(a) - f.reg[b]);
+	}
+
+	static void subRegMem(FastInterpreter f, int a, int b) {
+		int result = f.reg[a] - f.readMemory(b);
+		f.setStatusFlags(result);
+		f.storeMemory(b, result);
+	}
+
+	static void subImmReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, a - f.reg[b]);
+	}
+
+	static void imulMemReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, f.readMemory(a) * f.reg[b]);
+	}
+
+	static void imulRegMem(FastInterpreter f, int a, int b) {
+		int result = f.reg[a] * f.readMemory(b);
+		f.setStatusFlags(result);
+		f.storeMemory(b, result);
+	}
+
+	static void imulRegReg(FastInterpreter f, int a, int b) {
+		f.storeResult(b, f.reg[a] * f.reg[b]);
+	}
+
+	static void moveMemReg(FastInterpreter f, int a, int b) {
+		f.reg[b] = f.readMemory(a);
+	}
+
+	static void moveRegMem(FastInterpreter f, int a, int b) {
+		f.storeMemory(b, f.reg[a]);
+	}
+
+	static void moveRegReg(FastInterpreter f, int a, int b) {
+		f.reg[b] = f.reg[a];
+	}
+
+	static void moveImmReg(FastInterpreter f, int a, int b) {
+		f.reg[b] = a;
+	}
+
+	static void incReg(FastInterpreter f, int a, int b) {
+		f.storeResult(a, f.reg[a] + 1);
+	}
+
+	/**
+	 * @return true if the program was deviated to address
+	 */
+	static boolean jn(FastInterpreter f, int address, int next) {
+		f.jump(address, next, f.bitNegative);
+		return f.bitNegative == 1;
+	}
+
+	/**
+	 * @return true if the program was deviated to address
+	 */
+	static boolean jz(FastInterpreter f, int address, int next) {
+		f.jump(address, next, f.bitZero);
+		return f.bitZero == 1;
+	}
+
+	/**
+	 * This class keeps a compiled loop and the addresses of its code
+	 */
+	public static class CompiledBlock {
+		final int head; //the first address of the loop
+		final int end; //the address just after the last command of the loop
+		final int length; //amount of commands in the loop
+		final MethodHandle code; //(FastInterpreter)int
+
+		CompiledBlock(int head, int end, int length, MethodHandle code) {
+			this.head = head;
+			this.end = end;
+			this.length = length;
+			this.code = code;
+		}
+
+		public int getHead() {
+			return head;
+		}
+
+		public int getEnd() {
+			return end;
+		}
+
+		public int getLength() {
+			return length;
+		}
+	}
+
+}
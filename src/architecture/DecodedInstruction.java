@@ -0,0 +1,98 @@
+package architecture;
+
+/**
+ * This class keeps one command already decoded from the memory:
+ * the command number, its operands and how many memory positions it uses.
+ * The meaning of each operand (register id, memory address or immediate value)
+ * depends on the command, as described in FastInterpreter
+ */
+public class DecodedInstruction {
+
+	//amount of memory positions used by each command (the command itself plus its operands)
+	private static final int LENGTHS[] = {
+			3, 3, 3, 3, //addRegReg, addMemReg, addRegMem, addImmReg
+			3, 3, 3, 3, //subRegReg, subMemReg, subRegMem, subImmReg
+			3, 3, 3,    //imulMemReg, imulRegMem, imulRegReg
+			3, 3, 3, 3, //moveMemReg, moveRegMem, moveRegReg, moveImmReg
+			2,          //incReg
+			2, 2, 2,    //jmp, jn, jz
+			4, 4, 4, 4  //jeq, jneq, jgt, jlw
+	};
+
+	//the longest command uses 4 positions
+	public static final int MAX_LENGTH = 4;
+
+	//the longest superinstruction is made of three commands with 3 positions each
+	public static final int MAX_FUSED_LENGTH = 9;
+
+	final int command;
+	final int operand1;
+	final int operand2;
+	final int operand3;
+	final int length;
+	final DecodedInstruction parts[]; //the commands of a superinstruction, or null
+
+	public DecodedInstruction(int command, int operand1, int operand2, int operand3) {
+		this.command = command;
+		this.operand1 = operand1;
+		this.operand2 = operand2;
+		this.operand3 = operand3;
+		this.length = lengthOf(command);
+		this.parts = null;
+	}
+
+	/**
+	 * This constructor builds a superinstruction (see Superinstructions) from the
+	 * commands stored one after the other in the memory
+	 * @param command the number of the superinstruction
+	 * @param parts
+	 */
+	public DecodedInstruction(int command, DecodedInstruction parts[]) {
+		this.command = command;
+		this.operand1 = parts[0].operand1;
+		this.operand2 = parts[0].operand2;
+		this.operand3 = parts[0].operand3;
+		int length = 0;
+		for (DecodedInstruction part : parts)
+			length += part.length;
+		this.length = length;
+		this.parts = parts;
+	}
+
+	/**
+	 * This method returns the amount of memory positions used by a command.
+	 * Unknown commands (such as -1) use only one position
+	 * @param command
+	 * @return
+	 */
+	public static int lengthOf(int command) {
+		if ((command >= 0)&&(command < LENGTHS.length))
+			return LENGTHS[command];
+		return 1;
+	}
+
+	public int getCommand() {
+		return command;
+	}
+
+	public int getOperand1() {
+		return operand1;
+	}
+
+	public int getOperand2() {
+		return operand2;
+	}
+
+	public int getOperand3() {
+		return operand3;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public boolean isFused() {
+		return parts != null;
+	}
+
+}
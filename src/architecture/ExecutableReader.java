@@ -0,0 +1,93 @@
+package architecture;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class reads executable files (.dxf): one word per line, in decimal, blank lines are ignored.
+ *
+ * The file is mapped into memory and its bytes are parsed directly into the image, so no
+ * String, no Integer and no line is built, and large executables are read in one single pass.
+ */
+public class ExecutableReader {
+
+	private ExecutableReader() {
+	}
+
+	/**
+	 * This method reads an executable file
+	 * @param filename the complete filename, with its extension
+	 * @return the words of the executable, in the same order of the file
+	 * @throws IOException
+	 * @throws NumberFormatException if a line is not a valid int
+	 */
+	public static int[] read(String filename) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			long bytes = channel.size();
+			if (bytes > Integer.MAX_VALUE)
+				throw new IOException("The executable is too large: "+filename);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+			return parse(buffer, (int) bytes, filename);
+		}
+	}
+
+	/**
+	 * This method parses the words of a mapped file.
+	 * Each word uses at least two bytes (a digit and a line break), so the image
+	 * never has more than bytes/2+1 words
+	 */
+	private static int[] parse(MappedByteBuffer buffer, int bytes, String filename) {
+		int image[] = new int[bytes/2 + 1];
+		int words = 0;
+		int line = 1;
+		long value = 0;
+		boolean negative = false;
+		boolean digits = false; //true while a word is being read
+		boolean signal = false; //true if the word being read began with '-'
+		for (int i=0;i<bytes;i++) {
+			byte b = buffer.get(i);
+			if ((b >= '0') && (b <= '9')) {
+				value = value*10 + (b - '0');
+				if (value > 1L + Integer.MAX_VALUE)
+					throw new NumberFormatException("Invalid word in "+filename+", line "+line);
+				digits = true;
+			}
+			else if ((b == '-') && !digits && !signal) {
+				negative = true;
+				signal = true;
+			}
+			else if ((b == '\n') || (b == '\r') || (b == ' ') || (b == '\t')) {
+				if (digits)
+					image[words++] = word(value, negative, filename, line);
+				else if (signal)
+					throw new NumberFormatException("Invalid word in "+filename+", line "+line);
+				if (b == '\n')
+					line++;
+				value = 0;
+				negative = false;
+				digits = false;
+				signal = false;
+			}
+			else
+				throw new NumberFormatException("Invalid word in "+filename+", line "+line);
+		}
+		if (digits) //the last line has no line break
+			image[words++] = word(value, negative, filename, line);
+		else if (signal)
+			throw new NumberFormatException("Invalid word in "+filename+", line "+line);
+		return Arrays.copyOf(image, words);
+	}
+
+	private static int word(long value, boolean negative, String filename, int line) {
+		if (negative)
+			value = -value;
+		if (value > Integer.MAX_VALUE)
+			throw new NumberFormatException("Invalid word in "+filename+", line "+line);
+		return (int) value;
+	}
+
+}
@@ -0,0 +1,758 @@
+package architecture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import architecture.BlockCompiler.CompiledBlock;
+import components.Memory;
+import components.Register;
+
+/**
+ * This class implements the functional (fast) execution mode of the architecture.
+ * It runs the same machine code (commands 0 to 22, see Architecture.fillCommandsList())
+ * directly over primitive copies of the registers and over the memory array,
+ * without moving any data through the buses, the ula or the demux.
+ *
+ * The registers are loaded from the architecture before the execution and written
+ * back when the program halts, so the results are seen in the components.
+ *
+ * The commands are executed as the instruction set defines them (see the comment of each
+ * case in step()), not as the current microprograms do. Only the jump microprograms are
+ * complete, so the two execution modes give the same results only for jumps. The other
+ * microprograms still leave different registers, flags and memory.
+ *
+ * Each command is decoded only once per run (see DecodedInstruction). Stores into
+ * decoded positions remove them from the cache, so self-modifying code still works.
+ * Loops repeated more than jitThreshold times are compiled (see BlockCompiler).
+ *
+ * The first profileWindow dispatches of a run are profiled, and the frequent sequences
+ * of commands are then decoded as superinstructions (see Superinstructions).
+ *
+ * When counting is on, the executions of each command are counted (see getCounts()), and the
+ * executions of each address are counted into the heatmap, if there is one (see setHeatmap()).
+ * The counts need every command to be dispatched by itself, so the loops are not compiled and no
+ * superinstruction is used while counting.
+ *
+ * Off-heap and sparse memories have no data list, and paged (forked) memories would lose their
+ * pages if their data list was taken, so their positions are accessed through Memory.getData()
+ * and Memory.setData(). The pages are copied only when they are stored into. The caches grow with the code,
+ * so large memories do not need large caches.
+ */
+public class FastInterpreter {
+
+	//register ids, in the same order used by Architecture.fillRegistersList()
+	protected static final int PC = 4;
+	protected static final int IR = 5;
+	protected static final int FLAGS = 6;
+	protected static final int NUM_REGISTERS = 7;
+
+	//the default amount of backward jumps to an address before the loop starting there is compiled
+	public static final int DEFAULT_JIT_THRESHOLD = 1000;
+
+	//the command of every word that is not a command (see decode())
+	private static final int HALT = -1;
+
+	//the initial size of the caches, that grow when commands are decoded beyond them
+	private static final int INITIAL_CACHE_SIZE = 1024;
+
+	private Architecture arch;
+	private int commandsCount; //commands 0 to commandsCount-1 are known
+	//the state below is used directly by the compiled blocks (see BlockCompiler)
+	int reg[];
+	int bitZero;
+	int bitNegative;
+	int memory[]; //null if the memory has no data list, or if it is paged
+	private Memory words; //the memory component, used when memory is null
+	private int statusMemory[];
+	private int memorySize;
+	private long instructions; //amount of instructions executed in the last run
+
+	//decode cache: the command stored in each address, already decoded.
+	//positions never visited (or changed after being decoded) are null
+	private DecodedInstruction decoded[];
+	private int codeEnd; //all decoded commands are below this address
+	private long decodes; //amount of decodings performed in the last run
+
+	//jit: loops that are executed many times are compiled into method handles
+	private int jitThreshold;
+	private BlockCompiler compiler;
+	private int hotness[]; //amount of backward jumps to each address
+	private CompiledBlock compiled[]; //the compiled loop starting in each address
+	private ArrayList<CompiledBlock> compiledBlocks;
+
+	//superinstructions: sequences of commands executed with one single dispatch
+	private Superinstructions superinstructions;
+	private int profileWindow; //amount of dispatches profiled before choosing the superinstructions
+	private int profileLeft; //amount of dispatches still to be profiled in this run
+	private boolean fusing; //true when the decoder builds superinstructions
+
+	private long counts[]; //executions of each command in the last run, null if they are not counted
+	private Heatmap heatmap; //executions of each address, null if they are not counted
+
+	private RunControl control; //watches the run, null if there is none
+	private long nextCheck; //the run calls the control when this amount of instructions is executed
+
+	public FastInterpreter(Architecture arch) {
+		this.arch = arch;
+		commandsCount = arch.getCommandsList().size();
+		reg = new int[NUM_REGISTERS];
+		jitThreshold = DEFAULT_JIT_THRESHOLD;
+		compiledBlocks = new ArrayList<CompiledBlock>();
+		superinstructions = new Superinstructions(arch.getCommandsList());
+		profileWindow = Superinstructions.DEFAULT_PROFILE_WINDOW;
+	}
+
+	public int getJitThreshold() {
+		return jitThreshold;
+	}
+
+	/**
+	 * This method sets how many times a loop must be repeated before being compiled.
+	 * Negative values turn the compilation off
+	 * @param jitThreshold
+	 */
+	public void setJitThreshold(int jitThreshold) {
+		this.jitThreshold = jitThreshold;
+	}
+
+	/**
+	 * This method returns the loops compiled in the last run
+	 * @return
+	 */
+	public ArrayList<CompiledBlock> getCompiledBlocks() {
+		return compiledBlocks;
+	}
+
+	public int getProfileWindow() {
+		return profileWindow;
+	}
+
+	/**
+	 * This method sets how many dispatches are profiled before the superinstructions are chosen.
+	 * Zero or negative values turn the superinstructions off
+	 * @param profileWindow
+	 */
+	public void setProfileWindow(int profileWindow) {
+		this.profileWindow = profileWindow;
+	}
+
+	public boolean isCounting() {
+		return counts != null;
+	}
+
+	/**
+	 * This method turns the counting of the executions of each command on or off.
+	 * While counting, the loops are not compiled and the superinstructions are not used
+	 * @param counting
+	 */
+	public void setCounting(boolean counting) {
+		if (!counting)
+			counts = null;
+		else if (counts == null)
+			counts = new long[arch.getCommandsList().size()];
+	}
+
+	/**
+	 * This method returns how many times each command was executed in the last run
+	 * @return indexed by the command number, or null if counting is off
+	 */
+	public long[] getCounts() {
+		return counts;
+	}
+
+	public Heatmap getHeatmap() {
+		return heatmap;
+	}
+
+	/**
+	 * This method sets the heatmap that counts the executions of each address (null stops the counting).
+	 * While counting, the loops are not compiled and the superinstructions are not used.
+	 * The heatmap is not cleared by the runs
+	 * @param heatmap
+	 */
+	public void setHeatmap(Heatmap heatmap) {
+		this.heatmap = heatmap;
+	}
+
+	/**
+	 * This method returns true if every command must be dispatched by itself, so it can be counted
+	 */
+	private boolean isCountingAny() {
+		return (counts != null)||(heatmap != null);
+	}
+
+	public RunControl getRunControl() {
+		return control;
+	}
+
+	/**
+	 * This method sets the control that watches the runs (null removes it). See RunControl
+	 * @param control
+	 */
+	public void setRunControl(RunControl control) {
+		this.control = control;
+	}
+
+	/**
+	 * This method returns the profile and the counters of the superinstructions of the last run
+	 * @return
+	 */
+	public Superinstructions getSuperinstructions() {
+		return superinstructions;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * This method returns the PC while the program runs. The registers are not shared between threads,
+	 * so another thread may read a PC some commands behind (see SimulatorEvents)
+	 * @return
+	 */
+	public int getCurrentPC() {
+		return reg[PC];
+	}
+
+	/**
+	 * This method returns the command being executed, kept in the IR just like the fetch of the microprograms.
+	 * As getCurrentPC(), it may be read by another thread some commands behind
+	 * @return
+	 */
+	public int getCurrentCommand() {
+		return reg[IR];
+	}
+
+	public long getDecodes() {
+		return decodes;
+	}
+
+	/**
+	 * This method executes the program stored in the memory, starting from the
+	 * current PC, until a command not known by the architecture (such as -1) is found
+	 */
+	public void run() {
+		load();
+		instructions = 0;
+		decodes = 0;
+		if (counts != null)
+			Arrays.fill(counts, 0);
+		nextCheck = Long.MAX_VALUE;
+		if (control != null)
+			runControlled();
+		else {
+			while (step()) {
+				instructions++;
+			}
+		}
+		save();
+	}
+
+	/**
+	 * This method executes the program calling the control whenever the commands it allowed were executed
+	 */
+	private void runControlled() {
+		long reported = 0; //instructions already reported to the control
+		nextCheck = control.started(arch);
+		boolean running = true;
+		while (running) {
+			while (instructions < nextCheck) {
+				if (!step()) {
+					running = false;
+					break;
+				}
+				instructions++;
+			}
+			if (running) {
+				long allowed = control.checkpoint(arch, instructions - reported, reg[PC]);
+				reported = instructions;
+				nextCheck = instructions + allowed;
+			}
+		}
+		control.halted(arch, instructions - reported);
+		nextCheck = Long.MAX_VALUE;
+	}
+
+	/**
+	 * This method copies the registers and the flags from the architecture components
+	 */
+	private void load() {
+		ArrayList<Register> registers = arch.getRegistersList();
+		for (int i=0;i<NUM_REGISTERS;i++) {
+			reg[i] = registers.get(i).getData();
+		}
+		bitZero = arch.getFlags().getBit(0);
+		bitNegative = arch.getFlags().getBit(1);
+		words = arch.getMemory();
+		memory = (words.hasDataList() && !words.isPaged())?words.getDataList():null; //a paged memory is kept paged, so forking it stays cheap
+		statusMemory = arch.getStatusMemory().getDataList();
+		memorySize = arch.getMemorySize();
+		//the memory may have been changed by the components since the last run,
+		//so the commands must be decoded again
+		if (decoded == null) {
+			int size = Math.min(memorySize, INITIAL_CACHE_SIZE);
+			decoded = new DecodedInstruction[size];
+			hotness = new int[size];
+			compiled = new CompiledBlock[size];
+		}
+		else {
+			Arrays.fill(decoded, 0, Math.min(codeEnd, decoded.length), null);
+			Arrays.fill(hotness, 0, Math.min(codeEnd, decoded.length), 0);
+			Arrays.fill(compiled, 0, Math.min(codeEnd, decoded.length), null);
+		}
+		compiledBlocks.clear();
+		codeEnd = 0;
+		superinstructions.clear();
+		profileLeft = isCountingAny()?0:Math.max(0, profileWindow);
+		fusing = false;
+	}
+
+	/**
+	 * This method writes the registers and the flags back into the architecture components
+	 */
+	private void save() {
+		ArrayList<Register> registers = arch.getRegistersList();
+		for (int i=0;i<NUM_REGISTERS;i++) {
+			registers.get(i).setData(reg[i]);
+		}
+		arch.getFlags().setBit(0, bitZero);
+		arch.getFlags().setBit(1, bitNegative);
+	}
+
+	/**
+	 * This method fetches and executes one single command.
+	 * The command is decoded only in the first time its address is visited
+	 * @return false if the command halts the machine
+	 */
+	private boolean step() {
+		int pc = reg[PC];
+		if ((pc < 0)||(pc >= memorySize))
+			return false;
+		DecodedInstruction instruction = (pc < decoded.length)?decoded[pc]:null; //the caches grow only when decoding
+		if (instruction == null)
+			instruction = decode(pc);
+		if (profileLeft > 0)
+			profile(instruction.command);
+		if ((counts != null)||(heatmap != null))
+			count(pc, instruction.command);
+		reg[IR] = instruction.command;
+		int a = instruction.operand1;
+		int b = instruction.operand2;
+		int result;
+		DecodedInstruction parts[] = instruction.parts;
+		switch (instruction.command) {
+		case 0: //addRegReg %regA %regB (regB <- regA + regB)
+			result = reg[a] + reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 1: //addMemReg mem %regB (regB <- memory[mem] + regB)
+			result = readMemory(a) + reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 2: //addRegMem %regA mem (memory[mem] <- regA + memory[mem])
+			result = reg[a] + readMemory(b);
+			setStatusFlags(result);
+			storeMemory(b, result);
+			reg[PC] = pc+3;
+			return true;
+		case 3: //addImmReg imm %regB (regB <- imm + regB)
+			result = a + reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 4: //subRegReg %regA %regB (regB <- regA - regB)
+			result = reg[a] - reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 5: //subMemReg mem %regB (regB <- memory[mem] - regB)
+			result = readMemory(a) - reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 6: //subRegMem %regA mem (memory[mem] <- regA - memory[mem])
+			result = reg[a] - readMemory(b);
+			setStatusFlags(result);
+			storeMemory(b, result);
+			reg[PC] = pc+3;
+			return true;
+		case 7: //subImmReg imm %regB (regB <- imm - regB)
+			result = a - reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 8: //imulMemReg mem %regB (regB <- memory[mem] * regB)
+			result = readMemory(a) * reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 9: //imulRegMem %regA mem (memory[mem] <- regA * memory[mem])
+			result = reg[a] * readMemory(b);
+			setStatusFlags(result);
+			storeMemory(b, result);
+			reg[PC] = pc+3;
+			return true;
+		case 10: //imulRegReg %regA %regB (regB <- regA * regB)
+			result = reg[a] * reg[b];
+			setStatusFlags(result);
+			storeRegister(b, result, pc+3);
+			return true;
+		case 11: //moveMemReg mem %regB (regB <- memory[mem])
+			storeRegister(b, readMemory(a), pc+3);
+			return true;
+		case 12: //moveRegMem %regA mem (memory[mem] <- regA)
+			storeMemory(b, reg[a]);
+			reg[PC] = pc+3;
+			return true;
+		case 13: //moveRegReg %regA %regB (regB <- regA)
+			storeRegister(b, reg[a], pc+3);
+			return true;
+		case 14: //moveImmReg imm %regB (regB <- imm)
+			storeRegister(b, a, pc+3);
+			return true;
+		case 15: //incReg %regA (regA++)
+			result = reg[a] + 1;
+			setStatusFlags(result);
+			storeRegister(a, result, pc+2);
+			return true;
+		case 16: //jmp address
+			reg[PC] = a;
+			break;
+		case 17: //jn address
+			jump(a, pc+2, bitNegative);
+			break;
+		case 18: //jz address
+			jump(a, pc+2, bitZero);
+			break;
+		case 19: //jeq %regA %regB address (jumps if regA == regB)
+			setStatusFlags(reg[a] - reg[b]);
+			jump(instruction.operand3, pc+4, bitZero);
+			break;
+		case 20: //jneq %regA %regB address (jumps if regA != regB)
+			setStatusFlags(reg[a] - reg[b]);
+			jump(instruction.operand3, pc+4, 1-bitZero);
+			break;
+		case 21: //jgt %regA %regB address (jumps if regA > regB)
+			setStatusFlags(reg[a] - reg[b]);
+			jump(instruction.operand3, pc+4, ((bitZero|bitNegative)==0)?1:0);
+			break;
+		case 22: //jlw %regA %regB address (jumps if regA < regB)
+			setStatusFlags(reg[a] - reg[b]);
+			jump(instruction.operand3, pc+4, bitNegative);
+			break;
+		case Superinstructions.LOAD_ADD_STORE: //moveMemReg, addRegReg, moveRegMem
+			reg[parts[0].operand2] = readMemory(parts[0].operand1);
+			result = reg[parts[1].operand1] + reg[parts[1].operand2];
+			loadOperateStore(instruction, pc, result);
+			return true;
+		case Superinstructions.LOAD_SUB_STORE: //moveMemReg, subRegReg, moveRegMem
+			reg[parts[0].operand2] = readMemory(parts[0].operand1);
+			result = reg[parts[1].operand1] - reg[parts[1].operand2];
+			loadOperateStore(instruction, pc, result);
+			return true;
+		case Superinstructions.LOAD_ADD: //moveMemReg, addRegReg
+			reg[parts[0].operand2] = readMemory(parts[0].operand1);
+			result = reg[parts[1].operand1] + reg[parts[1].operand2];
+			storeResult(parts[1].operand2, result);
+			reg[PC] = pc + instruction.length;
+			fused(instruction, 0);
+			return true;
+		case Superinstructions.SUB_JN: //subRegReg, jn
+			result = reg[a] - reg[b];
+			storeResult(b, result);
+			jump(parts[1].operand1, pc + instruction.length, bitNegative);
+			fused(instruction, 17);
+			break;
+		case Superinstructions.SUB_JZ: //subRegReg, jz
+			result = reg[a] - reg[b];
+			storeResult(b, result);
+			jump(parts[1].operand1, pc + instruction.length, bitZero);
+			fused(instruction, 18);
+			break;
+		case Superinstructions.INC_JN: //incReg, jn
+			storeResult(a, reg[a] + 1);
+			jump(parts[1].operand1, pc + instruction.length, bitNegative);
+			fused(instruction, 17);
+			break;
+		case Superinstructions.INC_JZ: //incReg, jz
+			storeResult(a, reg[a] + 1);
+			jump(parts[1].operand1, pc + instruction.length, bitZero);
+			fused(instruction, 18);
+			break;
+		default: //-1 (end of program) or any unknown command halts the machine
+			reg[IR] = readMemory(pc); //the IR keeps the word found, just like the fetch of the microprograms
+			return false;
+		}
+		//only jumps get here
+		if ((reg[PC] <= pc)&&(jitThreshold >= 0)&&!isCountingAny())
+			backwardJump();
+		return true;
+	}
+
+	/**
+	 * This method ends the superinstructions moveMemReg, add/subRegReg, moveRegMem:
+	 * the result of the operation is stored in its register and then moved into the memory
+	 * @param instruction
+	 * @param pc
+	 * @param result
+	 */
+	private void loadOperateStore(DecodedInstruction instruction, int pc, int result) {
+		DecodedInstruction parts[] = instruction.parts;
+		storeResult(parts[1].operand2, result);
+		reg[PC] = pc + instruction.length;
+		storeMemory(parts[2].operand2, reg[parts[2].operand1]);
+		fused(instruction, 12);
+	}
+
+	/**
+	 * This method finishes the execution of a superinstruction: the IR keeps the last command
+	 * and the other commands are counted as executed instructions
+	 * @param instruction
+	 * @param lastCommand
+	 */
+	private void fused(DecodedInstruction instruction, int lastCommand) {
+		reg[IR] = lastCommand;
+		instructions += instruction.parts.length - 1;
+		superinstructions.executed(instruction.command - Superinstructions.FIRST);
+	}
+
+	/**
+	 * This method counts an execution of a command. Unknown commands halt the machine, so they are not counted
+	 * @param pc the address of the command
+	 * @param command
+	 */
+	private void count(int pc, int command) {
+		if ((command < 0)||(command >= arch.getCommandsList().size()))
+			return;
+		if (counts != null)
+			counts[command]++;
+		if (heatmap != null)
+			heatmap.executed(pc, command);
+	}
+
+	/**
+	 * This method profiles a dispatched command. At the end of the profile window, the frequent
+	 * sequences are chosen and the commands are decoded again, so they can be fused
+	 * @param command
+	 */
+	private void profile(int command) {
+		superinstructions.profile(command);
+		if (--profileLeft == 0) {
+			fusing = superinstructions.choose();
+			if (fusing)
+				Arrays.fill(decoded, 0, codeEnd, null);
+		}
+	}
+
+	/**
+	 * This method is called after each backward jump. The loop starting in the
+	 * target address is compiled when it becomes hot, and compiled loops are executed
+	 * until they leave the loop.
+	 */
+	private void backwardJump() {
+		int head = reg[PC];
+		if ((head < 0)||(head >= compiled.length)) //the target is outside the memory, or it was never decoded
+			return;
+		CompiledBlock block = compiled[head];
+		if (block == null) {
+			if (++hotness[head] != jitThreshold) //the loop is compiled only once, when it reaches the threshold
+				return;
+			if (compiler == null)
+				compiler = new BlockCompiler(arch.getCommandsList());
+			block = compiler.compile(decoded, memorySize, head);
+			if (block == null) //this loop can not be compiled
+				return;
+			compiled[head] = block;
+			compiledBlocks.add(block);
+		}
+		runCompiled(block);
+	}
+
+	/**
+	 * This method runs a compiled loop, starting in its first command, until it leaves the loop
+	 * @param block
+	 */
+	private void runCompiled(CompiledBlock block) {
+		int exit;
+		try {
+			do {
+				if (instructions + block.length + 1 > nextCheck) //the checkpoint comes first. The jump into the loop is counted after it
+					return;
+				exit = (int) block.code.invokeExact(this);
+				if (exit == BlockCompiler.REPEAT)
+					instructions += block.length;
+			} while (exit == BlockCompiler.REPEAT);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+		instructions += exit + 1; //the commands executed in the last iteration
+	}
+
+	/**
+	 * This method decodes the command stored in the position pc and keeps it in the cache
+	 * @param pc
+	 * @return
+	 */
+	private DecodedInstruction decode(int pc) {
+		int command = readMemory(pc);
+		if ((command < 0)||(command >= commandsCount)) //data words halt, so they are never taken for superinstructions
+			command = HALT;
+		DecodedInstruction instruction = new DecodedInstruction(command, readMemory(pc+1),
+				readMemory(pc+2), readMemory(pc+3));
+		if (fusing)
+			instruction = fuse(pc, instruction);
+		if (pc >= decoded.length)
+			growCaches(pc);
+		decoded[pc] = instruction;
+		decodes++;
+		if (pc + instruction.length > codeEnd)
+			codeEnd = pc + instruction.length;
+		return instruction;
+	}
+
+	/**
+	 * This method grows the caches so they have the position pc
+	 * @param pc
+	 */
+	private void growCaches(int pc) {
+		int size = Math.min(memorySize, Math.max(pc+1, 2*decoded.length));
+		decoded = Arrays.copyOf(decoded, size);
+		hotness = Arrays.copyOf(hotness, size);
+		compiled = Arrays.copyOf(compiled, size);
+	}
+
+	/**
+	 * This method reads a position of the memory.
+	 * Just like Memory.read(), an address out of the memory range gives the address itself
+	 * (the bus keeps the address, and the command goes on with it)
+	 * @param address
+	 * @return
+	 */
+	int readMemory(int address) {
+		if ((address < 0)||(address >= memorySize))
+			return address;
+		if (memory != null)
+			return memory[address];
+		return words.getData(address);
+	}
+
+	/**
+	 * This method tries to build a superinstruction starting with the command in the position pc.
+	 * The commands are fused only when they use REG0 to REG3 and addresses inside the memory
+	 * @param pc
+	 * @param first the command already decoded
+	 * @return the superinstruction, or first if no enabled superinstruction matches the code
+	 */
+	private DecodedInstruction fuse(int pc, DecodedInstruction first) {
+		int s = superinstructions.candidate(first.command, 0);
+		while (s >= 0) {
+			int sequence[] = Superinstructions.sequence(s);
+			DecodedInstruction parts[] = new DecodedInstruction[sequence.length];
+			int address = pc;
+			int i;
+			for (i=0;i<sequence.length;i++) {
+				if ((address >= memorySize)||(readMemory(address) != sequence[i]))
+					break;
+				parts[i] = (i == 0)?first:new DecodedInstruction(readMemory(address), readMemory(address+1),
+						readMemory(address+2), readMemory(address+3));
+				if ((address + parts[i].length > memorySize)||!BlockCompiler.canCompile(parts[i], memorySize))
+					break;
+				address += parts[i].length;
+			}
+			if (i == sequence.length)
+				return new DecodedInstruction(Superinstructions.FIRST + s, parts);
+			s = superinstructions.candidate(first.command, s+1);
+		}
+		return first;
+	}
+
+	/**
+	 * This method stores a result into a register.
+	 * Just like the microprograms, the PC is incremented after the register is stored,
+	 * so a command that writes into PC itself makes the program jump to the next position
+	 * @param register
+	 * @param value
+	 * @param next the address of the next command
+	 */
+	private void storeRegister(int register, int value, int next) {
+		reg[PC] = next-1;
+		reg[register] = value;
+		reg[PC]++;
+	}
+
+	/**
+	 * This method stores a result into the memory.
+	 * If the position belongs to a command already decoded, that command is removed from
+	 * the cache, so programs that change their own code are still executed correctly
+	 * @param address
+	 * @param value
+	 */
+	void storeMemory(int address, int value) {
+		if (memory != null)
+			memory[address] = value;
+		else
+			words.setData(address, value);
+		if (address < codeEnd)
+			invalidate(address);
+	}
+
+	/**
+	 * This method removes from the cache all the decoded commands that use the position address,
+	 * and discards the compiled loops that contain it
+	 * @param address
+	 */
+	private void invalidate(int address) {
+		int first = Math.max(0, address - DecodedInstruction.MAX_FUSED_LENGTH + 1);
+		int last = Math.min(address, decoded.length-1);
+		for (int pc=first;pc<=last;pc++) {
+			DecodedInstruction instruction = decoded[pc];
+			if ((instruction != null)&&(pc + instruction.length > address))
+				decoded[pc] = null;
+		}
+		for (int i=compiledBlocks.size()-1;i>=0;i--) {
+			CompiledBlock block = compiledBlocks.get(i);
+			if ((address >= block.head)&&(address < block.end)) {
+				compiled[block.head] = null;
+				hotness[block.head] = 0; //it can be compiled again if it becomes hot
+				compiledBlocks.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * This method performs a conditional jump the same way the microprograms do:
+	 * both addresses are stored in the status memory and the bit selects one of them
+	 * @param address the address the PC is redirected to if the bit is 1
+	 * @param next the address of the next command
+	 * @param bit
+	 */
+	void jump(int address, int next, int bit) {
+		statusMemory[0] = next;
+		statusMemory[1] = address;
+		reg[PC] = statusMemory[bit];
+	}
+
+	/**
+	 * This method sets the flags bits according the result, just like Architecture.setStatusFlags()
+	 * @param result
+	 */
+	void setStatusFlags(int result) {
+		bitZero = (result==0)?1:0;
+		bitNegative = (result<0)?1:0;
+	}
+
+	/**
+	 * This method stores the result of an operation into a register, setting the flags
+	 * @param register
+	 * @param result
+	 */
+	void storeResult(int register, int result) {
+		setStatusFlags(result);
+		reg[register] = result;
+	}
+
+}
@@ -0,0 +1,91 @@
+package architecture;
+
+import java.util.Arrays;
+
+/**
+ * This class counts, for each address of the memory, how many commands were executed there and
+ * how many simulated cycles they took. The cycles of a command are the microsteps of its
+ * microprogram, fetch and decoding included, as measured by Architecture.getMicrosteps(), so both
+ * execution modes produce the same heatmap. Commands without microprogram take no cycles.
+ *
+ * The counts are kept in primitive arrays indexed by the address. The arrays grow with the code,
+ * so large memories do not need large heatmaps.
+ */
+public class Heatmap {
+
+	private static final int INITIAL_SIZE = 1024;
+
+	private int memorySize;
+	private long executions[];
+	private long cycles[];
+
+	/**
+	 * @param memorySize the addresses counted are below this size
+	 */
+	public Heatmap(int memorySize) {
+		this.memorySize = memorySize;
+		int size = Math.min(memorySize, INITIAL_SIZE);
+		executions = new long[size];
+		cycles = new long[size];
+	}
+
+	/**
+	 * This method counts one execution of a command
+	 * @param address where the command is
+	 * @param command the command number
+	 */
+	public void executed(int address, int command) {
+		if ((address < 0)||(address >= memorySize))
+			return;
+		if (address >= executions.length)
+			grow(address);
+		executions[address]++;
+		cycles[address] += Architecture.getMicrosteps(command);
+	}
+
+	private void grow(int address) {
+		int size = executions.length;
+		while (size <= address)
+			size = (int) Math.min((long) size*2, memorySize);
+		executions = Arrays.copyOf(executions, size);
+		cycles = Arrays.copyOf(cycles, size);
+	}
+
+	/**
+	 * @return the addresses below this one may have been executed
+	 */
+	public int size() {
+		return executions.length;
+	}
+
+	public long getExecutions(int address) {
+		return (address < executions.length)?executions[address]:0;
+	}
+
+	public long getCycles(int address) {
+		return (address < cycles.length)?cycles[address]:0;
+	}
+
+	public long getTotalExecutions() {
+		long total = 0;
+		for (long e : executions)
+			total += e;
+		return total;
+	}
+
+	public long getTotalCycles() {
+		long total = 0;
+		for (long c : cycles)
+			total += c;
+		return total;
+	}
+
+	/**
+	 * This method clears all the counts
+	 */
+	public void clear() {
+		Arrays.fill(executions, 0);
+		Arrays.fill(cycles, 0);
+	}
+
+}
@@ -0,0 +1,146 @@
+package architecture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import assembler.DebugMap;
+
+/**
+ * This class shows where a program spends its simulated cycles. It runs the executable (.dxf)
+ * with the heatmap on (see Heatmap) and uses the debug map (.dmap, see assembler.DebugMap) to
+ * add the cycles of each address into the source line and the label they came from.
+ *
+ * Usage: HeatmapReport <executable without .dxf> [memory size] [-micro] [-top n]
+ * -micro: runs the microprograms instead of the fast interpreter
+ * -top n: the amount of source lines shown (default: 20)
+ *
+ * The executable must be generated with Assembler -debug, so the debug map exists.
+ */
+public class HeatmapReport {
+
+	public static final int DEFAULT_TOP = 20;
+
+	/**
+	 * The executions and cycles added into a label or a source line
+	 */
+	static class Entry {
+		String name;
+		String source;
+		long executions;
+		long cycles;
+
+		Entry(String name, String source) {
+			this.name = name;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * This method builds the report of a heatmap
+	 * @param heatmap
+	 * @param map the debug map of the executable that produced the heatmap
+	 * @param top the amount of source lines shown
+	 * @return
+	 */
+	public static String report(Heatmap heatmap, DebugMap map, int top) {
+		Map<String, Entry> labels = new LinkedHashMap<>();
+		ArrayList<Entry> lines = new ArrayList<>();
+		Entry unknown = new Entry("?", "commands not found in the debug map");
+		long totalCycles = 0;
+		for (int i=0;i<map.size();i++) {
+			int address = map.getAddress(i);
+			Entry line = new Entry(Integer.toString(map.getLine(i)), map.getSource(i));
+			line.executions = heatmap.getExecutions(address);
+			line.cycles = heatmap.getCycles(address);
+			lines.add(line);
+			Entry label = labels.get(map.getLabel(i));
+			if (label == null) {
+				label = new Entry(map.getLabel(i), null);
+				labels.put(label.name, label);
+			}
+			label.executions += line.executions;
+			label.cycles += line.cycles;
+		}
+		for (int address=0;address<heatmap.size();address++) {
+			totalCycles += heatmap.getCycles(address);
+			if ((heatmap.getExecutions(address) > 0) && (map.find(address) < 0)) { //self-modifying code, or another map
+				unknown.executions += heatmap.getExecutions(address);
+				unknown.cycles += heatmap.getCycles(address);
+			}
+		}
+		ArrayList<Entry> byLabel = new ArrayList<>(labels.values());
+		if (unknown.executions > 0)
+			byLabel.add(unknown);
+		Comparator<Entry> hottest = new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Long.compare(b.cycles, a.cycles);
+			}
+		};
+		Collections.sort(byLabel, hottest);
+		Collections.sort(lines, hottest);
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.ROOT, "%d instructions, %d cycles%n", heatmap.getTotalExecutions(), totalCycles));
+		report.append(String.format("%n%-16s %12s %14s %7s%n", "label", "executions", "cycles", "%"));
+		for (Entry label : byLabel)
+			report.append(String.format(Locale.ROOT, "%-16s %12d %14d %6.2f%%%n", label.name, label.executions,
+					label.cycles, percent(label.cycles, totalCycles)));
+		report.append(String.format("%n%-6s %12s %14s %7s  %s%n", "line", "executions", "cycles", "%", "source"));
+		for (int i=0;(i<top)&&(i<lines.size());i++) {
+			Entry line = lines.get(i);
+			if (line.executions == 0)
+				break;
+			report.append(String.format(Locale.ROOT, "%-6s %12d %14d %6.2f%%  %s%n", line.name, line.executions,
+					line.cycles, percent(line.cycles, totalCycles), line.source));
+		}
+		return report.toString();
+	}
+
+	private static double percent(long part, long total) {
+		return (total == 0)?0:100.0*part/total;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: HeatmapReport <executable without .dxf> [memory size] [-micro] [-top n]");
+			return;
+		}
+		String filename = args[0];
+		int memorySize = Architecture.DEFAULT_MEMORY_SIZE;
+		boolean fastPath = true;
+		int top = DEFAULT_TOP;
+		for (int i=1;i<args.length;i++) {
+			if ("-micro".equals(args[i]))
+				fastPath = false;
+			else if ("-top".equals(args[i]) && (i+1 < args.length))
+				top = Integer.parseInt(args[++i]);
+			else
+				memorySize = Integer.parseInt(args[i]);
+		}
+		DebugMap map;
+		int image[];
+		try {
+			map = DebugMap.read(filename+".dmap");
+			image = ExecutableReader.read(filename+".dxf");
+		} catch (IOException | NumberFormatException e) {
+			System.out.println("FATAL ERROR! "+e.getMessage()+" (the executable must be assembled with -debug)");
+			return;
+		}
+		if (image.length > memorySize) {
+			System.out.println("FATAL ERROR! The executable does not fit into the memory");
+			return;
+		}
+		Architecture arch = new Architecture(false, fastPath, memorySize, Architecture.HEAP_MEMORY);
+		arch.setHeatmap(true);
+		arch.reset(image);
+		arch.controlUnitEexec();
+		System.out.print(report(arch.getHeatmap(), map, top));
+	}
+
+}
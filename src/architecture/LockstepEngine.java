@@ -0,0 +1,488 @@
+package architecture;
+
+import java.util.Arrays;
+
+/**
+ * This class runs N copies of the same program at the same time, in lockstep.
+ * Each copy (machine) has its own registers, flags and memory, but they are kept in
+ * a struct-of-arrays layout: one int[N] for each register and one int[memorySize*N]
+ * for all the memories, where the word address of the machine m is in memory[address*N + m].
+ * So each command is decoded only once and executed by simple loops over the machines,
+ * that can be vectorized by the JIT.
+ *
+ * In each step the engine executes the command in the smallest PC among the running machines.
+ * The machines with other PCs (they took other directions in jn, jz and the other
+ * conditional jumps) are masked off until the others reach them again. Machines whose
+ * code is different in that address are also masked off and executed in a later step.
+ *
+ * The commands behave as in FastInterpreter. Only REG0 to REG3 and addresses inside
+ * the memory can be used as operands: the machines running other commands halt.
+ */
+public class LockstepEngine {
+
+	//operations of the ula
+	private static final int ADD = 0;
+	private static final int SUB = 1;
+	private static final int MUL = 2;
+	private static final int MOVE = 3;
+
+	//conditions of the jumps
+	private static final int ALWAYS = 0;
+	private static final int NEGATIVE = 1;
+	private static final int ZERO = 2;
+	private static final int NOT_ZERO = 3;
+	private static final int GREATER = 4;
+
+	private static final int NUM_REGISTERS = 4; //REG0 to REG3
+
+	private int machines;
+	private int memorySize;
+	private int reg[][]; //reg[r][m] is the register r of the machine m
+	private int pc[];
+	private int ir[];
+	private int zero[];
+	private int negative[];
+	private int memory[]; //memory[address*machines + m]
+	private int statusMemory[]; //statusMemory[position*machines + m]
+	private long instructions[]; //amount of commands executed by each machine
+
+	private boolean running[];
+	private int runningCount;
+	private boolean uniform[]; //true if the address has the same word in all the machines
+	private int active[]; //the machines executing the current step
+	private int activeCount;
+	private int immediate[]; //an immediate operand repeated for each machine
+	private int ones[];
+	private int scratch[];
+	private long steps; //amount of steps performed by the engine
+	private long fullSteps; //amount of steps in which all the machines were active
+
+	/**
+	 * @param machines the amount of copies of the program
+	 * @param memorySize the amount of words in each memory
+	 */
+	public LockstepEngine(int machines, int memorySize) {
+		this.machines = machines;
+		this.memorySize = memorySize;
+		reg = new int[NUM_REGISTERS][machines];
+		pc = new int[machines];
+		ir = new int[machines];
+		zero = new int[machines];
+		negative = new int[machines];
+		memory = new int[memorySize*machines];
+		statusMemory = new int[2*machines];
+		instructions = new long[machines];
+		running = new boolean[machines];
+		uniform = new boolean[memorySize];
+		active = new int[machines];
+		immediate = new int[machines];
+		ones = new int[machines];
+		Arrays.fill(ones, 1);
+		scratch = new int[machines];
+	}
+
+	/**
+	 * This constructor uses the memory size of the architecture
+	 * @param machines
+	 */
+	public LockstepEngine(int machines) {
+		this(machines, new Architecture().getMemorySize());
+	}
+
+	public int getMachines() {
+		return machines;
+	}
+
+	public int getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * This method stores the same image into the memory of all the machines, starting from the position 0
+	 * @param image
+	 */
+	public void load(int image[]) {
+		for (int m=0;m<machines;m++)
+			load(m, image);
+	}
+
+	/**
+	 * This method stores an image into the memory of one machine, starting from the position 0.
+	 * The other positions of its memory are cleared
+	 * @param machine
+	 * @param image
+	 */
+	public void load(int machine, int image[]) {
+		for (int address=0;address<memorySize;address++)
+			memory[address*machines + machine] = (address < image.length)?image[address]:0;
+	}
+
+	public void setMemory(int machine, int address, int value) {
+		memory[address*machines + machine] = value;
+	}
+
+	public int getMemory(int machine, int address) {
+		return memory[address*machines + machine];
+	}
+
+	/**
+	 * This method returns a copy of the memory of one machine
+	 * @param machine
+	 * @return
+	 */
+	public int[] getMemory(int machine) {
+		int words[] = new int[memorySize];
+		for (int address=0;address<memorySize;address++)
+			words[address] = memory[address*machines + machine];
+		return words;
+	}
+
+	public int getStatusMemory(int machine, int position) {
+		return statusMemory[position*machines + machine];
+	}
+
+	/**
+	 * This method returns a register of a machine, using the ids of Architecture.getRegistersList()
+	 * (REG0 to REG3, PC and IR)
+	 * @param machine
+	 * @param id
+	 * @return
+	 */
+	public int getRegister(int machine, int id) {
+		if (id < NUM_REGISTERS)
+			return reg[id][machine];
+		if (id == FastInterpreter.PC)
+			return pc[machine];
+		if (id == FastInterpreter.IR)
+			return ir[machine];
+		throw new IllegalArgumentException("There is no register "+id+" in the lockstep engine");
+	}
+
+	public void setRegister(int machine, int id, int value) {
+		if (id < NUM_REGISTERS)
+			reg[id][machine] = value;
+		else if (id == FastInterpreter.PC)
+			pc[machine] = value;
+		else
+			throw new IllegalArgumentException("There is no register "+id+" in the lockstep engine");
+	}
+
+	/**
+	 * @param machine
+	 * @param bit 0 (zero) or 1 (negative), as in the Flags register
+	 * @return
+	 */
+	public int getFlag(int machine, int bit) {
+		return (bit == 0)?zero[machine]:negative[machine];
+	}
+
+	public long getInstructions(int machine) {
+		return instructions[machine];
+	}
+
+	/**
+	 * This method returns the amount of commands executed by all the machines
+	 * @return
+	 */
+	public long getTotalInstructions() {
+		long total = 0;
+		for (long i : instructions)
+			total += i;
+		return total;
+	}
+
+	public long getSteps() {
+		return steps;
+	}
+
+	public long getFullSteps() {
+		return fullSteps;
+	}
+
+	/**
+	 * This method runs all the machines until all of them halt
+	 */
+	public void run() {
+		Arrays.fill(running, true);
+		runningCount = machines;
+		Arrays.fill(instructions, 0);
+		steps = 0;
+		fullSteps = 0;
+		for (int address=0;address<memorySize;address++) {
+			uniform[address] = true;
+			int first = memory[address*machines];
+			for (int m=1;(m<machines)&&uniform[address];m++)
+				uniform[address] = (memory[address*machines + m] == first);
+		}
+		while (step()) {
+			steps++;
+		}
+	}
+
+	/**
+	 * This method executes the command in the smallest PC, in all the machines
+	 * having that PC and the same code
+	 * @return false if all the machines halted
+	 */
+	private boolean step() {
+		if (runningCount == 0)
+			return false;
+		int p = Integer.MAX_VALUE;
+		int count = 0;
+		int leader = -1;
+		for (int m=0;m<machines;m++) {
+			if (!running[m])
+				continue;
+			if (pc[m] < p) {
+				p = pc[m];
+				count = 1;
+				leader = m;
+			}
+			else if (pc[m] == p)
+				count++;
+		}
+		if ((p < 0)||(p >= memorySize)) { //the machines in this pc halt
+			selectMachines(p, leader, 0, true);
+			halt(null);
+			return true;
+		}
+		int command = memory[p*machines + leader];
+		int length = DecodedInstruction.lengthOf(command);
+		boolean sameCode = true;
+		for (int address=p;(address<p+length)&&(address<memorySize);address++)
+			sameCode &= uniform[address];
+		if ((count == machines)&&sameCode)
+			activeCount = machines; //all the machines run this step, there is no mask
+		else
+			selectMachines(p, leader, length, sameCode);
+		if (activeCount == machines)
+			fullSteps++;
+		int a = word(p+1, leader);
+		int b = word(p+2, leader);
+		int c = word(p+3, leader);
+		if (!execute(command, a, b, c, p+length))
+			halt(command);
+		return true;
+	}
+
+	/**
+	 * This method builds the list of machines with the pc p and the same code of the leader
+	 */
+	private void selectMachines(int p, int leader, int length, boolean sameCode) {
+		activeCount = 0;
+		for (int m=0;m<machines;m++) {
+			if (!running[m] || (pc[m] != p))
+				continue;
+			boolean same = true;
+			for (int address=p;!sameCode&&same&&(address<p+length)&&(address<memorySize);address++)
+				same = (memory[address*machines + m] == memory[address*machines + leader]);
+			if (same)
+				active[activeCount++] = m;
+		}
+	}
+
+	/**
+	 * This method reads a word of the leader's code.
+	 * Just like Memory.read(), an address out of the memory range gives the address itself
+	 */
+	private int word(int address, int leader) {
+		if (address < memorySize)
+			return memory[address*machines + leader];
+		return address;
+	}
+
+	/**
+	 * This method halts the active machines
+	 * @param command the command that halted them, or null if the pc is out of the memory
+	 */
+	private void halt(Integer command) {
+		for (int i=0;i<activeCount;i++) {
+			int m = (activeCount == machines)?i:active[i];
+			running[m] = false;
+			if (command != null)
+				ir[m] = command;
+		}
+		runningCount -= activeCount;
+	}
+
+	/**
+	 * This method executes one command in the active machines
+	 * @return false if the command halts the machines
+	 */
+	private boolean execute(int command, int a, int b, int c, int next) {
+		int n = machines;
+		switch (command) {
+		case 0: case 4: case 10: case 13: //regA regB
+			if (!isRegister(a) || !isRegister(b))
+				return unsupported(command);
+			break;
+		case 1: case 5: case 8: case 11: //mem regB
+			if (!isAddress(a) || !isRegister(b))
+				return unsupported(command);
+			break;
+		case 2: case 6: case 9: case 12: //regA mem
+			if (!isRegister(a) || !isAddress(b))
+				return unsupported(command);
+			uniform[b] = false;
+			break;
+		case 3: case 7: case 14: //imm regB
+			if (!isRegister(b))
+				return unsupported(command);
+			Arrays.fill(immediate, a);
+			break;
+		case 15: //regA
+			if (!isRegister(a))
+				return unsupported(command);
+			break;
+		case 16: case 17: case 18:
+			break;
+		case 19: case 20: case 21: case 22: //regA regB address
+			if (!isRegister(a) || !isRegister(b))
+				return unsupported(command);
+			break;
+		default: //-1 (end of program) or any unknown command halts the machines
+			return false;
+		}
+		switch (command) {
+		case 0: operate(ADD, reg[a], 0, reg[b], 0, reg[b], 0); break; //addRegReg
+		case 1: operate(ADD, memory, a*n, reg[b], 0, reg[b], 0); break; //addMemReg
+		case 2: operate(ADD, reg[a], 0, memory, b*n, memory, b*n); break; //addRegMem
+		case 3: operate(ADD, immediate, 0, reg[b], 0, reg[b], 0); break; //addImmReg
+		case 4: operate(SUB, reg[a], 0, reg[b], 0, reg[b], 0); break; //subRegReg
+		case 5: operate(SUB, memory, a*n, reg[b], 0, reg[b], 0); break; //subMemReg
+		case 6: operate(SUB, reg[a], 0, memory, b*n, memory, b*n); break; //subRegMem
+		case 7: operate(SUB, immediate, 0, reg[b], 0, reg[b], 0); break; //subImmReg
+		case 8: operate(MUL, memory, a*n, reg[b], 0, reg[b], 0); break; //imulMemReg
+		case 9: operate(MUL, reg[a], 0, memory, b*n, memory, b*n); break; //imulRegMem
+		case 10: operate(MUL, reg[a], 0, reg[b], 0, reg[b], 0); break; //imulRegReg
+		case 11: operate(MOVE, memory, a*n, null, 0, reg[b], 0); break; //moveMemReg
+		case 12: operate(MOVE, reg[a], 0, null, 0, memory, b*n); break; //moveRegMem
+		case 13: operate(MOVE, reg[a], 0, null, 0, reg[b], 0); break; //moveRegReg
+		case 14: operate(MOVE, immediate, 0, null, 0, reg[b], 0); break; //moveImmReg
+		case 15: operate(ADD, reg[a], 0, ones, 0, reg[a], 0); break; //incReg
+		case 16: jump(ALWAYS, a, next); break; //jmp
+		case 17: jump(NEGATIVE, a, next); break; //jn
+		case 18: jump(ZERO, a, next); break; //jz
+		case 19: compare(a, b); jump(ZERO, c, next); break; //jeq
+		case 20: compare(a, b); jump(NOT_ZERO, c, next); break; //jneq
+		case 21: compare(a, b); jump(GREATER, c, next); break; //jgt
+		case 22: compare(a, b); jump(NEGATIVE, c, next); break; //jlw
+		}
+		if (command < 16) { //the other commands already set the pc
+			if (activeCount == machines)
+				Arrays.fill(pc, next);
+			else
+				for (int i=0;i<activeCount;i++)
+					pc[active[i]] = next;
+		}
+		if (activeCount == machines) {
+			Arrays.fill(ir, command);
+			for (int m=0;m<n;m++)
+				instructions[m]++;
+		}
+		else {
+			for (int i=0;i<activeCount;i++) {
+				ir[active[i]] = command;
+				instructions[active[i]]++;
+			}
+		}
+		return true;
+	}
+
+	private boolean unsupported(int command) {
+		System.out.println("FATAL ERROR! The command "+command+" uses operands not supported by the lockstep engine");
+		return false;
+	}
+
+	private boolean isRegister(int id) {
+		return (id >= 0)&&(id < NUM_REGISTERS);
+	}
+
+	private boolean isAddress(int address) {
+		return (address >= 0)&&(address < memorySize);
+	}
+
+	/**
+	 * This method computes d = x op y in the active machines, setting the flags
+	 * (except for MOVE, that only copies x into d).
+	 * The arrays are registers (offset 0) or the memory (offset address*machines)
+	 */
+	private void operate(int op, int x[], int xo, int y[], int yo, int d[], int dOff) {
+		int n = machines;
+		if (activeCount == n) { //no mask: these loops can be vectorized
+			switch (op) {
+			case ADD:
+				for (int m=0;m<n;m++)
+					d[dOff+m] = x[xo+m] + y[yo+m];
+				break;
+			case SUB:
+				for (int m=0;m<n;m++)
+					d[dOff+m] = x[xo+m] - y[yo+m];
+				break;
+			case MUL:
+				for (int m=0;m<n;m++)
+					d[dOff+m] = x[xo+m] * y[yo+m];
+				break;
+			default:
+				System.arraycopy(x, xo, d, dOff, n);
+				return;
+			}
+			for (int m=0;m<n;m++) {
+				int result = d[dOff+m];
+				zero[m] = (result == 0)?1:0;
+				negative[m] = result >>> 31;
+			}
+			return;
+		}
+		for (int i=0;i<activeCount;i++) {
+			int m = active[i];
+			int result;
+			switch (op) {
+			case ADD: result = x[xo+m] + y[yo+m]; break;
+			case SUB: result = x[xo+m] - y[yo+m]; break;
+			case MUL: result = x[xo+m] * y[yo+m]; break;
+			default:
+				d[dOff+m] = x[xo+m];
+				continue;
+			}
+			d[dOff+m] = result;
+			zero[m] = (result == 0)?1:0;
+			negative[m] = result >>> 31;
+		}
+	}
+
+	/**
+	 * This method sets the flags with regA - regB, as jeq, jneq, jgt and jlw do
+	 */
+	private void compare(int a, int b) {
+		operate(SUB, reg[a], 0, reg[b], 0, scratch, 0);
+	}
+
+	/**
+	 * This method performs a jump in the active machines the same way FastInterpreter.jump() does:
+	 * both addresses are stored in the status memory and the condition selects one of them.
+	 * jmp (ALWAYS) only changes the pc
+	 */
+	private void jump(int condition, int address, int next) {
+		int n = machines;
+		if (condition == ALWAYS) {
+			for (int i=0;i<activeCount;i++)
+				pc[(activeCount == n)?i:active[i]] = address;
+			return;
+		}
+		for (int i=0;i<activeCount;i++) {
+			int m = (activeCount == n)?i:active[i];
+			int bit;
+			switch (condition) {
+			case NEGATIVE: bit = negative[m]; break;
+			case ZERO: bit = zero[m]; break;
+			case NOT_ZERO: bit = 1 - zero[m]; break;
+			default: bit = ((zero[m]|negative[m]) == 0)?1:0; //GREATER
+			}
+			statusMemory[m] = next;
+			statusMemory[n + m] = address;
+			pc[m] = (bit == 1)?address:next;
+		}
+	}
+
+}
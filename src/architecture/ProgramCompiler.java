@@ -0,0 +1,553 @@
+package architecture;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * This class is an ahead-of-time compiler: it translates an executable (.dxf) into a
+ * standalone java class that runs the same program with no interpretation at all.
+ *
+ * The program is split in basic blocks (the first command, the targets of the jumps and
+ * the commands after the jumps), each block becomes a method that returns the next PC, and
+ * the registers REG0 to REG3 and the flags are kept in private fields.
+ * Long blocks are split and the switches over the PC are split in groups, so no method passes
+ * the limit of the java class files (64k bytes) or the size the JIT compiles (8000 bytes), and
+ * the executable is kept in string constants, not in an array initializer, for the same reason.
+ * The generated class has public fields with the final state of the machine:
+ * registers (in the same order of Architecture.getRegistersList()), bitZero, bitNegative,
+ * memory and statusMemory.
+ *
+ * Programs that store into their own code, that use PC, IR or Flags as operands or that
+ * access addresses out of the memory can not be compiled.
+ */
+public class ProgramCompiler {
+
+	private static final int BLOCK_COMMANDS = 128; //maximum commands in the method of a block
+	private static final int DISPATCH_CASES = 512; //maximum cases in each switch over the PC
+	private static final int IMAGE_CHUNK_WORDS = 4096; //words in each string constant of the executable
+
+	private Architecture arch;
+	private ArrayList<String> commands;
+	private int memorySize;
+	private int image[]; //the executable, as it is stored in the memory
+	private TreeMap<Integer, DecodedInstruction> program; //all reachable commands, by address
+	private TreeMap<Integer, Boolean> leaders; //the addresses where a basic block starts
+
+	public ProgramCompiler() {
+		this(Architecture.DEFAULT_MEMORY_SIZE);
+	}
+
+	/**
+	 * Constructor for programs that run in an architecture with another memory size
+	 * (see assembler.Assembler(int memorySize))
+	 * @param memorySize the amount of positions in the memory of the architecture
+	 */
+	public ProgramCompiler(int memorySize) {
+		arch = new Architecture();
+		commands = arch.getCommandsList();
+		this.memorySize = memorySize;
+	}
+
+	/**
+	 * This method reads an executable file (.dxf), just like Architecture.readExec()
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void read(String filename) throws IOException {
+		image = ExecutableReader.read(filename+".dxf");
+	}
+
+	protected void setImage(ArrayList<Integer> words) {
+		image = new int[words.size()];
+		for (int i=0;i<image.length;i++)
+			image[i] = words.get(i);
+	}
+
+	/**
+	 * This method finds all the commands reachable from the address 0 and the basic blocks
+	 * @return false if the program can not be compiled
+	 */
+	public boolean analyze() {
+		program = new TreeMap<Integer, DecodedInstruction>();
+		leaders = new TreeMap<Integer, Boolean>();
+		ArrayList<Integer> pending = new ArrayList<Integer>();
+		pending.add(0);
+		leaders.put(0, true);
+		while (!pending.isEmpty()) {
+			int pc = pending.remove(pending.size()-1);
+			while (!program.containsKey(pc)) {
+				if ((pc < 0)||(pc >= memorySize)) {
+					System.out.println("FATAL ERROR! The program reaches the address "+pc+", out of the memory");
+					return false;
+				}
+				DecodedInstruction instruction = new DecodedInstruction(word(pc), word(pc+1), word(pc+2), word(pc+3));
+				if (!check(instruction, pc))
+					return false;
+				program.put(pc, instruction);
+				int command = instruction.command;
+				if ((command < 0)||(command >= commands.size())) //the machine halts here
+					break;
+				int next = pc + instruction.length;
+				if (command >= 16) { //jumps
+					int target = (command <= 18)?instruction.operand1:instruction.operand3;
+					leaders.put(target, true);
+					pending.add(target);
+					if (command == 16) //jmp has no next command
+						break;
+					leaders.put(next, true);
+				}
+				pc = next;
+			}
+		}
+		//the commands can not overlap (a jump into the middle of a command)
+		int end = 0;
+		for (int pc : program.keySet()) {
+			if (pc < end) {
+				System.out.println("FATAL ERROR! The address "+pc+" is in the middle of a command");
+				return false;
+			}
+			end = pc + program.get(pc).length;
+		}
+		splitBlocks();
+		//stores into the code are not allowed
+		for (DecodedInstruction instruction : program.values()) {
+			int command = instruction.command;
+			if ((command == 2)||(command == 6)||(command == 9)||(command == 12)) {
+				Integer code = program.floorKey(instruction.operand2);
+				if ((code != null)&&(code + program.get(code).length > instruction.operand2)) {
+					System.out.println("FATAL ERROR! The program changes its own code in the address "+instruction.operand2);
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This method adds leaders into the blocks with more than BLOCK_COMMANDS commands
+	 */
+	private void splitBlocks() {
+		ArrayList<Integer> splits = new ArrayList<Integer>();
+		for (int pc : leaders.keySet()) {
+			int count = 0;
+			while (true) {
+				int command = program.get(pc).command;
+				if ((command < 0)||(command >= 16)) //jumps and halts finish the block
+					break;
+				pc += program.get(pc).length;
+				if (leaders.containsKey(pc))
+					break;
+				if (++count == BLOCK_COMMANDS) {
+					splits.add(pc);
+					count = 0;
+				}
+			}
+		}
+		for (int pc : splits)
+			leaders.put(pc, true);
+	}
+
+	/**
+	 * This method returns the word stored in an address when the program starts
+	 */
+	private int word(int address) {
+		if ((address >= 0)&&(address < image.length))
+			return image[address];
+		return 0;
+	}
+
+	/**
+	 * This method checks if the operands of a command are registers REG0 to REG3 and addresses in the memory
+	 */
+	private boolean check(DecodedInstruction instruction, int pc) {
+		int a = instruction.operand1;
+		int b = instruction.operand2;
+		boolean ok;
+		switch (instruction.command) {
+		case 0: case 4: case 10: case 13:
+			ok = isRegister(a) && isRegister(b);
+			break;
+		case 1: case 5: case 8: case 11:
+			ok = isAddress(a) && isRegister(b);
+			break;
+		case 2: case 6: case 9: case 12:
+			ok = isRegister(a) && isAddress(b);
+			break;
+		case 3: case 7: case 14:
+			ok = isRegister(b);
+			break;
+		case 15:
+			ok = isRegister(a);
+			break;
+		case 16: case 17: case 18:
+			ok = isAddress(a);
+			break;
+		case 19: case 20: case 21: case 22:
+			ok = isRegister(a) && isRegister(b) && isAddress(instruction.operand3);
+			break;
+		default:
+			ok = true;
+		}
+		if (!ok)
+			System.out.println("FATAL ERROR! The command in the address "+pc+" can not be compiled");
+		return ok;
+	}
+
+	private boolean isRegister(int id) {
+		return (id >= 0)&&(id < FastInterpreter.PC);
+	}
+
+	private boolean isAddress(int address) {
+		return (address >= 0)&&(address < memorySize);
+	}
+
+	/**
+	 * This method generates the source code of the class
+	 * @param className
+	 * @return
+	 */
+	public String generate(String className) {
+		StringBuilder code = new StringBuilder();
+		code.append("/**\n");
+		code.append(" * Generated by architecture.ProgramCompiler. Do not edit\n");
+		code.append(" */\n");
+		code.append("public class ").append(className).append(" {\n\n");
+		code.append("\tpublic static final int MEMORY_SIZE = ").append(memorySize).append(";\n");
+		code.append("\t//the executable, in chunks of words separated by commas\n");
+		code.append("\tprivate static final String IMAGE[] = {\n");
+		for (int i=0;i<image.length;i+=IMAGE_CHUNK_WORDS) {
+			code.append("\t\t\t\"");
+			for (int j=i;j<Math.min(i + IMAGE_CHUNK_WORDS, image.length);j++)
+				code.append((j == i)?"":",").append(image[j]);
+			code.append("\",\n");
+		}
+		code.append("\t};\n\n");
+		code.append("\tpublic int registers[] = new int[").append(FastInterpreter.NUM_REGISTERS).append("];\n");
+		code.append("\tpublic int bitZero;\n");
+		code.append("\tpublic int bitNegative;\n");
+		code.append("\tpublic int memory[] = new int[MEMORY_SIZE];\n");
+		code.append("\tpublic int statusMemory[] = new int[2];\n");
+		code.append("\tprivate int r0, r1, r2, r3, z, n; //the registers and the flags while the program runs\n\n");
+		code.append("\tpublic ").append(className).append("() {\n");
+		code.append("\t\tint address = 0;\n");
+		code.append("\t\tfor (String chunk : IMAGE) {\n");
+		code.append("\t\t\tfor (String word : chunk.split(\",\")) {\n");
+		code.append("\t\t\t\tif (address < MEMORY_SIZE)\n");
+		code.append("\t\t\t\t\tmemory[address++] = Integer.parseInt(word);\n");
+		code.append("\t\t\t}\n");
+		code.append("\t\t}\n");
+		code.append("\t}\n\n");
+		code.append("\tpublic void run() {\n");
+		code.append("\t\tr0 = registers[0]; r1 = registers[1]; r2 = registers[2]; r3 = registers[3];\n");
+		code.append("\t\tz = bitZero; n = bitNegative;\n");
+		code.append("\t\tint pc = registers[").append(FastInterpreter.PC).append("];\n");
+		code.append("\t\twhile (pc >= 0) //each block returns the next PC, or -1 if the machine halts\n");
+		code.append("\t\t\tpc = dispatch(pc);\n");
+		code.append("\t}\n\n");
+		generateDispatch(code);
+		for (int leader : leaders.keySet())
+			generateBlock(code, leader);
+		code.append("\tpublic static void main(String[] args) {\n");
+		code.append("\t\t").append(className).append(" program = new ").append(className).append("();\n");
+		code.append("\t\tprogram.run();\n");
+		code.append("\t\tString names[] = {");
+		for (int i=0;i<FastInterpreter.NUM_REGISTERS;i++)
+			code.append("\"").append(arch.getRegistersList().get(i).getRegisterName()).append("\", ");
+		code.append("};\n");
+		code.append("\t\tfor (int i=0;i<names.length;i++)\n");
+		code.append("\t\t\tSystem.out.println(names[i]+\": \"+program.registers[i]);\n");
+		code.append("\t}\n\n");
+		code.append("}\n");
+		return code.toString();
+	}
+
+	/**
+	 * This method generates the methods that call the block of a PC: dispatch() chooses a group
+	 * of blocks by the address, and each group has a switch over the PC
+	 */
+	private void generateDispatch(StringBuilder code) {
+		ArrayList<Integer> addresses = new ArrayList<Integer>(leaders.keySet());
+		int groups = (addresses.size() + DISPATCH_CASES - 1) / DISPATCH_CASES;
+		code.append("\tprivate int dispatch(int pc) {\n");
+		for (int g=1;g<groups;g++)
+			code.append("\t\tif (pc < ").append(addresses.get(g*DISPATCH_CASES)).append(") return dispatch").append(g-1).append("(pc);\n");
+		code.append("\t\treturn dispatch").append(groups-1).append("(pc);\n");
+		code.append("\t}\n\n");
+		for (int g=0;g<groups;g++) {
+			code.append("\tprivate int dispatch").append(g).append("(int pc) {\n");
+			code.append("\t\tswitch (pc) {\n");
+			for (int leader : addresses.subList(g*DISPATCH_CASES, Math.min((g+1)*DISPATCH_CASES, addresses.size())))
+				code.append("\t\tcase ").append(leader).append(": return block").append(leader).append("();\n");
+			code.append("\t\tdefault: //the PC is not in the program\n");
+			code.append("\t\t\tthrow new IllegalStateException(\"PC out of the program: \"+pc);\n");
+			code.append("\t\t}\n");
+			code.append("\t}\n\n");
+		}
+	}
+
+	/**
+	 * This method generates the method of one basic block, that returns the next PC
+	 */
+	private void generateBlock(StringBuilder code, int pc) {
+		code.append("\tprivate int block").append(pc).append("() {\n");
+		code.append("\t\tint m[] = memory, s[] = statusMemory;\n");
+		code.append("\t\tint t;\n");
+		while (true) {
+			DecodedInstruction instruction = program.get(pc);
+			int next = pc + instruction.length;
+			code.append("\t\t//").append(pc).append(": ").append(describe(instruction)).append("\n");
+			if (!generateCommand(code, instruction, pc, next))
+				break; //the block finished with a jump or a halt
+			pc = next;
+			if (leaders.containsKey(pc)) { //the next block starts here
+				code.append("\t\treturn ").append(pc).append(";\n");
+				break;
+			}
+		}
+		code.append("\t}\n\n");
+	}
+
+	/**
+	 * This method generates one command
+	 * @return false if the command finishes the block
+	 */
+	private boolean generateCommand(StringBuilder code, DecodedInstruction instruction, int pc, int next) {
+		String a = "r"+instruction.operand1;
+		String b = "r"+instruction.operand2;
+		String memA = "m["+instruction.operand1+"]";
+		String memB = "m["+instruction.operand2+"]";
+		String immA = Integer.toString(instruction.operand1);
+		switch (instruction.command) {
+		case 0: operation(code, b, a+" + "+b); break;
+		case 1: operation(code, b, memA+" + "+b); break;
+		case 2: operation(code, memB, a+" + "+memB); break;
+		case 3: operation(code, b, "("+immA+") + "+b); break;
+		case 4: operation(code, b, a+" - "+b); break;
+		case 5: operation(code, b, memA+" - "+b); break;
+		case 6: operation(code, memB, a+" - "+memB); break;
+		case 7: operation(code, b, "("+immA+") - "+b); break;
+		case 8: operation(code, b, memA+" * "+b); break;
+		case 9: operation(code, memB, a+" * "+memB); break;
+		case 10: operation(code, b, a+" * "+b); break;
+		case 11: move(code, b, memA); break;
+		case 12: move(code, memB, a); break;
+		case 13: move(code, b, a); break;
+		case 14: move(code, b, immA); break;
+		case 15: operation(code, a, a+" + 1"); break;
+		case 16:
+			code.append("\t\treturn ").append(instruction.operand1).append(";\n");
+			return false;
+		case 17:
+			jump(code, "n", instruction.operand1, next);
+			return false;
+		case 18:
+			jump(code, "z", instruction.operand1, next);
+			return false;
+		case 19: case 20: case 21: case 22:
+			flags(code, a+" - "+b);
+			String bit = (instruction.command == 19)?"z":(instruction.command == 20)?"1 - z":(instruction.command == 21)?"(z | n) == 0 ? 1 : 0":"n";
+			jump(code, bit, instruction.operand3, next);
+			return false;
+		default: //the machine halts: the final state is stored into the fields
+			code.append("\t\tregisters[0] = r0; registers[1] = r1; registers[2] = r2; registers[3] = r3;\n");
+			code.append("\t\tregisters[").append(FastInterpreter.PC).append("] = ").append(pc).append(";\n");
+			code.append("\t\tregisters[").append(FastInterpreter.IR).append("] = ").append(instruction.command).append(";\n");
+			code.append("\t\tbitZero = z; bitNegative = n;\n");
+			code.append("\t\treturn -1;\n");
+			return false;
+		}
+		return true;
+	}
+
+	private void operation(StringBuilder code, String destination, String expression) {
+		flags(code, expression);
+		code.append("\t\t").append(destination).append(" = t;\n");
+	}
+
+	private void flags(StringBuilder code, String expression) {
+		code.append("\t\tt = ").append(expression).append(";\n");
+		code.append("\t\tz = (t == 0) ? 1 : 0; n = (t < 0) ? 1 : 0;\n");
+	}
+
+	private void move(StringBuilder code, String destination, String source) {
+		code.append("\t\t").append(destination).append(" = ").append(source).append(";\n");
+	}
+
+	/**
+	 * This method generates a conditional jump, storing both addresses into the status memory
+	 * just like the microprograms do
+	 */
+	private void jump(StringBuilder code, String bit, int target, int next) {
+		code.append("\t\ts[0] = ").append(next).append("; s[1] = ").append(target).append(";\n");
+		code.append("\t\treturn s[").append(bit).append("];\n");
+	}
+
+	/**
+	 * This method describes a command (for the comments in the generated code)
+	 */
+	private String describe(DecodedInstruction instruction) {
+		int command = instruction.command;
+		if ((command < 0)||(command >= commands.size()))
+			return "halt ("+command+")";
+		StringBuilder description = new StringBuilder(commands.get(command));
+		for (int i=1;i<instruction.length;i++) {
+			int operand = (i==1)?instruction.operand1:(i==2)?instruction.operand2:instruction.operand3;
+			description.append(" ").append(operand);
+		}
+		return description.toString();
+	}
+
+	/**
+	 * This method writes the generated class into the file <className>.java, in the directory
+	 * @param directory
+	 * @param className
+	 * @return the generated file
+	 * @throws IOException
+	 */
+	public File save(File directory, String className) throws IOException {
+		File file = new File(directory, className+".java");
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		writer.write(generate(className));
+		writer.close();
+		return file;
+	}
+
+	/**
+	 * This method compiles the generated class, runs it and compares its final state with the
+	 * final state of the architecture running the same executable
+	 * @param className
+	 * @return true if both final states are the same
+	 * @throws IOException
+	 */
+	public boolean verify(String className) throws IOException {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			System.out.println("FATAL ERROR! No java compiler available to verify the program");
+			return false;
+		}
+		File directory = File.createTempFile("compiled", "");
+		directory.delete();
+		directory.mkdirs();
+		try {
+			File source = save(directory, className);
+			if (javac.run(null, null, null, "-d", directory.getPath(), source.getPath()) != 0) {
+				System.out.println("FATAL ERROR! The generated class does not compile");
+				return false;
+			}
+			return compare(directory, className);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * This method runs the compiled class and the architecture and compares their final states
+	 */
+	private boolean compare(File directory, String className) throws IOException {
+		//running the architecture
+		Architecture reference = new Architecture(false, true, memorySize, Architecture.HEAP_MEMORY);
+		reference.reset(image);
+		reference.controlUnitEexec();
+		int expectedMemory[] = new int[memorySize];
+		reference.getMemory().copyTo(expectedMemory, 0);
+		int expectedRegisters[] = new int[FastInterpreter.NUM_REGISTERS];
+		for (int i=0;i<expectedRegisters.length;i++)
+			expectedRegisters[i] = reference.getRegistersList().get(i).getData();
+		//running the compiled class
+		URLClassLoader loader = new URLClassLoader(new URL[] {directory.toURI().toURL()});
+		try {
+			Class<?> compiledClass = loader.loadClass(className);
+			Object compiled = compiledClass.getConstructor().newInstance();
+			compiledClass.getMethod("run").invoke(compiled);
+			boolean same = Arrays.equals(expectedRegisters, (int[]) compiledClass.getField("registers").get(compiled))
+					&& (reference.getFlags().getBit(0) == compiledClass.getField("bitZero").getInt(compiled))
+					&& (reference.getFlags().getBit(1) == compiledClass.getField("bitNegative").getInt(compiled))
+					&& Arrays.equals(expectedMemory, (int[]) compiledClass.getField("memory").get(compiled))
+					&& Arrays.equals(reference.getStatusMemory().getDataList(), (int[]) compiledClass.getField("statusMemory").get(compiled));
+			if (!same)
+				System.out.println("FATAL ERROR! The compiled program and the architecture have different final states");
+			return same;
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("The compiled class can not be executed", e);
+		} finally {
+			loader.close();
+		}
+	}
+
+	/**
+	 * This method deletes a file, or a directory with everything in it
+	 */
+	private static void delete(File file) {
+		File files[] = file.listFiles();
+		if (files != null) {
+			for (File child : files)
+				delete(child);
+		}
+		file.delete();
+	}
+
+	/**
+	 * This method builds the name of the generated class from the executable name
+	 * @param filename
+	 * @return
+	 */
+	public static String classNameOf(String filename) {
+		String name = new File(filename).getName();
+		StringBuilder className = new StringBuilder();
+		for (char c : name.toCharArray()) {
+			if (Character.isJavaIdentifierPart(c))
+				className.append(c);
+		}
+		if ((className.length() == 0)||!Character.isJavaIdentifierStart(className.charAt(0)))
+			className.insert(0, "Program");
+		className.setCharAt(0, Character.toUpperCase(className.charAt(0)));
+		return className.toString();
+	}
+
+	/**
+	 * Usage: ProgramCompiler <executable without .dxf> [memory size] [-verify]
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: ProgramCompiler <executable without .dxf> [memory size] [-verify]");
+			return;
+		}
+		String filename = args[0];
+		int memorySize = Architecture.DEFAULT_MEMORY_SIZE;
+		boolean verify = false;
+		for (int i=1;i<args.length;i++) {
+			if ("-verify".equals(args[i]))
+				verify = true;
+			else
+				memorySize = Integer.parseInt(args[i]);
+		}
+		ProgramCompiler compiler = new ProgramCompiler(memorySize);
+		System.out.println("Reading executable file: "+filename+".dxf");
+		compiler.read(filename);
+		if (!compiler.analyze())
+			return;
+		String className = classNameOf(filename);
+		File directory = new File(filename).getAbsoluteFile().getParentFile();
+		System.out.println("Generating class: "+className+".java");
+		compiler.save(directory, className);
+		if (verify) {
+			System.out.println("Verifying the compiled program");
+			if (compiler.verify(className))
+				System.out.println("The compiled program has the same final state of the architecture");
+		}
+		System.out.println("Finished");
+	}
+
+}
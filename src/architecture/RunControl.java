@@ -0,0 +1,39 @@
+package architecture;
+
+/**
+ * This interface watches and controls the run of a program (see Architecture.setRunControl()).
+ * The interpreters report their progress in checkpoints, and run only the amount of commands
+ * allowed by the last checkpoint before calling the next one. A checkpoint may block, so the
+ * run is paused until the control allows it to go on.
+ *
+ * The progress is given as the amount of commands executed since the last call, so the
+ * control does not need to keep anything about each architecture.
+ * Compiled loops and superinstructions are not split, so a run may pass the allowed amount
+ * by the commands of one superinstruction.
+ */
+public interface RunControl {
+
+	/**
+	 * This method is called when the run starts
+	 * @param arch
+	 * @return the amount of commands that may be executed before the first checkpoint
+	 */
+	long started(Architecture arch);
+
+	/**
+	 * This method is called when the allowed commands were executed. It may block
+	 * @param arch
+	 * @param executed the commands executed since the last call
+	 * @param pc the address of the next command
+	 * @return the amount of commands that may be executed before the next checkpoint (more than 0)
+	 */
+	long checkpoint(Architecture arch, long executed, int pc);
+
+	/**
+	 * This method is called when the program halts
+	 * @param arch
+	 * @param executed the commands executed since the last call
+	 */
+	void halted(Architecture arch, long executed);
+
+}
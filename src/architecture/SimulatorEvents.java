@@ -0,0 +1,236 @@
+package architecture;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class publishes the events of the simulator, so the time spent by it can be seen
+ * together with the other activities of the JVM (garbage collection, cpu, other threads):
+ * - load: an executable was read into the memory (Architecture.readExec(), Architecture.readBinaryExec())
+ * - run start and halt: a program started and stopped (Architecture.controlUnitEexec())
+ * - assembly phase: a phase of the assembler finished (parse, checkLabels, resolveSymbols, ...)
+ * - instruction: the command being executed by a running architecture, sampled periodically
+ *
+ * The events are delivered to a listener (see setListener()). While there is no listener, each event
+ * point reads one single field, so the events cost nothing in practice. The instructions are sampled by
+ * a separate thread that reads the PC and the command published by the running architectures (see
+ * Architecture.getCurrentPC() and getCurrentCommand()), so the interpreters are never slowed down by the
+ * sampling, even while the listener is set. The sampler never reads the memories, that are not shared
+ * between threads (a paged memory may be changed by the running program while it is read).
+ *
+ * Two listeners are given. JfrListener commits Flight Recorder events, so the simulator is seen in the same
+ * recording as the GC and the cpu. It is in the src-jfr source folder, built only by Java 11 or later (the rest
+ * of the simulator runs in Java 7, where jdk.jfr does not exist), and it is loaded by its name (see
+ * createJfrListener()). LogListener writes the events into a file, stamped with the wall clock and System.nanoTime().
+ * The system property simulator.events=jfr turns on the Flight Recorder events, and simulator.events=file
+ * writes them into the file. simulator.events.sample sets the sampling period in ms (0 disables it).
+ */
+public final class SimulatorEvents {
+
+	public static final long DEFAULT_SAMPLE_PERIOD = 10; //ms
+
+	/**
+	 * This interface receives the events. The times are given by System.nanoTime().
+	 * The methods are called by the thread that produced the event, except instructionSampled(),
+	 * called by the sampling thread
+	 */
+	public interface Listener {
+		void programLoaded(String filename, int words, long start, long duration);
+		void runStarted(Architecture arch, long start);
+		void runHalted(Architecture arch, long start, long duration, long instructions);
+		void assemblyPhase(String phase, long start, long duration);
+		void instructionSampled(Architecture arch, int pc, int opcode);
+	}
+
+	private static volatile Listener listener;
+	private static ScheduledExecutorService sampler;
+	private static final Set<Architecture> running = Collections.newSetFromMap(new ConcurrentHashMap<Architecture, Boolean>());
+
+	public static final String JFR = "jfr"; //simulator.events=jfr turns on the Flight Recorder events
+	private static final String JFR_LISTENER = "architecture.JfrListener";
+
+	static {
+		String file = System.getProperty("simulator.events");
+		if (file != null) {
+			long period = Long.getLong("simulator.events.sample", DEFAULT_SAMPLE_PERIOD);
+			if (JFR.equals(file)) {
+				Listener jfr = createJfrListener();
+				if (jfr != null)
+					setListener(jfr, period);
+			}
+			else {
+				try {
+					setListener(new LogListener(new PrintStream(new FileOutputStream(file, true), true)), period);
+				} catch (FileNotFoundException e) {
+					System.out.println("FATAL ERROR! The events file "+file+" can not be written");
+				}
+			}
+		}
+	}
+
+	private SimulatorEvents() {
+	}
+
+	/**
+	 * This method creates the listener that commits Flight Recorder events (see JfrListener, in src-jfr).
+	 * It is loaded by its name, so the simulator still runs where jdk.jfr or the listener are missing
+	 * @return the listener, or null if jdk.jfr or the listener are not present
+	 */
+	public static Listener createJfrListener() {
+		try {
+			Class.forName("jdk.jfr.Event");
+		} catch (ClassNotFoundException e) {
+			System.out.println("FATAL ERROR! The Flight Recorder events need Java 11 or later");
+			return null;
+		}
+		try {
+			return (Listener) Class.forName(JFR_LISTENER).getConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			System.out.println("FATAL ERROR! "+JFR_LISTENER+" can not be loaded (it is built from src-jfr): "+e);
+			return null;
+		}
+	}
+
+	/**
+	 * This method sets the listener that receives the events, replacing the current one
+	 * @param newListener null stops the events
+	 * @param samplePeriod the period of the instruction samples, in ms. 0 means no samples
+	 */
+	public static synchronized void setListener(Listener newListener, long samplePeriod) {
+		if (sampler != null) {
+			sampler.shutdownNow();
+			sampler = null;
+		}
+		listener = newListener;
+		if ((newListener == null) || (samplePeriod <= 0))
+			return;
+		sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "simulator-events-sampler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sampler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				sample();
+			}
+		}, samplePeriod, samplePeriod, TimeUnit.MILLISECONDS);
+	}
+
+	public static Listener getListener() {
+		return listener;
+	}
+
+	public static boolean isEnabled() {
+		return listener != null;
+	}
+
+	/**
+	 * This method returns the start time of an event
+	 * @return System.nanoTime(), or 0 if the events are off (so nothing is spent)
+	 */
+	public static long begin() {
+		return (listener != null)?System.nanoTime():0;
+	}
+
+	public static void programLoaded(String filename, int words, long start) {
+		Listener l = listener;
+		if (l != null)
+			l.programLoaded(filename, words, start, System.nanoTime()-start);
+	}
+
+	/**
+	 * This method starts the run of an architecture, that is sampled until runHalted()
+	 * @param arch
+	 * @return the start time of the run, or 0 if the events are off
+	 */
+	public static long runStarted(Architecture arch) {
+		Listener l = listener;
+		if (l == null)
+			return 0;
+		long start = System.nanoTime();
+		running.add(arch);
+		l.runStarted(arch, start);
+		return start;
+	}
+
+	public static void runHalted(Architecture arch, long start, long instructions) {
+		running.remove(arch);
+		Listener l = listener;
+		if ((l != null) && (start != 0)) //a run started without events is not reported
+			l.runHalted(arch, start, System.nanoTime()-start, instructions);
+	}
+
+	public static void assemblyPhase(String phase, long start) {
+		Listener l = listener;
+		if (l != null)
+			l.assemblyPhase(phase, start, System.nanoTime()-start);
+	}
+
+	/**
+	 * This method samples the command being executed by each running architecture.
+	 * The PC and the command are read while the program runs, so they may be some commands behind
+	 */
+	static void sample() {
+		Listener l = listener;
+		if (l == null)
+			return;
+		for (Architecture arch : running)
+			l.instructionSampled(arch, arch.getCurrentPC(), arch.getCurrentCommand());
+	}
+
+	/**
+	 * This listener writes one line for each event: the wall clock (ms), System.nanoTime(),
+	 * the name of the thread, the event and its fields
+	 */
+	public static class LogListener implements Listener {
+
+		private PrintStream out;
+
+		public LogListener(PrintStream out) {
+			this.out = out;
+		}
+
+		private void log(long time, String event) {
+			out.println(System.currentTimeMillis()+" "+time+" "+Thread.currentThread().getName()+" "+event);
+		}
+
+		@Override
+		public void programLoaded(String filename, int words, long start, long duration) {
+			log(start, "load file="+filename+" words="+words+" duration="+duration);
+		}
+
+		@Override
+		public void runStarted(Architecture arch, long start) {
+			log(start, "runStart arch="+System.identityHashCode(arch)+" pc="+arch.getCurrentPC());
+		}
+
+		@Override
+		public void runHalted(Architecture arch, long start, long duration, long instructions) {
+			log(start+duration, "runHalt arch="+System.identityHashCode(arch)+" instructions="+instructions+" duration="+duration);
+		}
+
+		@Override
+		public void assemblyPhase(String phase, long start, long duration) {
+			log(start, "assembly phase="+phase+" duration="+duration);
+		}
+
+		@Override
+		public void instructionSampled(Architecture arch, int pc, int opcode) {
+			log(System.nanoTime(), "instruction arch="+System.identityHashCode(arch)+" pc="+pc+" opcode="+opcode);
+		}
+
+	}
+
+}
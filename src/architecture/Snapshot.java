@@ -0,0 +1,71 @@
+package architecture;
+
+/**
+ * This class keeps the complete state of an architecture in one single array (see Architecture.snapshot()).
+ * The registers are stored in the same order of Architecture.getRegistersList(),
+ * followed by the flags bits, the ula registers, the pending stores, the status memory and the memory.
+ *
+ * Snapshots are immutable: the array is never changed after being built, so one snapshot can be
+ * restored any number of times, by any number of architectures, to fork runs from the same point.
+ */
+public final class Snapshot {
+
+	//positions of the state in the array
+	static final int REGISTERS = 0; //REG0 to REG3, PC, IR and Flags
+	static final int BIT_ZERO = REGISTERS + FastInterpreter.NUM_REGISTERS;
+	static final int BIT_NEGATIVE = BIT_ZERO + 1;
+	static final int ULA_REG0 = BIT_NEGATIVE + 1;
+	static final int ULA_REG1 = ULA_REG0 + 1;
+	static final int STORE_POSITION = ULA_REG1 + 1; //Memory.storePosition of the memory
+	static final int STATUS_STORE_POSITION = STORE_POSITION + 1; //Memory.storePosition of the status memory
+	static final int STATUS_MEMORY = STATUS_STORE_POSITION + 1;
+	static final int MEMORY = STATUS_MEMORY + 2;
+
+	final int state[];
+
+	Snapshot(int state[]) {
+		this.state = state;
+	}
+
+	/**
+	 * This method returns the size of the array needed to keep a machine with memorySize positions
+	 */
+	static int sizeOf(int memorySize) {
+		return MEMORY + memorySize;
+	}
+
+	public int getMemorySize() {
+		return state.length - MEMORY;
+	}
+
+	/**
+	 * @param id the register id, as in Architecture.getRegistersList()
+	 * @return
+	 */
+	public int getRegister(int id) {
+		return state[REGISTERS + id];
+	}
+
+	/**
+	 * @param bit 0 (zero) or 1 (negative)
+	 * @return
+	 */
+	public int getFlag(int bit) {
+		return state[BIT_ZERO + bit];
+	}
+
+	public int getMemory(int address) {
+		return state[MEMORY + address];
+	}
+
+	/**
+	 * This method returns a copy of the memory kept in this snapshot
+	 * @return
+	 */
+	public int[] getMemory() {
+		int memory[] = new int[getMemorySize()];
+		System.arraycopy(state, MEMORY, memory, 0, memory.length);
+		return memory;
+	}
+
+}
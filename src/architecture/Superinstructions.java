@@ -0,0 +1,193 @@
+package architecture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class keeps the superinstructions of the fast interpreter: short sequences of
+ * commands that are executed by one single handler, with one dispatch and one flags update.
+ *
+ * In the beginning of a run the interpreter profiles the pairs and triples of commands.
+ * After the profile window, the superinstructions whose sequence is frequent enough
+ * are enabled, and from then on the decoder fuses these sequences (see FastInterpreter.decode()).
+ */
+public class Superinstructions {
+
+	//the superinstructions. The command number of a fused instruction is FIRST + its id
+	public static final int FIRST = 100;
+	public static final int LOAD_ADD_STORE = FIRST;
+	public static final int LOAD_SUB_STORE = FIRST + 1;
+	public static final int LOAD_ADD = FIRST + 2;
+	public static final int SUB_JN = FIRST + 3;
+	public static final int SUB_JZ = FIRST + 4;
+	public static final int INC_JN = FIRST + 5;
+	public static final int INC_JZ = FIRST + 6;
+
+	//the sequence of commands of each superinstruction, the longest ones first
+	private static final int SEQUENCES[][] = {
+			{11, 0, 12}, //moveMemReg, addRegReg, moveRegMem
+			{11, 4, 12}, //moveMemReg, subRegReg, moveRegMem
+			{11, 0}, //moveMemReg, addRegReg
+			{4, 17}, //subRegReg, jn
+			{4, 18}, //subRegReg, jz
+			{15, 17}, //incReg, jn
+			{15, 18} //incReg, jz
+	};
+
+	//a sequence is fused when it is at least this fraction of the profiled dispatches
+	public static final double MIN_SHARE = 0.01;
+
+	public static final int DEFAULT_PROFILE_WINDOW = 10000;
+
+	private ArrayList<String> commandsList;
+	private int numCommands;
+	private long pairs[]; //profile of the pairs of commands
+	private long triples[]; //profile of the triples of commands, grouped by their first pair
+	private boolean touched[]; //the pairs whose group of triples was changed since the last clear
+	private int previous1; //the last profiled command
+	private int previous2; //the command before the last one
+	private long profiled; //amount of profiled dispatches
+	private boolean enabled[];
+	private long executions[]; //how many times each superinstruction was executed
+
+	public Superinstructions(ArrayList<String> commandsList) {
+		this.commandsList = commandsList;
+		numCommands = commandsList.size();
+		pairs = new long[numCommands*numCommands];
+		triples = new long[numCommands*numCommands*numCommands];
+		touched = new boolean[numCommands*numCommands];
+		Arrays.fill(touched, true);
+		enabled = new boolean[SEQUENCES.length];
+		executions = new long[SEQUENCES.length];
+		clear();
+	}
+
+	/**
+	 * This method clears the profile, the enabled superinstructions and their counters.
+	 * Only the groups of triples that were changed are cleared, so short runs are cleared fast
+	 */
+	public void clear() {
+		Arrays.fill(pairs, 0);
+		for (int pair=0;pair<touched.length;pair++) {
+			if (touched[pair]) {
+				Arrays.fill(triples, pair*numCommands, (pair+1)*numCommands, 0);
+				touched[pair] = false;
+			}
+		}
+		Arrays.fill(enabled, false);
+		Arrays.fill(executions, 0);
+		previous1 = -1;
+		previous2 = -1;
+		profiled = 0;
+	}
+
+	/**
+	 * This method inserts a dispatched command into the profile
+	 * @param command
+	 */
+	public void profile(int command) {
+		profiled++;
+		if ((command < 0)||(command >= numCommands)) { //halt and fused commands break the sequences
+			previous1 = -1;
+			previous2 = -1;
+			return;
+		}
+		if (previous1 >= 0) {
+			pairs[previous1*numCommands + command]++;
+			if (previous2 >= 0) {
+				int pair = previous2*numCommands + previous1;
+				triples[pair*numCommands + command]++;
+				touched[pair] = true;
+			}
+		}
+		previous2 = previous1;
+		previous1 = command;
+	}
+
+	/**
+	 * This method enables the superinstructions whose sequences are frequent in the profile
+	 * @return true if any superinstruction was enabled
+	 */
+	public boolean choose() {
+		boolean any = false;
+		for (int i=0;i<SEQUENCES.length;i++) {
+			enabled[i] = (count(SEQUENCES[i]) >= MIN_SHARE * profiled)&&(count(SEQUENCES[i]) > 0);
+			any |= enabled[i];
+		}
+		return any;
+	}
+
+	/**
+	 * This method returns how many times a sequence of two or three commands was profiled
+	 */
+	private long count(int sequence[]) {
+		if (sequence.length == 2)
+			return pairs[sequence[0]*numCommands + sequence[1]];
+		return triples[(sequence[0]*numCommands + sequence[1])*numCommands + sequence[2]];
+	}
+
+	/**
+	 * This method returns the enabled superinstruction starting with the command, or -1
+	 * @param command
+	 * @return the index of the superinstruction (its command number is FIRST + index)
+	 */
+	public int candidate(int command, int from) {
+		for (int i=from;i<SEQUENCES.length;i++) {
+			if (enabled[i] && (SEQUENCES[i][0] == command))
+				return i;
+		}
+		return -1;
+	}
+
+	public static int[] sequence(int superinstruction) {
+		return SEQUENCES[superinstruction];
+	}
+
+	public void executed(int superinstruction) {
+		executions[superinstruction]++;
+	}
+
+	public long getExecutions(int superinstruction) {
+		return executions[superinstruction];
+	}
+
+	/**
+	 * This method returns the amount of dispatches saved by the superinstructions
+	 * @return
+	 */
+	public long getSavedDispatches() {
+		long saved = 0;
+		for (int i=0;i<SEQUENCES.length;i++)
+			saved += executions[i] * (SEQUENCES[i].length - 1);
+		return saved;
+	}
+
+	public String name(int superinstruction) {
+		StringBuilder name = new StringBuilder();
+		for (int command : SEQUENCES[superinstruction]) {
+			if (name.length() > 0)
+				name.append("+");
+			name.append(commandsList.get(command));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * This method builds a report with the profile, the superinstructions that were executed
+	 * and how many dispatches they saved
+	 * @return
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder();
+		report.append("Superinstructions (profile of ").append(profiled).append(" dispatches)\n");
+		for (int i=0;i<SEQUENCES.length;i++) {
+			report.append(enabled[i]?"  [fused] ":"          ").append(name(i));
+			report.append(": profiled ").append(count(SEQUENCES[i]));
+			report.append(", executed ").append(executions[i]);
+			report.append(", dispatches saved ").append(executions[i] * (SEQUENCES[i].length - 1)).append("\n");
+		}
+		report.append("Total dispatches saved: ").append(getSavedDispatches()).append("\n");
+		return report.toString();
+	}
+
+}
@@ -0,0 +1,75 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestArchitecturePool {
+
+	@Test
+	public void testReset() {
+		//0: moveImmReg 5 %REG1
+		//3: subImmReg 2 %REG1 (REG1 <- 2 - 5)
+		//6: moveRegMem %REG1 20
+		//9: -1
+		int program[] = {14, 5, 1, 7, 2, 1, 12, 1, 20, -1};
+		Architecture arch = new Architecture(false, true);
+		arch.reset(program);
+		arch.controlUnitEexec();
+		assertEquals(-3, arch.getREG1().getData());
+		assertEquals(1, arch.getFlags().getBit(1));
+		assertEquals(-3, arch.getMemory().getDataList()[20]);
+		//the new program is shorter, the old one must be cleared
+		arch.reset(new int[] {-1});
+		assertEquals(0, arch.getREG1().getData());
+		assertEquals(0, arch.getPC().getData());
+		assertEquals(0, arch.getFlags().getBit(1));
+		assertEquals(0, arch.getMemory().getDataList()[3]);
+		assertEquals(0, arch.getMemory().getDataList()[20]);
+		arch.reset(program);
+		arch.controlUnitEexec();
+		assertEquals(-3, arch.getREG1().getData());
+		assertEquals(3, arch.getInstructions());
+	}
+
+	@Test
+	public void testMicroprogramsAfterReset() {
+		//0: jmp 4
+		//2: -1
+		//4: jmp 2
+		int program[] = {16, 4, -1, 0, 16, 2};
+		Architecture arch = new Architecture(false, false);
+		arch.reset(program);
+		arch.controlUnitEexec();
+		assertEquals(2, arch.getPC().getData());
+		arch.reset(program);
+		assertEquals(0, arch.getPC().getData());
+		arch.controlUnitEexec();
+		assertEquals(2, arch.getPC().getData());
+		assertEquals(2, arch.getInstructions());
+	}
+
+	@Test
+	public void testPool() {
+		ArchitecturePool pool = new ArchitecturePool(2, true);
+		assertEquals(2, pool.available());
+		Architecture first = pool.acquire(new int[] {14, 7, 0, -1});
+		Architecture second = pool.acquire(new int[] {14, 8, 0, -1});
+		Architecture third = pool.acquire(new int[] {14, 9, 0, -1}); //the pool is empty, a new one is built
+		assertEquals(0, pool.available());
+		first.controlUnitEexec();
+		second.controlUnitEexec();
+		third.controlUnitEexec();
+		assertEquals(7, first.getREG0().getData());
+		assertEquals(8, second.getREG0().getData());
+		assertEquals(9, third.getREG0().getData());
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		assertEquals(3, pool.available());
+		Architecture again = pool.acquire(new int[] {-1});
+		assertTrue((again == first)||(again == second)||(again == third));
+		assertEquals(0, again.getREG0().getData());
+	}
+
+}
@@ -0,0 +1,216 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class TestBatchMonitor {
+
+	//0: moveImmReg -5000 %REG0, 3: incReg %REG0, 5: jn 3, 7: -1
+	private static final int LOOP[] = {14, -5000, 0, 15, 0, 17, 3, -1};
+	private static final long LOOP_INSTRUCTIONS = 1 + 2*5000;
+
+	/**
+	 * This method runs the loop in another thread
+	 */
+	private Thread start(final Architecture arch) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				arch.controlUnitEexec();
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * This method waits until the monitor counts some instructions
+	 */
+	private void waitFor(BatchMonitor monitor, long instructions, int running) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (((monitor.getInstructions() != instructions) || (monitor.getProgramsRunning() != running))
+				&& (System.currentTimeMillis() < deadline))
+			Thread.sleep(5);
+		assertEquals(instructions, monitor.getInstructions());
+		assertEquals(running, monitor.getProgramsRunning());
+	}
+
+	@Test
+	public void testCounting() {
+		BatchMonitor monitor = new BatchMonitor("test", true, 100);
+		Architecture arch = new Architecture(false, true);
+		arch.getFastInterpreter().setCounting(true);
+		arch.setRunControl(monitor);
+		arch.reset(LOOP);
+		arch.controlUnitEexec();
+		assertEquals(LOOP_INSTRUCTIONS, arch.getInstructions());
+		assertEquals(LOOP_INSTRUCTIONS, monitor.getInstructions());
+		assertEquals(1, monitor.getProgramsHalted());
+		assertEquals(0, monitor.getProgramsRunning());
+		assertTrue(monitor.getCurrentPCs().isEmpty());
+		assertEquals(Long.valueOf(5000), monitor.getOpcodeCounts().get("incReg"));
+		assertEquals(Long.valueOf(5000), monitor.getOpcodeCounts().get("jn"));
+		assertEquals(Long.valueOf(1), monitor.getOpcodeCounts().get("moveImmReg"));
+		assertEquals(Architecture.getMicrosteps(14) + 5000L*(Architecture.getMicrosteps(15) + Architecture.getMicrosteps(17)),
+				monitor.getMicrosteps());
+		//the counts are added for all the runs
+		arch.reset(LOOP);
+		arch.controlUnitEexec();
+		assertEquals(2*LOOP_INSTRUCTIONS, monitor.getInstructions());
+		assertEquals(Long.valueOf(10000), monitor.getOpcodeCounts().get("incReg"));
+	}
+
+	@Test
+	public void testSameResults() {
+		//the checkpoints stop the compiled loops, but the program does the same
+		Architecture arch = new Architecture(false, true);
+		arch.getFastInterpreter().setJitThreshold(10);
+		arch.setRunControl(new BatchMonitor("test", false, 7));
+		arch.reset(LOOP);
+		arch.controlUnitEexec();
+		assertEquals(LOOP_INSTRUCTIONS, arch.getInstructions());
+		assertEquals(0, arch.getREG0().getData());
+		assertEquals(7, arch.getPC().getData());
+	}
+
+	@Test
+	public void testBudget() throws InterruptedException {
+		BatchMonitor monitor = new BatchMonitor("test", false, 64);
+		monitor.setStepBudget(1000);
+		Architecture arch = new Architecture(false, true);
+		arch.getFastInterpreter().setJitThreshold(10);
+		arch.getFastInterpreter().setProfileWindow(0); //superinstructions may pass the budget
+		arch.setRunControl(monitor);
+		arch.reset(LOOP);
+		Thread thread = start(arch);
+		waitFor(monitor, 1000, 1);
+		assertEquals(0, monitor.getStepBudget());
+		Thread.sleep(20);
+		assertTrue(thread.isAlive()); //waiting for more budget
+		assertEquals(1000, monitor.getInstructions());
+		monitor.setStepBudget(20000);
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertEquals(LOOP_INSTRUCTIONS, monitor.getInstructions());
+		assertEquals(20000 - (LOOP_INSTRUCTIONS - 1000), monitor.getStepBudget()); //the unused commands are given back
+		assertEquals(1, monitor.getProgramsHalted());
+	}
+
+	@Test
+	public void testPause() throws InterruptedException {
+		BatchMonitor monitor = new BatchMonitor("test", false, 64);
+		monitor.pause();
+		assertTrue(monitor.isPaused());
+		Architecture arch = new Architecture(false, true);
+		arch.setRunControl(monitor);
+		arch.reset(LOOP);
+		Thread thread = start(arch);
+		waitFor(monitor, 0, 1);
+		assertEquals(Integer.valueOf(0), monitor.getCurrentPCs().get(thread.getName()));
+		monitor.resume();
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertEquals(LOOP_INSTRUCTIONS, monitor.getInstructions());
+		assertEquals(BatchMonitor.NO_BUDGET, monitor.getStepBudget());
+	}
+
+	@Test
+	public void testCurrentPCs() {
+		//the PC is read from the running architecture, not from its last checkpoint
+		BatchMonitor monitor = new BatchMonitor("test", false, 64);
+		Architecture arch = new Architecture(false, false);
+		arch.reset(LOOP);
+		monitor.setProgram("loop");
+		monitor.started(arch);
+		assertEquals(Integer.valueOf(0), monitor.getCurrentPCs().get("loop"));
+		arch.getPC().setData(5);
+		assertEquals(Integer.valueOf(5), monitor.getCurrentPCs().get("loop"));
+		monitor.checkpoint(arch, 3, 5);
+		arch.getPC().setData(3);
+		assertEquals(Integer.valueOf(3), monitor.getCurrentPCs().get("loop"));
+		monitor.halted(arch, 0);
+		assertTrue(monitor.getCurrentPCs().isEmpty());
+	}
+
+	@Test
+	public void testMicrostepsOfMicroprograms() {
+		//0: jz 4 (not taken), 2: jmp 6, 4: -1, 6: jmp 4
+		int program[] = {18, 4, 16, 6, -1, -1, 16, 4};
+		BatchMonitor monitor = new BatchMonitor("test", true);
+		Architecture fast = new Architecture(false, true);
+		fast.getFastInterpreter().setCounting(true);
+		fast.setRunControl(monitor);
+		fast.reset(program);
+		fast.controlUnitEexec();
+		//the same program counted by the microprograms, whose rows include the fetch of each command
+		Architecture micro = new Architecture(false, false);
+		micro.setCounting(true);
+		micro.reset(program);
+		micro.controlUnitEexec();
+		assertEquals(micro.getCounters().getMicrosteps(16) + micro.getCounters().getMicrosteps(18), monitor.getMicrosteps());
+	}
+
+	@Test
+	public void testMicroprograms() {
+		//0: jz 4 (not taken), 2: jmp 6, 4: -1, 6: jmp 4
+		BatchMonitor monitor = new BatchMonitor("test", false, 1);
+		Architecture arch = new Architecture(false, false);
+		arch.setRunControl(monitor);
+		arch.reset(new int[] {18, 4, 16, 6, -1, -1, 16, 4});
+		arch.controlUnitEexec();
+		assertEquals(3, monitor.getInstructions());
+		assertEquals(1, monitor.getProgramsHalted());
+	}
+
+	@Test
+	public void testBatchRunner() throws IOException {
+		File file = File.createTempFile("monitor", ".dxf");
+		file.deleteOnExit();
+		try (FileWriter writer = new FileWriter(file)) {
+			for (int word : LOOP)
+				writer.write(word+"\n");
+		}
+		ArrayList<String> filenames = new ArrayList<>();
+		for (int i=0;i<8;i++)
+			filenames.add(file.getPath());
+		BatchRunner runner = new BatchRunner(4, true);
+		BatchMonitor monitor = new BatchMonitor("test", true);
+		runner.setMonitor(monitor);
+		for (BatchRunner.Result result : runner.run(filenames))
+			assertEquals(LOOP_INSTRUCTIONS, result.getInstructions());
+		assertEquals(8*LOOP_INSTRUCTIONS, monitor.getInstructions());
+		assertEquals(8, monitor.getProgramsHalted());
+		assertEquals(Long.valueOf(8*5000), monitor.getOpcodeCounts().get("incReg"));
+	}
+
+	@Test
+	public void testRegister() throws JMException {
+		BatchMonitor monitor = new BatchMonitor("registered", false);
+		ObjectName name = monitor.register();
+		assertNotNull(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertTrue(server.isRegistered(name));
+			assertEquals(0L, server.getAttribute(name, "Instructions"));
+			server.invoke(name, "pause", null, null);
+			assertTrue(monitor.isPaused());
+			server.invoke(name, "resume", null, null);
+			assertFalse(monitor.isPaused());
+		} finally {
+			monitor.unregister();
+		}
+		assertFalse(server.isRegistered(name));
+	}
+
+}
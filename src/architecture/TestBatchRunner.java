@@ -0,0 +1,89 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TestBatchRunner {
+
+	/**
+	 * This method writes an executable into a temporary file
+	 * @return the filename, without the .dxf extension
+	 */
+	private String writeProgram(int... program) throws IOException {
+		File file = File.createTempFile("batch", ".dxf");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		for (int word : program)
+			writer.write(word+"\n");
+		writer.close();
+		String name = file.getPath();
+		return name.substring(0, name.length()-4);
+	}
+
+	@Test
+	public void testRun() throws IOException {
+		//0: moveImmReg -50 %REG0
+		//3: addImmReg 3 %REG1
+		//6: incReg %REG0
+		//8: jn 3
+		//10: -1
+		String loop = writeProgram(14, -50, 0, 3, 3, 1, 15, 0, 17, 3, -1);
+		//0: moveImmReg 7 %REG2
+		//3: -1
+		String move = writeProgram(14, 7, 2, -1);
+		ArrayList<String> filenames = new ArrayList<String>();
+		for (int i=0;i<20;i++)
+			filenames.add((i%2 == 0)?loop:move+".dxf");
+		ArrayList<BatchRunner.Result> results = new BatchRunner(4, true).run(filenames);
+		assertEquals(20, results.size());
+		for (int i=0;i<20;i++) {
+			BatchRunner.Result result = results.get(i);
+			assertTrue(result.isOk());
+			assertEquals(filenames.get(i), result.getFilename());
+			assertEquals(results.get(i%2).getMemoryDigest(), result.getMemoryDigest());
+			if (i%2 == 0) {
+				assertEquals(150, result.getRegisters()[1]);
+				assertEquals(10, result.getRegisters()[4]);
+				assertEquals(1+50*3, result.getInstructions());
+			}
+			else {
+				assertEquals(7, result.getRegisters()[2]);
+				assertEquals(1, result.getInstructions());
+			}
+		}
+		assertFalse(results.get(0).getMemoryDigest().equals(results.get(1).getMemoryDigest()));
+	}
+
+	@Test
+	public void testMicroprograms() throws IOException {
+		//0: jmp 4
+		//2: jmp 6
+		//4: jmp 2
+		//6: -1
+		String jumps = writeProgram(16, 4, 16, 6, 16, 2, -1);
+		ArrayList<String> filenames = new ArrayList<String>();
+		filenames.add(jumps);
+		BatchRunner.Result micro = new BatchRunner(1, false).run(filenames).get(0);
+		BatchRunner.Result fast = new BatchRunner(1, true).run(filenames).get(0);
+		assertEquals(6, micro.getRegisters()[4]);
+		assertEquals(3, micro.getInstructions());
+		assertArrayEquals(fast.getRegisters(), micro.getRegisters());
+		assertEquals(fast.getMemoryDigest(), micro.getMemoryDigest());
+	}
+
+	@Test
+	public void testMissingFile() {
+		ArrayList<String> filenames = new ArrayList<String>();
+		filenames.add("there/is/no/such/file");
+		BatchRunner.Result result = new BatchRunner(2, true).run(filenames).get(0);
+		assertFalse(result.isOk());
+		assertNotNull(result.getError());
+	}
+
+}
@@ -0,0 +1,78 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestBinaryExecutable {
+
+	/**
+	 * This method returns a temporary filename, without the .dxb extension
+	 */
+	private String tempName() throws IOException {
+		File file = File.createTempFile("binary", ".dxb");
+		file.deleteOnExit();
+		String name = file.getPath();
+		return name.substring(0, name.length()-4);
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		String filename = tempName();
+		BinaryExecutable executable = new BinaryExecutable(3, new int[] {14, 7, 2, -1, 0x12345678}, 120, new int[] {-5, 0, 9});
+		executable.addVariable("x", 120);
+		executable.addVariable("ação", 122);
+		executable.write(filename+".dxb");
+		BinaryExecutable read = BinaryExecutable.read(filename+".dxb");
+		assertEquals(3, read.getEntry());
+		assertArrayEquals(executable.getCode(), read.getCode());
+		assertEquals(120, read.getDataAddress());
+		assertArrayEquals(executable.getData(), read.getData());
+		assertEquals(executable.getVariables(), read.getVariables());
+		assertEquals(executable.getVariablesAddresses(), read.getVariablesAddresses());
+		assertEquals(123, read.getRequiredMemorySize());
+		//the words are little-endian
+		byte bytes[] = java.nio.file.Files.readAllBytes(new File(filename+".dxb").toPath());
+		assertEquals('D', bytes[0]);
+		assertEquals('X', bytes[1]);
+		assertEquals('B', bytes[2]);
+		assertEquals(0x78, bytes[7*4 + 4*4]);
+	}
+
+	@Test
+	public void testReadBinaryExec() throws IOException {
+		//the data section has the initial value of the variable, and the program starts at 3
+		//0: -1
+		//1: 0
+		//2: 0
+		//3: moveMemReg 127 %REG1
+		//6: addImmReg 5 %REG1 (the result goes into REG1)
+		//9: moveRegMem %REG1 127
+		//12: -1
+		String filename = tempName();
+		BinaryExecutable executable = new BinaryExecutable(3, new int[] {-1, 0, 0, 11, 127, 1, 3, 5, 1, 12, 1, 127, -1}, 127, new int[] {37});
+		executable.addVariable("x", 127);
+		executable.write(filename+".dxb");
+		Architecture arch = new Architecture(false, true);
+		arch.readBinaryExec(filename);
+		assertEquals(3, arch.getPC().getData());
+		assertEquals(37, arch.getMemory().getData(127));
+		arch.controlUnitEexec();
+		assertEquals(42, arch.getREG1().getData());
+		assertEquals(42, arch.getMemory().getData(127));
+		//a text executable is not a binary one
+		FileWriter writer = new FileWriter(filename+".dxb");
+		writer.write("14\n7\n2\n-1\n1\n2\n3\n4\n");
+		writer.close();
+		try {
+			BinaryExecutable.read(filename+".dxb");
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestBlockCompiler {
+
+	/**
+	 * This method stores a program into the memory, starting from position 0,
+	 * and sets the jit threshold of the fast interpreter
+	 */
+	private Architecture loadProgram(int jitThreshold, int... program) {
+		Architecture arch = TestPrograms.loadProgram(program);
+		arch.getFastInterpreter().setJitThreshold(jitThreshold);
+		return arch;
+	}
+
+	@Test
+	public void testLoop() {
+		//0: moveImmReg -50 %REG0
+		//3: addImmReg 3 %REG1
+		//6: moveRegMem %REG1 100
+		//9: incReg %REG0
+		//11: jn 3
+		//13: -1
+		int program[] = {14, -50, 0, 3, 3, 1, 12, 1, 100, 15, 0, 17, 3, -1};
+		Architecture interpreted = loadProgram(-1, program);
+		Architecture compiled = loadProgram(1, program);
+		interpreted.controlUnitEexec();
+		compiled.controlUnitEexec();
+		TestPrograms.assertSameState(interpreted, compiled);
+		assertEquals(150, compiled.getMemory().getDataList()[100]);
+		assertEquals(1, compiled.getFastInterpreter().getCompiledBlocks().size());
+		assertEquals(3, compiled.getFastInterpreter().getCompiledBlocks().get(0).getHead());
+		assertEquals(interpreted.getFastInterpreter().getInstructions(), compiled.getFastInterpreter().getInstructions());
+	}
+
+	@Test
+	public void testSideExit() {
+		//0: moveImmReg -50 %REG0
+		//3: moveImmReg -10 %REG1
+		//6: incReg %REG1
+		//8: jz 15 (leaves the loop when REG1 is 0)
+		//10: incReg %REG0
+		//12: jn 6
+		//14: -1
+		//15: moveImmReg 7 %REG2
+		//18: -1
+		int program[] = {14, -50, 0, 14, -10, 1, 15, 1, 18, 15, 15, 0, 17, 6, -1, 14, 7, 2, -1};
+		Architecture interpreted = loadProgram(-1, program);
+		Architecture compiled = loadProgram(2, program);
+		interpreted.controlUnitEexec();
+		compiled.controlUnitEexec();
+		TestPrograms.assertSameState(interpreted, compiled);
+		assertEquals(7, compiled.getREG2().getData());
+		assertEquals(18, compiled.getPC().getData());
+		assertEquals(interpreted.getFastInterpreter().getInstructions(), compiled.getFastInterpreter().getInstructions());
+	}
+
+	@Test
+	public void testNotCompiled() {
+		//a loop that stores into its own code is never compiled
+		//0: moveImmReg -5 %REG0
+		//3: moveImmReg 1 %REG1
+		//6: moveRegMem %REG1 7 (the first parameter of this command is stored by itself)
+		//9: incReg %REG0
+		//11: jn 6
+		//13: -1
+		Architecture arch = loadProgram(1, 14, -5, 0, 14, 1, 1, 12, 1, 7, 15, 0, 17, 6, -1);
+		arch.controlUnitEexec();
+		assertEquals(0, arch.getFastInterpreter().getCompiledBlocks().size());
+	}
+
+}
@@ -0,0 +1,67 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestExecutableReader {
+
+	/**
+	 * This method writes a text into a temporary .dxf file
+	 * @return the complete filename
+	 */
+	private String writeFile(String text) throws IOException {
+		File file = File.createTempFile("exec", ".dxf");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write(text);
+		writer.close();
+		return file.getPath();
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		//windows line breaks, blank lines, and no line break in the end
+		String filename = writeFile("14\r\n-3\r\n\r\n0\n 2147483647\n-2147483648\n\n-1");
+		assertArrayEquals(new int[] {14, -3, 0, 2147483647, -2147483648, -1}, ExecutableReader.read(filename));
+		assertArrayEquals(new int[0], ExecutableReader.read(writeFile("")));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidWord() throws IOException {
+		ExecutableReader.read(writeFile("14\n1a\n-1\n"));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testOverflow() throws IOException {
+		ExecutableReader.read(writeFile("2147483648\n"));
+	}
+
+	@Test
+	public void testReadExec() throws IOException {
+		//0: moveImmReg 7 %REG2
+		//3: moveRegMem %REG2 100
+		//6: -1
+		String filename = writeFile("14\n7\n2\n12\n2\n100\n-1\n");
+		Architecture arch = new Architecture(false, true);
+		arch.readExec(filename.substring(0, filename.length()-4));
+		assertEquals(14, arch.getMemory().getData(0));
+		assertEquals(-1, arch.getMemory().getData(6));
+		arch.controlUnitEexec();
+		assertEquals(7, arch.getREG2().getData());
+		assertEquals(7, arch.getMemory().getData(100));
+		//an executable larger than the memory is not loaded
+		StringBuilder large = new StringBuilder();
+		for (int i=0;i<=arch.getMemorySize();i++)
+			large.append("5\n");
+		Architecture other = new Architecture(false, true);
+		filename = writeFile(large.toString());
+		other.readExec(filename.substring(0, filename.length()-4));
+		assertEquals(0, other.getMemory().getData(0));
+	}
+
+}
@@ -0,0 +1,314 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestFastInterpreter {
+
+	@Test
+	public void testAddRegReg() {
+		//moveImmReg 5 %REG0, moveImmReg -9 %REG1, addRegReg %REG0 %REG1
+		Architecture arch = TestPrograms.loadProgram(14, 5, 0, 14, -9, 1, 0, 0, 1, -1);
+		arch.controlUnitEexec();
+		assertEquals(5, arch.getREG0().getData());
+		assertEquals(-4, arch.getREG1().getData());
+		//result is negative: bit zero is 0 and bit negative is 1
+		assertEquals(0, arch.getFlags().getBit(0));
+		assertEquals(1, arch.getFlags().getBit(1));
+		//PC stopped in the -1 (position 9)
+		assertEquals(9, arch.getPC().getData());
+	}
+
+	@Test
+	public void testMemoryCommands() {
+		//moveImmReg 7 %REG2, moveRegMem %REG2 100, addRegMem %REG2 100, moveMemReg 100 %REG3
+		Architecture arch = TestPrograms.loadProgram(14, 7, 2, 12, 2, 100, 2, 2, 100, 11, 100, 3, -1);
+		arch.controlUnitEexec();
+		assertEquals(14, arch.getMemory().getDataList()[100]);
+		assertEquals(14, arch.getREG3().getData());
+		assertEquals(12, arch.getPC().getData());
+	}
+
+	@Test
+	public void testLoop() {
+		//counts REG0 from -5 up to 0
+		//0: moveImmReg -5 %REG0
+		//3: incReg %REG0
+		//5: jn 3
+		Architecture arch = TestPrograms.loadProgram(14, -5, 0, 15, 0, 17, 3, -1);
+		arch.controlUnitEexec();
+		assertEquals(0, arch.getREG0().getData());
+		assertEquals(1, arch.getFlags().getBit(0));
+		assertEquals(0, arch.getFlags().getBit(1));
+		assertEquals(7, arch.getPC().getData());
+		//the last jn stored both addresses into the status memory
+		assertEquals(7, arch.getStatusMemory().getDataList()[0]);
+		assertEquals(3, arch.getStatusMemory().getDataList()[1]);
+	}
+
+	@Test
+	public void testJumpOutsideMemory() {
+		//0: jmp -1 (a backward jump out of the memory halts, just like the microprograms)
+		Architecture fast = TestPrograms.loadProgram(16, -1);
+		fast.controlUnitEexec();
+		assertEquals(-1, fast.getPC().getData());
+		Architecture micro = new Architecture(false, false);
+		micro.getMemory().getDataList()[0] = 16;
+		micro.getMemory().getDataList()[1] = -1;
+		micro.controlUnitEexec();
+		assertEquals(micro.getPC().getData(), fast.getPC().getData());
+	}
+
+	@Test
+	public void testCodeBeyondCache() {
+		//400 addImmReg 1 %REG1: the code goes past the initial size of the decode cache (1024)
+		int program[] = new int[1201];
+		for (int i=0;i<1200;i+=3) {
+			program[i] = 3;
+			program[i+1] = 1;
+			program[i+2] = 1;
+		}
+		program[1200] = -1;
+		Architecture fast = new Architecture(false, true, 4096, Architecture.HEAP_MEMORY);
+		Architecture micro = new Architecture(false, false, 4096, Architecture.HEAP_MEMORY);
+		fast.reset(program);
+		micro.reset(program);
+		fast.controlUnitEexec();
+		micro.controlUnitEexec();
+		assertEquals(1200, fast.getPC().getData());
+		assertEquals(400, fast.getREG1().getData());
+		//only the jump microprograms are complete, so only the PC is compared
+		assertEquals(micro.getPC().getData(), fast.getPC().getData());
+	}
+
+	@Test
+	public void testReadOutsideMemory() {
+		//0: moveMemReg 5000 %REG0 (out of the memory, so the bus keeps the address), 3: addMemReg -2 %REG0
+		int program[] = {11, 5000, 0, 1, -2, 0, -1};
+		Architecture fast = new Architecture(false, true, 4096, Architecture.HEAP_MEMORY);
+		Architecture micro = new Architecture(false, false, 4096, Architecture.HEAP_MEMORY);
+		fast.reset(program);
+		micro.reset(program);
+		fast.controlUnitEexec();
+		micro.controlUnitEexec();
+		assertEquals(6, fast.getPC().getData());
+		assertEquals(4998, fast.getREG0().getData());
+		assertEquals(micro.getPC().getData(), fast.getPC().getData());
+	}
+
+	@Test
+	public void testJz() {
+		Architecture arch = new Architecture(false, true);
+		//PC points to 30, the parameter is in the position 31 and -1 is in positions 25 and 32
+		arch.getPC().setData(30);
+		arch.getMemory().getDataList()[30] = 18;
+		arch.getMemory().getDataList()[31] = 25;
+		arch.getMemory().getDataList()[32] = -1;
+		arch.getMemory().getDataList()[25] = -1;
+
+		//CASE 1. bit ZERO is 1: PC must be redirected to 25
+		arch.getFlags().setBit(0, 1);
+		arch.controlUnitEexec();
+		assertEquals(25, arch.getPC().getData());
+
+		//CASE 2. bit ZERO is 0: PC must be pointing to 32
+		arch.getPC().setData(30);
+		arch.getFlags().setBit(0, 0);
+		arch.controlUnitEexec();
+		assertEquals(32, arch.getPC().getData());
+	}
+
+	@Test
+	public void testCompareAndJump() {
+		//0: moveImmReg 3 %REG0
+		//3: moveImmReg 4 %REG1
+		//6: jlw %REG0 %REG1 13 (3 < 4, so the machine jumps to 13)
+		//10: moveImmReg 1 %REG2
+		//13: jgt %REG0 %REG1 10 (3 > 4 is false, so the machine goes to 17)
+		Architecture arch = TestPrograms.loadProgram(14, 3, 0, 14, 4, 1, 22, 0, 1, 13, 14, 1, 2, 21, 0, 1, 10, -1);
+		arch.controlUnitEexec();
+		assertEquals(0, arch.getREG2().getData());
+		assertEquals(17, arch.getPC().getData());
+	}
+
+	@Test
+	public void testSameResultsAsMicroprograms() {
+		//only the jump microprograms are complete, so only the jumps are compared
+		//(the fast path follows the instruction set, not the microprograms)
+		//0: jn 4
+		//2: jmp 9
+		//4: jz 2
+		//6: jmp 10
+		//8: -1
+		//9: -1
+		//10: -1
+		int program[] = {17, 4, 16, 9, 18, 2, 16, 10, -1, -1, -1};
+		for (int bits=0;bits<4;bits++) {
+			Architecture fast = new Architecture(false, true);
+			Architecture micro = new Architecture(false, false);
+			for (int i=0;i<program.length;i++) {
+				fast.getMemory().getDataList()[i] = program[i];
+				micro.getMemory().getDataList()[i] = program[i];
+			}
+			fast.getFlags().setBit(0, bits&1);
+			fast.getFlags().setBit(1, bits>>1);
+			micro.getFlags().setBit(0, bits&1);
+			micro.getFlags().setBit(1, bits>>1);
+			fast.controlUnitEexec();
+			micro.controlUnitEexec();
+			assertEquals(micro.getPC().getData(), fast.getPC().getData());
+			assertEquals(micro.getStatusMemory().getDataList()[0], fast.getStatusMemory().getDataList()[0]);
+			assertEquals(micro.getStatusMemory().getDataList()[1], fast.getStatusMemory().getDataList()[1]);
+		}
+	}
+
+	@Test
+	public void testDecodeCache() {
+		//the loop of testLoop runs 5 times, but its commands are decoded only once
+		Architecture arch = TestPrograms.loadProgram(14, -5, 0, 15, 0, 17, 3, -1);
+		FastInterpreter interpreter = new FastInterpreter(arch);
+		interpreter.run();
+		assertEquals(11, interpreter.getInstructions());
+		assertEquals(4, interpreter.getDecodes()); //moveImmReg, incReg, jn and the -1
+	}
+
+	@Test
+	public void testSelfModifyingCode() {
+		//0: moveImmReg 5 %REG0
+		//3: incReg %REG0
+		//5: moveImmReg 16 %REG1
+		//8: moveRegMem %REG1 3 (the incReg command becomes a jmp)
+		//11: moveImmReg 19 %REG2
+		//14: moveRegMem %REG2 4 (the jmp parameter is 19)
+		//17: jmp 3
+		//19: -1
+		Architecture arch = TestPrograms.loadProgram(14, 5, 0, 15, 0, 14, 16, 1, 12, 1, 3, 14, 19, 2, 12, 2, 4, 16, 3, -1);
+		arch.controlUnitEexec();
+		//incReg was executed only once, in the second visit the position 3 has jmp 19
+		assertEquals(6, arch.getREG0().getData());
+		assertEquals(16, arch.getMemory().getDataList()[3]);
+		assertEquals(19, arch.getMemory().getDataList()[4]);
+		assertEquals(19, arch.getPC().getData());
+	}
+
+	@Test
+	public void testOffHeapMemory() {
+		//the variables are in the top of a memory with 4 million positions
+		//0: moveImmReg -3 %REG0
+		//3: addImmReg 5 %REG1
+		//6: moveRegMem %REG1 3999999
+		//9: incReg %REG0
+		//11: jn 3
+		//13: -1
+		int size = 4000000;
+		Architecture arch = new Architecture(false, true, size, Architecture.OFF_HEAP_MEMORY);
+		assertTrue(arch.getMemory().isOffHeap());
+		arch.reset(new int[] {14, -3, 0, 3, 5, 1, 12, 1, size-1, 15, 0, 17, 3, -1});
+		arch.controlUnitEexec();
+		assertEquals(15, arch.getMemory().getData(size-1));
+		assertEquals(15, arch.getREG1().getData());
+		assertEquals(13, arch.getPC().getData());
+		//the same program in a memory in the heap
+		Architecture heap = new Architecture(false, true, size, Architecture.HEAP_MEMORY);
+		heap.reset(new int[] {14, -3, 0, 3, 5, 1, 12, 1, size-1, 15, 0, 17, 3, -1});
+		heap.controlUnitEexec();
+		assertEquals(15, heap.getMemory().getDataList()[size-1]);
+		assertEquals(heap.getInstructions(), arch.getInstructions());
+	}
+
+	@Test
+	public void testSparseMemory() {
+		//the same program of testOffHeapMemory, in a memory with one billion positions
+		int size = 1 << 30;
+		Architecture arch = new Architecture(false, true, size, Architecture.SPARSE_MEMORY);
+		assertFalse(arch.getMemory().hasDataList());
+		arch.reset(new int[] {14, -3, 0, 3, 5, 1, 12, 1, size-1, 15, 0, 17, 3, -1});
+		arch.controlUnitEexec();
+		assertEquals(15, arch.getMemory().getData(size-1));
+		assertEquals(15, arch.getREG1().getData());
+		assertEquals(13, arch.getPC().getData());
+		assertEquals(2, ((components.SparseMemory) arch.getMemory()).getAllocatedPages());
+	}
+
+	@Test
+	public void testCounting() {
+		//the loop of testLoop, repeated enough times to be compiled if it was not counted
+		Architecture arch = TestPrograms.loadProgram(14, -5000, 0, 15, 0, 17, 3, -1);
+		FastInterpreter interpreter = arch.getFastInterpreter();
+		interpreter.setJitThreshold(10);
+		interpreter.setCounting(true);
+		arch.controlUnitEexec();
+		long counts[] = interpreter.getCounts();
+		assertEquals(1, counts[14]);
+		assertEquals(5000, counts[15]);
+		assertEquals(5000, counts[17]);
+		assertEquals(10001, arch.getInstructions());
+		assertTrue(interpreter.getCompiledBlocks().isEmpty());
+		assertEquals(0, arch.getREG0().getData());
+		interpreter.setCounting(false);
+		assertNull(interpreter.getCounts());
+	}
+
+	@Test
+	public void testMicrosteps() {
+		//each command runs once in the microprograms, followed by -1, and its counted microsteps are compared
+		int commands = new Architecture(false, false).getCommandsList().size();
+		for (int command=0;command<commands;command++) {
+			Architecture micro = new Architecture(false, false);
+			int program[] = new int[8];
+			java.util.Arrays.fill(program, -1);
+			program[0] = command;
+			for (int i=1;i<DecodedInstruction.lengthOf(command);i++)
+				program[i] = ((command >= 16)&&(command <= 18))?4:0; //jumps go to a -1, other operands are REG0 or 0
+			micro.setCounting(true);
+			micro.reset(program);
+			micro.controlUnitEexec();
+			components.Counters counters = micro.getCounters();
+			if (counters.getExecutions(command) == 0) //no microprogram: the machine halts on it
+				assertEquals(0, Architecture.getMicrosteps(command));
+			else {
+				assertEquals(1, counters.getExecutions(command));
+				assertEquals(counters.getMicrosteps(command), Architecture.getMicrosteps(command));
+			}
+			assertEquals(counters.getMicrosteps(commands), Architecture.getHaltMicrosteps());
+		}
+		assertEquals(17, Architecture.getMicrosteps(16)); //jmp, with its fetch
+		assertEquals(0, Architecture.getMicrosteps(19)); //jeq has no microprogram
+		assertEquals(0, Architecture.getMicrosteps(-1));
+	}
+
+	@Test
+	public void testCpiReport() {
+		//jz 4 (not taken), jmp 6, jmp 4 (the -1): only jumps, so the microprograms work
+		int program[] = {18, 4, 16, 6, -1, -1, 16, 4};
+		Architecture micro = new Architecture(false, false);
+		micro.setCounting(true);
+		micro.reset(program);
+		micro.controlUnitEexec();
+		components.Counters counters = micro.getCounters();
+		assertEquals(1, counters.getExecutions(18));
+		assertEquals(2, counters.getExecutions(16));
+		assertEquals(0, counters.getExecutions(0));
+		//the fetch of the -1 is kept in the last row
+		assertTrue(counters.getMicrosteps(micro.getCommandsList().size()) > 0);
+		assertTrue(micro.getCpiReport().contains("jmp"));
+
+		Architecture fast = new Architecture(false, true);
+		fast.setCounting(true);
+		fast.reset(program);
+		fast.controlUnitEexec();
+		assertEquals(1, fast.getFastInterpreter().getCounts()[18]);
+		assertEquals(2, fast.getFastInterpreter().getCounts()[16]);
+		assertTrue(fast.getCpiReport().contains("jz"));
+		//both modes report the same microsteps, including the fetch of the -1
+		String microTotal = micro.getCpiReport().substring(micro.getCpiReport().indexOf("total"));
+		String fastTotal = fast.getCpiReport().substring(fast.getCpiReport().indexOf("total"));
+		assertEquals(microTotal, fastTotal);
+
+		micro.setCounting(false);
+		assertNull(micro.getCounters());
+		assertEquals("", micro.getCpiReport());
+	}
+
+}
@@ -0,0 +1,99 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import assembler.DebugMap;
+
+public class TestHeatmap {
+
+	//0: jz 4 (not taken), 2: jmp 6, 4: -1, 6: jmp 4
+	private static final int PROGRAM[] = {18, 4, 16, 6, -1, -1, 16, 4};
+
+	@Test
+	public void testBothModes() {
+		Architecture micro = new Architecture(false, false);
+		micro.setHeatmap(true);
+		micro.reset(PROGRAM);
+		micro.controlUnitEexec();
+		Architecture fast = new Architecture(false, true);
+		fast.setHeatmap(true);
+		fast.reset(PROGRAM);
+		fast.controlUnitEexec();
+		for (Architecture arch : new Architecture[] {micro, fast}) {
+			Heatmap heatmap = arch.getHeatmap();
+			assertEquals(1, heatmap.getExecutions(0));
+			assertEquals(Architecture.getMicrosteps(18), heatmap.getCycles(0));
+			assertEquals(1, heatmap.getExecutions(2));
+			assertEquals(0, heatmap.getExecutions(4)); //the -1 is not executed
+			assertEquals(1, heatmap.getExecutions(6));
+			assertEquals(3, heatmap.getTotalExecutions());
+			assertEquals(Architecture.getMicrosteps(18) + 2*Architecture.getMicrosteps(16), heatmap.getTotalCycles());
+		}
+		//the cycles are the microsteps counted by the microprograms, fetch included
+		Architecture counted = new Architecture(false, false);
+		counted.setHeatmap(true);
+		counted.setCounting(true);
+		counted.reset(PROGRAM);
+		counted.controlUnitEexec();
+		assertEquals(counted.getCounters().getMicrosteps(16) + counted.getCounters().getMicrosteps(18),
+				fast.getHeatmap().getTotalCycles());
+		//each run starts a new heatmap
+		fast.reset(PROGRAM);
+		fast.controlUnitEexec();
+		assertEquals(3, fast.getHeatmap().getTotalExecutions());
+		fast.setHeatmap(false);
+		assertNull(fast.getHeatmap());
+	}
+
+	@Test
+	public void testLoop() {
+		//the loop would be compiled and fused without the heatmap
+		//0: moveImmReg -5000 %REG0, 3: incReg %REG0, 5: jn 3
+		Architecture arch = new Architecture(false, true);
+		arch.getFastInterpreter().setJitThreshold(10);
+		arch.setHeatmap(true);
+		arch.reset(new int[] {14, -5000, 0, 15, 0, 17, 3, -1});
+		arch.controlUnitEexec();
+		assertEquals(1, arch.getHeatmap().getExecutions(0));
+		assertEquals(5000, arch.getHeatmap().getExecutions(3));
+		assertEquals(5000, arch.getHeatmap().getExecutions(5));
+		assertEquals(5000L*Architecture.getMicrosteps(15), arch.getHeatmap().getCycles(3));
+	}
+
+	@Test
+	public void testGrow() {
+		Heatmap heatmap = new Heatmap(1 << 20);
+		assertTrue(heatmap.size() < 1 << 20);
+		heatmap.executed(100000, 16);
+		heatmap.executed(-1, 16);
+		heatmap.executed(1 << 20, 16);
+		assertTrue(heatmap.size() > 100000);
+		assertEquals(1, heatmap.getExecutions(100000));
+		assertEquals(1, heatmap.getTotalExecutions());
+		assertEquals(0, heatmap.getExecutions(1 << 21));
+	}
+
+	@Test
+	public void testReport() {
+		Heatmap heatmap = new Heatmap(128);
+		DebugMap map = new DebugMap();
+		map.add(0, 3, null, "move -5 %REG0");
+		map.add(3, 5, "laco", "laco: inc %REG0");
+		map.add(5, 6, "laco", "jn laco");
+		heatmap.executed(0, 14);
+		for (int i=0;i<5;i++) {
+			heatmap.executed(3, 15);
+			heatmap.executed(5, 17);
+		}
+		heatmap.executed(50, 16); //not in the map
+		String report = HeatmapReport.report(heatmap, map, 2);
+		assertTrue(report.contains("12 instructions"));
+		//labels and lines are sorted by their cycles
+		assertTrue(report.indexOf("laco ") < report.indexOf("? "));
+		assertTrue(report.indexOf("laco: inc %REG0") < report.indexOf("jn laco"));
+		assertFalse(report.contains("move -5 %REG0")); //only the 2 hottest lines
+	}
+
+}
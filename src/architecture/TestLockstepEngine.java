@@ -0,0 +1,80 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestLockstepEngine {
+
+	//0: moveMemReg 100 %REG0 (a negative counter, different in each machine)
+	//3: moveImmReg 0 %REG1
+	//6: addImmReg 3 %REG1
+	//9: moveRegMem %REG1 101
+	//12: incReg %REG0
+	//14: jn 6
+	//16: jeq %REG1 %REG2 22 (REG2 is the expected sum)
+	//20: jmp 28
+	//22: moveImmReg 1 %REG3
+	//25: moveRegMem %REG3 102
+	//28: -1
+	private static final int PROGRAM[] = {11, 100, 0, 14, 0, 1, 3, 3, 1, 12, 1, 101, 15, 0, 17, 6,
+			19, 1, 2, 22, 16, 28, 14, 1, 3, 12, 3, 102, -1};
+
+	/**
+	 * This method runs the program in one architecture, with the fast interpreter
+	 */
+	private Architecture runArchitecture(int counter, int expected) {
+		Architecture arch = new Architecture(false, true);
+		int data[] = arch.getMemory().getDataList();
+		System.arraycopy(PROGRAM, 0, data, 0, PROGRAM.length);
+		data[100] = counter;
+		arch.getREG2().setData(expected);
+		arch.controlUnitEexec();
+		return arch;
+	}
+
+	@Test
+	public void testDivergentMachines() {
+		int machines = 37;
+		LockstepEngine engine = new LockstepEngine(machines);
+		engine.load(PROGRAM);
+		for (int m=0;m<machines;m++) {
+			engine.setMemory(m, 100, -1-(m%5)); //the loops have different lengths
+			engine.setRegister(m, 2, (m%3 == 0)?3*(1+(m%5)):0);
+		}
+		engine.run();
+		for (int m=0;m<machines;m++) {
+			Architecture arch = runArchitecture(-1-(m%5), (m%3 == 0)?3*(1+(m%5)):0);
+			for (int r=0;r<=FastInterpreter.IR;r++)
+				assertEquals(arch.getRegistersList().get(r).getData(), engine.getRegister(m, r));
+			assertEquals(arch.getFlags().getBit(0), engine.getFlag(m, 0));
+			assertEquals(arch.getFlags().getBit(1), engine.getFlag(m, 1));
+			assertArrayEquals(arch.getMemory().getDataList(), engine.getMemory(m));
+			assertEquals(arch.getStatusMemory().getDataList()[0], engine.getStatusMemory(m, 0));
+			assertEquals(arch.getStatusMemory().getDataList()[1], engine.getStatusMemory(m, 1));
+			assertEquals(arch.getInstructions(), engine.getInstructions(m));
+		}
+		assertEquals(1, engine.getRegister(0, 3)); //the sum was the expected one
+		assertEquals(0, engine.getRegister(1, 3));
+		assertTrue(engine.getFullSteps() > 0);
+		assertTrue(engine.getSteps() < engine.getTotalInstructions());
+	}
+
+	@Test
+	public void testDifferentCode() {
+		//the second machine has another command in the address 3
+		//0: moveImmReg 5 %REG0
+		//3: addImmReg 2 %REG0 (subImmReg 2 %REG0 in the second machine)
+		//6: -1
+		LockstepEngine engine = new LockstepEngine(2, 16);
+		engine.load(0, new int[] {14, 5, 0, 3, 2, 0, -1});
+		engine.load(1, new int[] {14, 5, 0, 7, 2, 0, -1});
+		engine.run();
+		assertEquals(7, engine.getRegister(0, 0));
+		assertEquals(-3, engine.getRegister(1, 0));
+		assertEquals(1, engine.getFlag(1, 1));
+		assertEquals(-1, engine.getRegister(1, FastInterpreter.IR));
+		assertEquals(6, engine.getRegister(1, FastInterpreter.PC));
+	}
+
+}
@@ -0,0 +1,122 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestProgramCompiler {
+
+	private ProgramCompiler compilerFor(int... program) {
+		ArrayList<Integer> words = new ArrayList<Integer>();
+		for (int word : program)
+			words.add(word);
+		ProgramCompiler compiler = new ProgramCompiler();
+		compiler.setImage(words);
+		return compiler;
+	}
+
+	@Test
+	public void testVerify() throws IOException {
+		//0: moveImmReg -50 %REG0
+		//3: addImmReg 3 %REG1
+		//6: moveRegMem %REG1 100
+		//9: incReg %REG0
+		//11: jlw %REG0 %REG2 3 (REG2 is 0)
+		//15: -1
+		ProgramCompiler compiler = compilerFor(14, -50, 0, 3, 3, 1, 12, 1, 100, 15, 0, 22, 0, 2, 3, -1);
+		assertTrue(compiler.analyze());
+		String code = compiler.generate("Loop");
+		assertTrue(code.contains("case 3:"));
+		assertTrue(code.contains("case 15:"));
+		assertTrue(compiler.verify("Loop"));
+	}
+
+	@Test
+	public void testMemorySize() throws IOException {
+		//0: moveImmReg 7 %REG0
+		//3: moveRegMem %REG0 1000 (out of the default memory)
+		//6: -1
+		ArrayList<Integer> words = new ArrayList<Integer>();
+		for (int word : new int[] {14, 7, 0, 12, 0, 1000, -1})
+			words.add(word);
+		ProgramCompiler small = new ProgramCompiler();
+		small.setImage(words);
+		assertFalse(small.analyze());
+		ProgramCompiler large = new ProgramCompiler(1024);
+		large.setImage(words);
+		assertTrue(large.analyze());
+		assertTrue(large.generate("Large").contains("MEMORY_SIZE = 1024;"));
+		assertTrue(large.verify("Large"));
+	}
+
+	@Test
+	public void testLargeProgram() throws IOException {
+		//2200 commands: 1200 of them alternating addImmReg 1 %REG1 and a jn to the next command
+		//(both ways go to the same command, so there are 600 blocks), then a straight line of 1000
+		ArrayList<Integer> words = new ArrayList<Integer>();
+		for (int i=0;i<2200;i++) {
+			if ((i < 1200)&&(i % 2 == 1)) {
+				words.add(17);
+				words.add(words.size()+1);
+			}
+			else {
+				words.add(3);
+				words.add(1);
+				words.add(1);
+			}
+		}
+		words.add(-1);
+		ProgramCompiler compiler = new ProgramCompiler(8192);
+		compiler.setImage(words);
+		assertTrue(compiler.analyze());
+		String code = compiler.generate("Large");
+		assertTrue(code.contains("dispatch1(")); //more than one group of blocks
+		//the straight line starts in 3000 and it is split in blocks of 128 commands
+		assertTrue(code.contains("case 3384:"));
+		assertFalse(code.contains("case 3387:"));
+		assertTrue(compiler.verify("Large"));
+	}
+
+	@Test
+	public void testVerifyDeletesFiles() throws IOException {
+		File temp = new File(System.getProperty("java.io.tmpdir"));
+		String before[] = temp.list();
+		ProgramCompiler compiler = compilerFor(14, 7, 0, -1);
+		assertTrue(compiler.analyze());
+		assertTrue(compiler.verify("Small"));
+		String after[] = temp.list();
+		Arrays.sort(before);
+		Arrays.sort(after);
+		assertEquals(Arrays.asList(before), Arrays.asList(after));
+	}
+
+	@Test
+	public void testSelfModifyingCode() {
+		//0: moveImmReg 16 %REG0
+		//3: moveRegMem %REG0 6 (changes the next command)
+		//6: -1
+		ProgramCompiler compiler = compilerFor(14, 16, 0, 12, 0, 6, -1);
+		assertFalse(compiler.analyze());
+	}
+
+	@Test
+	public void testJumpIntoCommand() {
+		//0: moveImmReg 15 %REG0
+		//3: jmp 1 (1 is the parameter of the first command)
+		ProgramCompiler compiler = compilerFor(14, 15, 0, 16, 1);
+		assertFalse(compiler.analyze());
+	}
+
+	@Test
+	public void testClassName() {
+		assertEquals("Program", ProgramCompiler.classNameOf("program"));
+		assertEquals("Test_file", ProgramCompiler.classNameOf("dir/test_file"));
+		assertEquals("Program1", ProgramCompiler.classNameOf("1"));
+	}
+
+}
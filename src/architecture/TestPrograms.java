@@ -0,0 +1,36 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class has the fixtures shared by the tests of the fast path: it has no tests itself
+ */
+final class TestPrograms {
+
+	private TestPrograms() {
+	}
+
+	/**
+	 * This method builds an architecture that uses the fast path and stores a program into
+	 * the memory, starting from position 0
+	 */
+	static Architecture loadProgram(int... program) {
+		Architecture arch = new Architecture(false, true);
+		for (int i=0;i<program.length;i++)
+			arch.getMemory().getDataList()[i] = program[i];
+		return arch;
+	}
+
+	/**
+	 * This method checks if two architectures have the same registers, flags and memory
+	 */
+	static void assertSameState(Architecture expected, Architecture actual) {
+		for (int i=0;i<expected.getRegistersList().size();i++)
+			assertEquals(expected.getRegistersList().get(i).getData(), actual.getRegistersList().get(i).getData());
+		assertEquals(expected.getFlags().getBit(0), actual.getFlags().getBit(0));
+		assertEquals(expected.getFlags().getBit(1), actual.getFlags().getBit(1));
+		assertArrayEquals(expected.getMemory().getDataList(), actual.getMemory().getDataList());
+		assertArrayEquals(expected.getStatusMemory().getDataList(), actual.getStatusMemory().getDataList());
+	}
+
+}
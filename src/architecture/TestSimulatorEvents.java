@@ -0,0 +1,155 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TestSimulatorEvents {
+
+	/**
+	 * A listener that keeps the events as text
+	 */
+	static class Recorder implements SimulatorEvents.Listener {
+		ArrayList<String> events = new ArrayList<>();
+
+		@Override
+		public void programLoaded(String filename, int words, long start, long duration) {
+			events.add("load "+new File(filename).getName()+" "+words);
+		}
+
+		@Override
+		public void runStarted(Architecture arch, long start) {
+			events.add("start");
+		}
+
+		@Override
+		public void runHalted(Architecture arch, long start, long duration, long instructions) {
+			assertTrue(duration >= 0);
+			events.add("halt "+instructions);
+		}
+
+		@Override
+		public void assemblyPhase(String phase, long start, long duration) {
+			events.add(phase);
+		}
+
+		@Override
+		public void instructionSampled(Architecture arch, int pc, int opcode) {
+			events.add("instruction "+pc+" "+opcode);
+		}
+	}
+
+	//0: jz 4 (not taken), 2: jmp 6, 4: -1, 6: jmp 4
+	private static final int PROGRAM[] = {18, 4, 16, 6, -1, -1, 16, 4};
+
+	@Test
+	public void testDisabled() {
+		assertFalse(SimulatorEvents.isEnabled());
+		assertEquals(0, SimulatorEvents.begin());
+		Architecture arch = new Architecture(false, true);
+		arch.reset(PROGRAM);
+		arch.controlUnitEexec(); //nothing is reported
+		assertEquals(3, arch.getInstructions());
+	}
+
+	@Test
+	public void testRun() {
+		Recorder recorder = new Recorder();
+		SimulatorEvents.setListener(recorder, 0);
+		try {
+			assertTrue(SimulatorEvents.isEnabled());
+			for (boolean fastPath : new boolean[] {false, true}) {
+				recorder.events.clear();
+				Architecture arch = new Architecture(false, fastPath);
+				arch.reset(PROGRAM);
+				arch.controlUnitEexec();
+				assertEquals("[start, halt 3]", recorder.events.toString());
+			}
+		} finally {
+			SimulatorEvents.setListener(null, 0);
+		}
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		File file = File.createTempFile("events", ".dxf");
+		file.deleteOnExit();
+		try (FileWriter writer = new FileWriter(file)) {
+			for (int word : PROGRAM)
+				writer.write(word+"\n");
+		}
+		Recorder recorder = new Recorder();
+		SimulatorEvents.setListener(recorder, 0);
+		try {
+			Architecture arch = new Architecture(false, true);
+			String path = file.getPath();
+			arch.readExec(path.substring(0, path.length()-4));
+			assertEquals("[load "+file.getName()+" "+PROGRAM.length+"]", recorder.events.toString());
+		} finally {
+			SimulatorEvents.setListener(null, 0);
+		}
+	}
+
+	@Test
+	public void testSample() {
+		Recorder recorder = new Recorder();
+		SimulatorEvents.setListener(recorder, 0);
+		try {
+			for (boolean fastPath : new boolean[] {false, true}) {
+				Architecture arch = new Architecture(false, fastPath);
+				arch.reset(PROGRAM);
+				arch.controlUnitEexec(); //the program stops in the halt at 4
+				recorder.events.clear();
+				SimulatorEvents.sample(); //not running
+				assertTrue(recorder.events.isEmpty());
+				arch.getMemory().setData(4, 16); //the command is the one published by the interpreter, not read from the memory
+				long start = SimulatorEvents.runStarted(arch);
+				SimulatorEvents.sample();
+				SimulatorEvents.runHalted(arch, start, 0);
+				SimulatorEvents.sample(); //not running anymore
+				assertEquals("[start, instruction 4 -1, halt 0]", recorder.events.toString());
+			}
+		} finally {
+			SimulatorEvents.setListener(null, 0);
+		}
+	}
+
+	@Test
+	public void testSampler() throws InterruptedException {
+		final ArrayList<String> samples = new ArrayList<>();
+		Recorder recorder = new Recorder() {
+			@Override
+			public void instructionSampled(Architecture arch, int pc, int opcode) {
+				synchronized (samples) {
+					samples.add(pc+" "+opcode);
+					samples.notifyAll();
+				}
+			}
+		};
+		SimulatorEvents.setListener(recorder, 1);
+		try {
+			Architecture arch = new Architecture(false, true);
+			arch.reset(PROGRAM);
+			arch.controlUnitEexec();
+			long start = SimulatorEvents.runStarted(arch); //the program stays in its halt
+			synchronized (samples) {
+				long deadline = System.currentTimeMillis() + 5000;
+				while (samples.isEmpty() && (System.currentTimeMillis() < deadline))
+					samples.wait(100);
+			}
+			SimulatorEvents.runHalted(arch, start, 0);
+			synchronized (samples) {
+				assertFalse(samples.isEmpty());
+				assertEquals("4 -1", samples.get(0));
+			}
+		} finally {
+			SimulatorEvents.setListener(null, 0);
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import components.SparseMemory;
+
+public class TestSnapshot {
+
+	@Test
+	public void testSnapshotRestore() {
+		//0: moveImmReg -4 %REG2
+		//3: moveRegMem %REG2 50
+		//6: -1
+		Architecture arch = new Architecture(false, true);
+		arch.reset(new int[] {14, -4, 2, 12, 2, 50, -1});
+		arch.controlUnitEexec();
+		arch.getUla().setData(0, 11);
+		arch.getUla().setData(1, 12);
+		arch.getFlags().setBit(1, 1);
+		arch.getStatusMemory().getDataList()[1] = 9;
+		arch.getExtbus().put(70);
+		arch.getMemory().store(); //a store is pending in the position 70
+		Snapshot snapshot = arch.snapshot();
+		assertEquals(-4, snapshot.getRegister(2));
+		assertEquals(6, snapshot.getRegister(FastInterpreter.PC));
+		assertEquals(-4, snapshot.getMemory(50));
+		assertEquals(1, snapshot.getFlag(1));
+
+		//everything is changed and then restored
+		arch.reset(new int[] {15, 0, -1});
+		arch.controlUnitEexec();
+		arch.restore(snapshot);
+		assertEquals(-4, arch.getREG2().getData());
+		assertEquals(0, arch.getREG0().getData());
+		assertEquals(6, arch.getPC().getData());
+		assertEquals(-1, arch.getIR().getData());
+		assertEquals(1, arch.getFlags().getBit(1));
+		assertEquals(0, arch.getFlags().getBit(0));
+		assertEquals(11, arch.getUla().getData(0));
+		assertEquals(12, arch.getUla().getData(1));
+		assertEquals(9, arch.getStatusMemory().getDataList()[1]);
+		assertArrayEquals(snapshot.getMemory(), arch.getMemory().getDataList());
+		assertEquals(70, arch.getMemory().getStorePosition());
+		arch.getExtbus().put(33);
+		arch.getMemory().store(); //the pending store is completed
+		assertEquals(33, arch.getMemory().getDataList()[70]);
+		assertEquals(0, snapshot.getMemory(70)); //the snapshot is not changed
+	}
+
+	@Test
+	public void testFork() {
+		//0: moveMemReg 100 %REG0
+		//3: incReg %REG0
+		//5: jn 3
+		//7: -1
+		Architecture warm = new Architecture(false, true);
+		warm.reset(new int[] {11, 100, 0, 15, 0, 17, 3, -1});
+		Snapshot start = warm.snapshot();
+		for (int i=1;i<=3;i++) {
+			Architecture fork = new Architecture(false, true);
+			fork.restore(start);
+			fork.getMemory().getDataList()[100] = -10*i;
+			fork.controlUnitEexec();
+			assertEquals(0, fork.getREG0().getData());
+			assertEquals(1+20*i, fork.getInstructions());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDifferentMemorySize() {
+		Architecture arch = new Architecture();
+		arch.restore(new Snapshot(new int[Snapshot.sizeOf(arch.getMemorySize()+1)]));
+	}
+
+	@Test
+	public void testArchitectureFork() {
+		//0: moveImmReg 3 %REG1
+		//3: moveRegMem %REG1 60
+		//6: -1
+		Architecture parent = new Architecture(false, true);
+		parent.reset(new int[] {14, 3, 1, 12, 1, 60, -1});
+		parent.getFlags().setBit(0, 1);
+		Architecture child = parent.fork();
+		assertTrue(child.getMemory().isPaged());
+		assertEquals(1, child.getFlags().getBit(0));
+		//the microprograms of jumps work over the pages: 0: jmp 4, 2: -1, 4: jmp 2
+		Architecture jumps = new Architecture(false, false);
+		jumps.reset(new int[] {16, 4, -1, 0, 16, 2});
+		Architecture jumpsChild = jumps.fork();
+		jumpsChild.controlUnitEexec();
+		assertEquals(2, jumpsChild.getPC().getData());
+		assertTrue(jumpsChild.getMemory().isPaged());
+		assertEquals(0, jumpsChild.getMemory().getPagesCopied());
+		//the child runs without changing the parent
+		child.controlUnitEexec();
+		assertEquals(3, child.getMemory().getDataList()[60]);
+		assertEquals(0, parent.getMemory().getDataList()[60]);
+		assertEquals(0, parent.getREG1().getData());
+		parent.controlUnitEexec();
+		assertEquals(3, parent.getMemory().getDataList()[60]);
+	}
+
+	@Test
+	public void testForkMemoryTypes() {
+		int types[] = {Architecture.HEAP_MEMORY, Architecture.OFF_HEAP_MEMORY, Architecture.SPARSE_MEMORY};
+		for (int type : types) {
+			Architecture parent = new Architecture(false, true, 1024, type);
+			parent.getMemory().setData(500, 5);
+			parent.getREG2().setData(9);
+			Architecture child = parent.fork();
+			assertEquals(5, child.getMemory().getData(500));
+			assertEquals(9, child.getREG2().getData());
+			child.getMemory().setData(500, 6);
+			assertEquals(5, parent.getMemory().getData(500));
+			assertEquals(type == Architecture.OFF_HEAP_MEMORY, child.getMemory().isOffHeap());
+			assertEquals(type == Architecture.SPARSE_MEMORY, child.getMemory() instanceof SparseMemory);
+		}
+	}
+
+	@Test
+	public void testForkAfterRun() {
+		//the fast path works over the pages, so forking a parent that ran copies no position
+		//0: moveImmReg 3 %REG1
+		//3: moveRegMem %REG1 60
+		//6: -1
+		Architecture parent = new Architecture(false, true);
+		parent.reset(new int[] {14, 3, 1, 12, 1, 60, -1});
+		Architecture first = parent.fork();
+		parent.controlUnitEexec();
+		assertTrue(parent.getMemory().isPaged());
+		assertEquals(3, parent.getMemory().getData(60));
+		assertEquals(1, parent.getMemory().getPagesCopied());
+		Architecture second = parent.fork();
+		assertTrue(parent.getMemory().isPaged());
+		first.getPC().setData(0);
+		first.controlUnitEexec();
+		second.getPC().setData(0);
+		second.controlUnitEexec();
+		for (Architecture child : new Architecture[] {first, second}) {
+			assertTrue(child.getMemory().isPaged());
+			assertEquals(1, child.getMemory().getPagesCopied());
+			assertEquals(3, child.getMemory().getData(60));
+		}
+		assertTrue(parent.getMemory().isPaged());
+	}
+
+}
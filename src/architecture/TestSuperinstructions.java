@@ -0,0 +1,129 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestSuperinstructions {
+
+	/**
+	 * This method stores a program into the memory, starting from position 0,
+	 * and sets the profile window of the fast interpreter (the jit is turned off)
+	 */
+	private Architecture loadProgram(int profileWindow, int... program) {
+		Architecture arch = TestPrograms.loadProgram(program);
+		arch.getFastInterpreter().setJitThreshold(-1);
+		arch.getFastInterpreter().setProfileWindow(profileWindow);
+		return arch;
+	}
+
+	@Test
+	public void testLoadAddStore() {
+		//0: moveImmReg -20 %REG0
+		//3: moveImmReg 2 %REG2
+		//6: moveMemReg 100 %REG1
+		//9: addRegReg %REG2 %REG1
+		//12: moveRegMem %REG1 100
+		//15: incReg %REG0
+		//17: jn 6
+		//19: -1
+		int program[] = {14, -20, 0, 14, 2, 2, 11, 100, 1, 0, 2, 1, 12, 1, 100, 15, 0, 17, 6, -1};
+		Architecture plain = loadProgram(0, program);
+		Architecture fused = loadProgram(10, program);
+		plain.controlUnitEexec();
+		fused.controlUnitEexec();
+		TestPrograms.assertSameState(plain, fused);
+		assertEquals(40, fused.getMemory().getDataList()[100]);
+		assertEquals(plain.getFastInterpreter().getInstructions(), fused.getFastInterpreter().getInstructions());
+		Superinstructions superinstructions = fused.getFastInterpreter().getSuperinstructions();
+		assertTrue(superinstructions.getExecutions(Superinstructions.LOAD_ADD_STORE - Superinstructions.FIRST) > 0);
+		assertTrue(superinstructions.getExecutions(Superinstructions.INC_JN - Superinstructions.FIRST) > 0);
+		assertTrue(superinstructions.getSavedDispatches() > 0);
+		assertTrue(superinstructions.report().contains("moveMemReg+addRegReg+moveRegMem"));
+	}
+
+	@Test
+	public void testSubAndJump() {
+		//0: moveImmReg 5 %REG0
+		//3: moveImmReg 0 %REG3
+		//6: addImmReg -1 %REG0
+		//9: moveRegReg %REG0 %REG1
+		//12: subRegReg %REG3 %REG1 (REG1 <- 0 - REG0)
+		//15: jz 21
+		//17: incReg %REG2
+		//19: jmp 6
+		//21: -1
+		int program[] = {14, 5, 0, 14, 0, 3, 3, -1, 0, 13, 0, 1, 4, 3, 1, 18, 21, 15, 2, 16, 6, -1};
+		Architecture plain = loadProgram(0, program);
+		Architecture fused = loadProgram(10, program);
+		plain.controlUnitEexec();
+		fused.controlUnitEexec();
+		TestPrograms.assertSameState(plain, fused);
+		assertEquals(4, fused.getREG2().getData());
+		assertEquals(plain.getFastInterpreter().getInstructions(), fused.getFastInterpreter().getInstructions());
+		Superinstructions superinstructions = fused.getFastInterpreter().getSuperinstructions();
+		assertTrue(superinstructions.getExecutions(Superinstructions.SUB_JZ - Superinstructions.FIRST) > 0);
+	}
+
+	@Test
+	public void testFusedCodeChanged() {
+		//a store into a superinstruction removes it from the cache
+		//0: moveImmReg -3 %REG0
+		//3: moveImmReg 1 %REG1
+		//6: incReg %REG0
+		//8: jn 6
+		//10: moveRegMem %REG1 7 (incReg %REG0 becomes incReg %REG1)
+		//13: moveImmReg -3 %REG1
+		//16: moveImmReg -1 %REG3
+		//19: moveRegMem %REG3 10 (the program halts in the next time it gets to 10)
+		//22: jmp 6
+		int program[] = {14, -3, 0, 14, 1, 1, 15, 0, 17, 6, 12, 1, 7, 14, -3, 1, 14, -1, 3, 12, 3, 10, 16, 6};
+		Architecture plain = loadProgram(0, program);
+		Architecture fused = loadProgram(4, program);
+		plain.controlUnitEexec();
+		fused.controlUnitEexec();
+		TestPrograms.assertSameState(plain, fused);
+		assertEquals(0, fused.getREG1().getData());
+		assertEquals(plain.getFastInterpreter().getInstructions(), fused.getFastInterpreter().getInstructions());
+	}
+
+	@Test
+	public void testCompiledLoop() {
+		//the loops made of superinstructions are compiled as their commands
+		//0: moveImmReg -500 %REG0
+		//3: moveImmReg 2 %REG2
+		//6: moveMemReg 100 %REG1
+		//9: addRegReg %REG2 %REG1
+		//12: moveRegMem %REG1 100
+		//15: incReg %REG0
+		//17: jn 6
+		//19: -1
+		int program[] = {14, -500, 0, 14, 2, 2, 11, 100, 1, 0, 2, 1, 12, 1, 100, 15, 0, 17, 6, -1};
+		Architecture plain = loadProgram(0, program);
+		Architecture compiled = loadProgram(10, program);
+		compiled.getFastInterpreter().setJitThreshold(100);
+		plain.controlUnitEexec();
+		compiled.controlUnitEexec();
+		TestPrograms.assertSameState(plain, compiled);
+		assertEquals(1, compiled.getFastInterpreter().getCompiledBlocks().size());
+		assertEquals(5, compiled.getFastInterpreter().getCompiledBlocks().get(0).getLength());
+		assertEquals(plain.getFastInterpreter().getInstructions(), compiled.getFastInterpreter().getInstructions());
+	}
+
+	@Test
+	public void testDataWordAtPC() {
+		//data words with the numbers of the superinstructions halt the machine, just like the microprograms
+		for (int word = Superinstructions.FIRST; word <= Superinstructions.INC_JZ; word++) {
+			Architecture fast = new Architecture(false, true);
+			fast.reset(new int[] {word, 0, 0, -1});
+			fast.controlUnitEexec();
+			Architecture micro = new Architecture(false, false);
+			micro.reset(new int[] {word, 0, 0, -1});
+			micro.controlUnitEexec();
+			assertEquals(0, fast.getInstructions());
+			assertEquals(micro.getPC().getData(), fast.getPC().getData());
+			assertEquals(micro.getIR().getData(), fast.getIR().getData());
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestWorkloadRunner {
+
+	private File writeSource(File directory, String name, String... lines) throws IOException {
+		File file = new File(directory, name+".dsf");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		for (String line : lines)
+			writer.write(line+"\n");
+		writer.close();
+		return file;
+	}
+
+	@Test
+	public void testReadExpected() throws IOException {
+		File directory = Files.createTempDirectory("workloads").toFile();
+		directory.deleteOnExit();
+		File source = writeSource(directory, "expected", "; a comment", "# expect a = -3", "a", "; expect REG1=7", "move 1 %REG0 ; expect b=1");
+		Map<String, Integer> expected = WorkloadRunner.readExpected(source);
+		assertEquals(2, expected.size());
+		assertEquals(-3, expected.get("a").intValue());
+		assertEquals(7, expected.get("REG1").intValue());
+	}
+
+	@Test
+	public void testRun() throws IOException {
+		File directory = Files.createTempDirectory("workloads").toFile();
+		directory.deleteOnExit();
+		writeSource(directory, "right", "; expect total=6", "; expect REG1=0", "total",
+				"move 3 %REG1", "laco: add %REG1 %REG0", "add -1 %REG1", "jz fim", "jmp laco", "fim: move %REG0 total");
+		writeSource(directory, "wrong", "; expect REG0=1", "; expect nothing=0", "move 2 %REG0");
+		writeSource(directory, "invalid", "jmp %REG0");
+		WorkloadRunner runner = new WorkloadRunner(128, 1);
+		ArrayList<WorkloadRunner.Result> results = runner.runAll(directory);
+		assertEquals(3, results.size());
+
+		WorkloadRunner.Result invalid = results.get(0);
+		assertFalse(invalid.isOk());
+		assertNotNull(invalid.getError());
+
+		WorkloadRunner.Result right = results.get(1);
+		assertTrue(right.isOk());
+		assertEquals(13, right.getInstructions()); //move, 3 times (add, add, jz), 2 jmp, move
+		long microsteps = Architecture.getMicrosteps(14) + 3*Architecture.getMicrosteps(0) + 3*Architecture.getMicrosteps(3)
+				+ 3*Architecture.getMicrosteps(18) + 2*Architecture.getMicrosteps(16) + Architecture.getMicrosteps(12);
+		assertEquals(microsteps, right.getMicrosteps());
+		assertTrue(right.getRuns() >= 1);
+
+		WorkloadRunner.Result wrong = results.get(2);
+		assertNull(wrong.getError());
+		assertFalse(wrong.isOk());
+		assertEquals(2, wrong.getFailures().size());
+	}
+
+	@Test
+	public void testCorpus() {
+		//the corpus kept in the project
+		WorkloadRunner runner = new WorkloadRunner(WorkloadRunner.DEFAULT_MEMORY_SIZE, 1);
+		ArrayList<WorkloadRunner.Result> results = runner.runAll(new File(WorkloadRunner.DEFAULT_DIRECTORY));
+		assertEquals(6, results.size());
+		for (WorkloadRunner.Result result : results)
+			assertTrue(result.toString(), result.isOk());
+	}
+
+}
@@ -0,0 +1,338 @@
+package architecture;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import assembler.Assembler;
+import components.Register;
+
+/**
+ * This class runs the workload corpus: the assembly programs (.dsf) kept in the workloads directory.
+ * They are the same programs for every change in the architecture, so the results can be compared.
+ *
+ * Each program declares its expected final state in comments, one value per line:
+ * "; expect name=value", where name is a register (such as REG0) or a variable.
+ *
+ * Each program is assembled and executed once counting its commands, so the microsteps that the
+ * microprograms would perform are known (see Architecture.getMicrosteps()), and its final state is
+ * checked. Then it is executed again (without counting) until the minimum time is reached, and
+ * the instructions and microsteps per second are reported.
+ *
+ * Usage: WorkloadRunner [-dir directory] [-time ms] [-memory size] [-out file]
+ * -dir directory: where the programs are (default: workloads)
+ * -time ms: the minimum time measured for each program (default: 1000)
+ * -memory size: the memory size the programs are assembled for (default: 1024)
+ * -out file: also writes the results into a CSV file
+ */
+public class WorkloadRunner {
+
+	public static final String DEFAULT_DIRECTORY = "workloads";
+	public static final int DEFAULT_MEMORY_SIZE = 1024;
+	public static final long DEFAULT_TIME = 1000; //milliseconds
+	private static final String EXPECT = "expect ";
+
+	private int memorySize;
+	private long minTime; //nanoseconds
+
+	/**
+	 * @param memorySize the memory size the programs are assembled for
+	 * @param minTime the minimum time measured for each program, in milliseconds
+	 */
+	public WorkloadRunner(int memorySize, long minTime) {
+		this.memorySize = memorySize;
+		this.minTime = minTime*1000000;
+	}
+
+	public int getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * This method runs all the programs (.dsf) of a directory, in the order of their names
+	 * @param directory
+	 * @return
+	 */
+	public ArrayList<Result> runAll(File directory) {
+		ArrayList<Result> results = new ArrayList<>();
+		File files[] = directory.listFiles();
+		if (files == null) {
+			System.out.println("FATAL ERROR! "+directory+" is not a directory");
+			return results;
+		}
+		Arrays.sort(files);
+		for (File file : files)
+			if (file.getName().endsWith(".dsf"))
+				results.add(run(file));
+		return results;
+	}
+
+	/**
+	 * This method assembles, checks and measures one single program
+	 * @param source the .dsf file
+	 * @return
+	 */
+	public Result run(File source) {
+		String name = source.getName().substring(0, source.getName().length()-4);
+		Map<String, Integer> expected;
+		BinaryExecutable executable;
+		try {
+			expected = readExpected(source);
+			executable = assemble(source);
+		} catch (IOException | NumberFormatException e) {
+			return new Result(name, "the program can not be assembled: "+e.getMessage());
+		}
+		if (executable == null)
+			return new Result(name, "the program has errors");
+		if (executable.getRequiredMemorySize() > memorySize)
+			return new Result(name, "the program does not fit into the memory");
+
+		Architecture arch = new Architecture(false, true, memorySize, Architecture.HEAP_MEMORY);
+		FastInterpreter interpreter = arch.getFastInterpreter();
+		interpreter.setCounting(true);
+		load(arch, executable);
+		arch.controlUnitEexec();
+		long instructions = arch.getInstructions();
+		long counts[] = interpreter.getCounts();
+		long microsteps = 0;
+		for (int i=0;i<counts.length;i++)
+			microsteps += counts[i]*Architecture.getMicrosteps(i);
+		ArrayList<String> failures = check(arch, executable, expected);
+		interpreter.setCounting(false);
+
+		int runs = 0;
+		long time = 0;
+		do {
+			load(arch, executable);
+			long start = System.nanoTime();
+			arch.controlUnitEexec();
+			time += System.nanoTime() - start;
+			runs++;
+		} while (time < minTime);
+		return new Result(name, instructions, microsteps, runs, time, failures);
+	}
+
+	/**
+	 * This method stores the program into the memory, clearing all the state of the architecture
+	 */
+	private static void load(Architecture arch, BinaryExecutable executable) {
+		arch.reset(new int[0]);
+		executable.load(arch.getMemory());
+		arch.getPC().setData(executable.getEntry());
+	}
+
+	/**
+	 * This method assembles a program into a temporary binary executable, so the addresses of the variables are known
+	 * @param source
+	 * @return null if the program has errors
+	 * @throws IOException
+	 */
+	private BinaryExecutable assemble(File source) throws IOException {
+		String path = source.getPath();
+		File temporary = File.createTempFile("workload", ".dxf");
+		String filename = temporary.getPath().substring(0, temporary.getPath().length()-4);
+		PrintStream out = System.out;
+		try {
+			Assembler assembler = new Assembler(memorySize);
+			assembler.setBinaryOutput(true);
+			System.setOut(new PrintStream(new ByteArrayOutputStream())); //the assembler messages
+			assembler.read(path.substring(0, path.length()-4));
+			assembler.parse();
+			if (!assembler.makeExecutable(filename))
+				return null;
+			return BinaryExecutable.read(filename+".dxb");
+		} finally {
+			System.setOut(out);
+			temporary.delete();
+			new File(filename+".dxb").delete();
+		}
+	}
+
+	/**
+	 * This method reads the expected final state declared in the comments of a program
+	 * @param source
+	 * @return the expected value of each register or variable, in the order they are declared
+	 * @throws IOException
+	 */
+	static Map<String, Integer> readExpected(File source) throws IOException {
+		Map<String, Integer> expected = new LinkedHashMap<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(source))) {
+			String linha;
+			while ((linha = br.readLine()) != null) {
+				linha = linha.trim();
+				if (linha.isEmpty() || ((linha.charAt(0) != ';') && (linha.charAt(0) != '#')))
+					continue;
+				linha = linha.substring(1).trim();
+				if (!linha.startsWith(EXPECT))
+					continue;
+				String pair[] = linha.substring(EXPECT.length()).split("=");
+				if (pair.length != 2)
+					throw new NumberFormatException("invalid expectation: "+linha);
+				expected.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+			}
+		}
+		return expected;
+	}
+
+	/**
+	 * This method compares the final state of the architecture with the expected one
+	 * @return the differences found (empty if the state is the expected one)
+	 */
+	private static ArrayList<String> check(Architecture arch, BinaryExecutable executable, Map<String, Integer> expected) {
+		ArrayList<String> failures = new ArrayList<>();
+		for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+			String name = entry.getKey();
+			Integer value = null;
+			for (Register register : arch.getRegistersList())
+				if (name.equals(register.getRegisterName()))
+					value = register.getData();
+			int variable = executable.getVariables().indexOf(name);
+			if (variable >= 0)
+				value = arch.getMemory().getData(executable.getVariablesAddresses().get(variable));
+			if (value == null)
+				failures.add(name+" is neither a register nor a variable");
+			else if (value.intValue() != entry.getValue().intValue())
+				failures.add(name+"="+value+" (expected "+entry.getValue()+")");
+		}
+		return failures;
+	}
+
+	/**
+	 * This class keeps the measures of one program of the corpus
+	 */
+	public static class Result {
+		private String name;
+		private long instructions; //per run
+		private long microsteps; //per run
+		private int runs;
+		private long time; //nanoseconds, all the runs
+		private ArrayList<String> failures;
+		private String error; //null if the program was executed
+
+		Result(String name, long instructions, long microsteps, int runs, long time, ArrayList<String> failures) {
+			this.name = name;
+			this.instructions = instructions;
+			this.microsteps = microsteps;
+			this.runs = runs;
+			this.time = time;
+			this.failures = failures;
+		}
+
+		Result(String name, String error) {
+			this.name = name;
+			this.error = error;
+			failures = new ArrayList<>();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getInstructions() {
+			return instructions;
+		}
+
+		public long getMicrosteps() {
+			return microsteps;
+		}
+
+		public int getRuns() {
+			return runs;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return the values of the final state that are not the expected ones
+		 */
+		public ArrayList<String> getFailures() {
+			return failures;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		public boolean isOk() {
+			return (error == null) && failures.isEmpty();
+		}
+
+		public double getInstructionsPerSecond() {
+			return (time == 0)?0:instructions*(double) runs*1e9/time;
+		}
+
+		public double getMicrostepsPerSecond() {
+			return (time == 0)?0:microsteps*(double) runs*1e9/time;
+		}
+
+		@Override
+		public String toString() {
+			if (error != null)
+				return name+": FATAL ERROR! "+error;
+			StringBuilder line = new StringBuilder(name).append(":");
+			line.append(" instructions=").append(instructions);
+			line.append(" microsteps=").append(microsteps);
+			line.append(" runs=").append(runs);
+			line.append(String.format(Locale.ROOT, " instructions/s=%.0f microsteps/s=%.0f", getInstructionsPerSecond(), getMicrostepsPerSecond()));
+			line.append(failures.isEmpty()?" OK":" WRONG STATE "+failures);
+			return line.toString();
+		}
+	}
+
+	/**
+	 * This method writes the results into a CSV file
+	 * @param results
+	 * @param filename
+	 * @throws IOException
+	 */
+	public static void write(ArrayList<Result> results, String filename) throws IOException {
+		try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+			writer.println("workload,ok,instructions,microsteps,runs,instructions_per_second,microsteps_per_second");
+			for (Result result : results)
+				writer.println(String.format(Locale.ROOT, "%s,%b,%d,%d,%d,%.0f,%.0f", result.getName(), result.isOk(),
+						result.getInstructions(), result.getMicrosteps(), result.getRuns(),
+						result.getInstructionsPerSecond(), result.getMicrostepsPerSecond()));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String directory = DEFAULT_DIRECTORY;
+		long time = DEFAULT_TIME;
+		int memorySize = DEFAULT_MEMORY_SIZE;
+		String out = null;
+		for (int i=0;i<args.length;i++) {
+			if ("-dir".equals(args[i]) && (i+1 < args.length))
+				directory = args[++i];
+			else if ("-time".equals(args[i]) && (i+1 < args.length))
+				time = Long.parseLong(args[++i]);
+			else if ("-memory".equals(args[i]) && (i+1 < args.length))
+				memorySize = Integer.parseInt(args[++i]);
+			else if ("-out".equals(args[i]) && (i+1 < args.length))
+				out = args[++i];
+		}
+		WorkloadRunner runner = new WorkloadRunner(memorySize, time);
+		ArrayList<Result> results = runner.runAll(new File(directory));
+		int failures = 0;
+		for (Result result : results) {
+			System.out.println(result);
+			if (!result.isOk())
+				failures++;
+		}
+		System.out.println(results.size()+" programs, "+failures+" failures");
+		if (out != null)
+			write(results, out);
+	}
+
+}
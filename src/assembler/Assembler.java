@@ -6,9 +6,14 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 
 import architecture.Architecture;
+import architecture.BinaryExecutable;
+import architecture.SimulatorEvents;
 import components.Register;
 
 public class Assembler {
@@ -21,17 +26,42 @@ public class Assembler {
 	private ArrayList<String>labels;
 	private ArrayList<Integer> labelsAdresses;
 	private ArrayList<String>variables;
+	private ArrayList<Integer> fixups; //positions of the object program referring to labels or variables
+	private Tokenizer tokenizer;
+	private MnemonicTable mnemonics;
+	private int operandStart[]; //operands of the command being processed
+	private int operandEnd[];
+	private int parseErrors;
+	private int memorySize; //the variables are placed from the top of this memory
+	private boolean binaryOutput; //if true, the executable is also saved in the binary format (.dxb)
+	private DebugMap debugMap; //the source line of each command, null if no debug map is saved
+	private int lineNumber; //the line being parsed
+	private String currentLabel; //the last label declared
 	
 	
 	public Assembler() {
+		this(Architecture.DEFAULT_MEMORY_SIZE);
+	}
+
+	/**
+	 * Constructor for programs that will run in an architecture with another memory size
+	 * @param memorySize the amount of positions in the memory of the architecture
+	 */
+	public Assembler(int memorySize) {
 		lines = new ArrayList<>();
 		labels = new ArrayList<>();
 		labelsAdresses = new ArrayList<>();
 		variables = new ArrayList<>();
+		fixups = new ArrayList<>();
 		objProgram = new ArrayList<>();
 		execProgram = new ArrayList<>();
 		arch = new Architecture();
 		commands = arch.getCommandsList();	
+		tokenizer = new Tokenizer();
+		mnemonics = new MnemonicTable(commands);
+		operandStart = new int[3];
+		operandEnd = new int[3];
+		this.memorySize = memorySize;
 	}
 	
 	//getters
@@ -61,6 +91,36 @@ public class Assembler {
 		return execProgram;
 	}
 	
+	public boolean isBinaryOutput() {
+		return binaryOutput;
+	}
+
+	/**
+	 * @param binaryOutput if true, makeExecutable() also saves a binary executable (see BinaryExecutable)
+	 */
+	public void setBinaryOutput(boolean binaryOutput) {
+		this.binaryOutput = binaryOutput;
+	}
+
+	public boolean isDebugOutput() {
+		return debugMap != null;
+	}
+
+	/**
+	 * @param debugOutput if true, the source line of each command is kept while parsing,
+	 * and makeExecutable() also saves the debug map (.dmap, see DebugMap). It must be set before parse()
+	 */
+	public void setDebugOutput(boolean debugOutput) {
+		debugMap = debugOutput?new DebugMap():null;
+	}
+
+	/**
+	 * @return the debug map built by parse(), or null if the debug output is off
+	 */
+	public DebugMap getDebugMap() {
+		return debugMap;
+	}
+
 	protected void setLines(ArrayList<String> lines) {
 		this.lines = lines;
 	}	
@@ -79,7 +139,8 @@ public class Assembler {
 	 * 	 	variables names must contains only alphabetical and numerical chars
 	 *      variables names never uses any command name
 	 * 		names ended with ":" identifies labels i.e. address in the memory
-	 * 		Commands are only that ones known in the architecture. No comments allowed
+	 * 		Commands are only that ones known in the architecture, or their families (add, sub, imul, move, inc)
+	 * 		Tokens are separated by spaces or tabs. Comments start with ; or # and go until the end of the line
 	 * 	
 	 * 		The assembly file must have the extention .dsf
 	 * 		The executable file must have the extention .dxf 	
@@ -106,29 +167,48 @@ public class Assembler {
 
 	/**
 	 * This method scans the strings in lines
-	 * generating, for each one, the corresponding machine code
+	 * generating, for each one, the corresponding machine code.
+	 * The lines are split by the tokenizer and the mnemonics are found in the mnemonic table,
+	 * so no array and no String is built just to classify a line
 	 * @param lines
 	 */
 	public void parse() {
+		long start = SimulatorEvents.begin();
+		lineNumber = 0;
 		for (String s:lines) {
-			String tokens[] = s.split(" ");
-			if (findCommandNumber(tokens)>=0) { //the line is a command
-				proccessCommand(tokens);
+			lineNumber++;
+			tokenizer.reset(s);
+			if (!tokenizer.next()) //blank line or comment
+				continue;
+			int code = mnemonics.lookup(s, tokenizer.getStart(), tokenizer.getEnd());
+			if (code != MnemonicTable.NOT_FOUND) { //the line is a command
+				proccessCommand(code);
+				continue;
 			}
-			else { //the line is not a command: so, it can be a variable or a label
-				if (tokens[0].endsWith(":")){ //if it ends with : it is a label
-					String label = tokens[0].substring(0, tokens[0].length()-1); //removing the last character
-					labels.add(label);
-					labelsAdresses.add(objProgram.size());
+			//the line is not a command: so, it can be a variable or a label
+			if (tokenizer.charAt(tokenizer.length()-1) == ':') { //if it ends with : it is a label
+				String label = s.substring(tokenizer.getStart(), tokenizer.getEnd()-1); //removing the last character
+				labels.add(label);
+				labelsAdresses.add(objProgram.size());
+				currentLabel = label;
+				if (tokenizer.next()) { //a command may follow the label in the same line
+					code = mnemonics.lookup(s, tokenizer.getStart(), tokenizer.getEnd());
+					if (code != MnemonicTable.NOT_FOUND)
+						proccessCommand(code);
+					else
+						parseError(s);
 				}
-				else //otherwise, it must be a variable
-					variables.add(tokens[0]);
 			}
+			else //otherwise, it must be a variable
+				variables.add(tokenizer.getText());
 		}
-		
+		SimulatorEvents.assemblyPhase("parse", start);
 	}
 
-
+	private void parseError(String line) {
+		System.out.println("FATAL ERROR! Invalid line: "+line.trim());
+		parseErrors++;
+	}
 
 	/**
 	 * This method processes a command, putting it and its parameters (if they have)
@@ -136,112 +216,76 @@ public class Assembler {
 	 * @param tokens
 	 */
 	protected void proccessCommand(String[] tokens) {
-		String command = tokens[0];
-		String parameter ="";
-		String parameter2 = "";
-		int commandNumber = findCommandNumber(tokens);
-		if (commandNumber == 0) { //must to proccess an add command
-			parameter = tokens[1];
-			parameter = "&"+parameter; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 1) { //must to proccess an sub command
-			parameter = tokens[1];
-			parameter = "&"+parameter;//this is a flag to indicate that is a position in memory		
-		}
-		if (commandNumber == 2) { //must to proccess an jmp command
-			parameter = tokens[1];
-			parameter = "&"+parameter;//this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 3) { //must to proccess an jz command
-			parameter = tokens[1];
-			parameter = "&"+parameter;//this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 4) { //must to proccess an jn command
-			parameter = tokens[1];
-			parameter = "&"+parameter;//this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 5) { //must to proccess an read command
-			parameter = tokens[1];
-			parameter = "&"+parameter;//this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 6) { //must to proccess an store command
-			parameter = tokens[1];
-			parameter = "&"+parameter;//this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 7) { //must to proccess an ldi command
-			parameter = tokens[1];
-		}
-		if (commandNumber == 8) { //must to proccess an inc command
-			
-		}
-		if (commandNumber == 9) { //must to proccess an moveRegReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-		objProgram.add(Integer.toString(commandNumber));
-		if (!parameter.isEmpty()) {
-			objProgram.add(parameter);
-		}
-		if (!parameter2.isEmpty()) {
-			objProgram.add(parameter2);
+		StringBuilder line = new StringBuilder();
+		for (String token : tokens)
+			if (token != null)
+				line.append(token).append(' ');
+		String s = line.toString();
+		tokenizer.reset(s);
+		if (!tokenizer.next()) {
+			parseError(s);
+			return;
 		}
+		int code = mnemonics.lookup(s, tokenizer.getStart(), tokenizer.getEnd());
+		if (code == MnemonicTable.NOT_FOUND)
+			parseError(s);
+		else
+			proccessCommand(code);
 	}
-	
 
 	/**
-	 * This method uses the tokens to search a command
-	 * in the commands list and returns its id.
-	 * Some commands (as move) can have multiple formats (reg reg, mem reg, reg mem) and
-	 * multiple ids, one for each format.
-	 * @param tokens
-	 * @return
+	 * This method processes the command in the tokenizer, whose mnemonic was already read.
+	 * Registers are kept as they are (%REG0), numbers are addresses or immediates, and any other
+	 * name is a variable or a label, marked with &
+	 * @param code the command id, or a family of commands (see MnemonicTable)
 	 */
-	private int findCommandNumber(String[] tokens) {
-		int p = commands.indexOf(tokens[0]);
-		if (p<0){ //the command isn't in the list. So it must have multiple formats
-			if ("move".equals(tokens[0])) //the command is a move
-				p = proccessMove(tokens);
-			if("add".equals(tokens[0]))
-				p = proccessAdd(tokens);
-			if("imul".equals(tokens[0]))
-				p = proccessImul(tokens);
-			if("sub".equals(tokens[0]))
-				p = proccessSub(tokens);
+	private void proccessCommand(int code) {
+		String line = tokenizer.getLine();
+		int count = 0;
+		while (tokenizer.next()) {
+			if (count == operandStart.length) {
+				parseError(line);
+				return;
+			}
+			operandStart[count] = tokenizer.getStart();
+			operandEnd[count] = tokenizer.getEnd();
+			count++;
 		}
-		return p;
-	}
-
-	/**
-	 * This method proccess a move command.
-	 * It must have differents formats, meaning differents internal commands
-	 * @param tokens
-	 * @return
-	 */
-	private int proccessMove(String[] tokens) {
-		String p1 = tokens[1];
-		String p2 = tokens[2];
-		int p=-1;
-		if ((p1.startsWith("%"))&&(p2.startsWith("%"))) { //this is a moveRegReg comand
-			p = commands.indexOf("moveRegReg");
+		int commandNumber = mnemonics.command(code, line, operandStart, operandEnd, count);
+		if (commandNumber == MnemonicTable.NOT_FOUND) {
+			parseError(line);
+			return;
 		}
-		else { 
-			if((p1.startsWith("&"))&& (p2.startsWith("%"))) { //this is a moveMemReg comand
-				p = commands.indexOf("moveMemReg");
-			}
-			else {
-				if (p1.startsWith("%")) { //this is a moveRegMem comand
-					p2 = "&" + p2;
-					p = commands.indexOf("moveRegMem");
-				}
-				else {
-					p2 = "&" + p2;
-					p = commands.indexOf("moveImmReg");
-				}
+		for (int i=0;i<count;i++) //numbers must fit into a word
+			if (Tokenizer.isNumber(line, operandStart[i], operandEnd[i]) && !Tokenizer.isWord(line, operandStart[i], operandEnd[i])) {
+				parseError(line);
+				return;
 			}
-		return p;
+		if (debugMap != null)
+			debugMap.add(objProgram.size(), lineNumber, currentLabel, line);
+		objProgram.add(Integer.toString(commandNumber));
+		String kinds = mnemonics.getOperands(commandNumber);
+		for (int i=0;i<count;i++) {
+			String parameter = line.substring(operandStart[i], operandEnd[i]);
+			if (Tokenizer.isNumber(line, operandStart[i], operandEnd[i])) //numbers are written just like StreamingAssembler does
+				parameter = Integer.toString((int) Tokenizer.value(line, operandStart[i], operandEnd[i]));
+			else if ((kinds.charAt(i) != 'R') && !parameter.startsWith("&"))
+				parameter = "&"+parameter; //this is a flag to indicate that is a position in memory
+			addParameter(parameter);
 		}
 	}
 
+	/**
+	 * This method puts a parameter into the object program. If it refers to a label
+	 * or a variable, its position is kept, so it is patched later without searching it
+	 * @param parameter
+	 */
+	private void addParameter(String parameter) {
+		if (parameter.startsWith("&"))
+			fixups.add(objProgram.size());
+		objProgram.add(parameter);
+	}
+	
 
 	/**
 	 * This method creates the executable program from the object program
@@ -253,17 +297,36 @@ public class Assembler {
 	 * Step 4: make the executable by replacing the labels and the variables by the
 	 * corresponding memory addresses 
 	 * @param filename 
+	 * @return false if the source has errors, so no executable was made
 	 * @throws IOException 
 	 */
-	public void makeExecutable(String filename) throws IOException {
-		if (!checkLabels())
-			return;
+	public boolean makeExecutable(String filename) throws IOException {
+		if (parseErrors > 0)
+			return false;
+		long start = SimulatorEvents.begin();
+		boolean declared = checkLabels();
+		SimulatorEvents.assemblyPhase("checkLabels", start);
+		if (!declared)
+			return false;
 		execProgram = (ArrayList<String>) objProgram.clone();
-		replaceAllVariables();
-		replaceLabels(); //replacing all labels by the address they refer to
+		start = SimulatorEvents.begin();
+		resolveSymbols(); //replacing all variables and labels by the addresses they refer to
+		SimulatorEvents.assemblyPhase("resolveSymbols", start);
+		start = SimulatorEvents.begin();
 		replaceRegisters(); //replacing all registers by the register id they refer to
+		SimulatorEvents.assemblyPhase("replaceRegisters", start);
+		start = SimulatorEvents.begin();
 		saveExecFile(filename);
+		SimulatorEvents.assemblyPhase("saveExecFile", start);
+		if (binaryOutput) {
+			start = SimulatorEvents.begin();
+			saveBinaryFile(filename);
+			SimulatorEvents.assemblyPhase("saveBinaryFile", start);
+		}
+		if (debugMap != null)
+			debugMap.write(filename+".dmap");
 		System.out.println("Finished");
+		return true;
 	}
 
 	/**
@@ -290,13 +353,70 @@ public class Assembler {
 	 * and decreases (creating a stack)
 	 */
 	protected void replaceAllVariables() {
-		int position = arch.getMemorySize()-1; //starting from the end of the memory
+		long start = SimulatorEvents.begin();
+		HashMap<String, String> addresses = new HashMap<>();
+		putVariables(addresses);
+		replaceSymbols(addresses);
+		SimulatorEvents.assemblyPhase("replaceAllVariables", start);
+	}
+
+	/**
+	 * This method puts the address of each variable into a symbol table.
+	 * The first variable is in the last position of the memory, the second one
+	 * in the position before it, and so on
+	 * @param addresses the symbol table, whose keys are prefixed by &
+	 */
+	private void putVariables(HashMap<String, String> addresses) {
+		int position = memorySize-1; //starting from the end of the memory
 		for (String var : this.variables) { //scanning all variables
-			replaceVariable(var, position);
+			if (!addresses.containsKey("&"+var)) //a variable declared twice keeps its first address
+				addresses.put("&"+var, Integer.toString(position));
 			position --;
 		}
 	}
 
+	/**
+	 * This method puts the address of each label into a symbol table
+	 * @param addresses the symbol table, whose keys are prefixed by &
+	 */
+	private void putLabels(HashMap<String, String> addresses) {
+		for (int i=0;i<labels.size();i++) {
+			String label = "&"+labels.get(i);
+			if (!addresses.containsKey(label)) //a label declared twice keeps its first address
+				addresses.put(label, Integer.toString(labelsAdresses.get(i)));
+		}
+	}
+
+	/**
+	 * This method replaces, in one single scan of the execprogram, all the names
+	 * found in a symbol table by their addresses
+	 * @param addresses
+	 */
+	private void replaceSymbols(HashMap<String, String> addresses) {
+		for (int i=0;i<execProgram.size();i++) {
+			String address = addresses.get(execProgram.get(i));
+			if (address != null)
+				execProgram.set(i, address);
+		}
+	}
+
+	/**
+	 * This method replaces all the variables and the labels by their addresses.
+	 * Only the positions kept while parsing (the fixups) are visited, so the whole
+	 * program is not scanned again. A name used both as a variable and as a label
+	 * refers to the variable
+	 */
+	protected void resolveSymbols() {
+		HashMap<String, String> addresses = new HashMap<>();
+		putVariables(addresses);
+		putLabels(addresses);
+		for (int position : fixups) {
+			String address = addresses.get(execProgram.get(position));
+			if (address != null)
+				execProgram.set(position, address);
+		}
+	}
+
 	/**
 	 * This method saves the execFile collection into the output file
 	 * @param filename
@@ -312,26 +432,38 @@ public class Assembler {
 		
 	}
 
+	/**
+	 * This method saves the execFile collection into a binary executable (.dxb).
+	 * The code ends with -1, just like the text executable, the data section has one
+	 * position (initially zero) for each variable, and the variable table keeps their names
+	 * @param filename
+	 * @throws IOException 
+	 */
+	private void saveBinaryFile(String filename) throws IOException {
+		int code[] = new int[execProgram.size()+1];
+		for (int i=0;i<execProgram.size();i++)
+			code[i] = Integer.parseInt(execProgram.get(i));
+		code[code.length-1] = -1; //-1 is a flag indicating that the program is finished
+		int dataAddress = memorySize - variables.size(); //the variables are in the top of the memory
+		BinaryExecutable executable = new BinaryExecutable(0, code, dataAddress, new int[variables.size()]);
+		int position = memorySize-1;
+		for (String var : variables) {
+			executable.addVariable(var, position);
+			position--;
+		}
+		executable.write(filename+".dxb");
+	}
+
 	/**
 	 * This method replaces all labels in the execprogram by the corresponding
 	 * address they refer to
 	 */
 	protected void replaceLabels() {
-		int i=0;
-		for (String label : labels) { //searching all labels
-			label = "&"+label;
-			int labelPointTo = labelsAdresses.get(i);
-			int lineNumber = 0;
-			for (String l : execProgram) {
-				if (l.equals(label)) {//this label must be replaced by the address
-					String newLine = Integer.toString(labelPointTo); // the address
-					execProgram.set(lineNumber, newLine);
-				}
-				lineNumber++;
-			}
-			i++;
-		}
-		
+		long start = SimulatorEvents.begin();
+		HashMap<String, String> addresses = new HashMap<>();
+		putLabels(addresses);
+		replaceSymbols(addresses);
+		SimulatorEvents.assemblyPhase("replaceLabels", start);
 	}
 
 	/**
@@ -360,15 +492,15 @@ public class Assembler {
 	 */
 	protected boolean checkLabels() {
 		System.out.println("Checking labels and variables");
+		HashSet<String> declared = new HashSet<>();
+		for (String label : labels)
+			declared.add("&"+label);
+		for (String var : variables)
+			declared.add("&"+var);
 		for (String line:objProgram) {
-			boolean found = false;
 			if (line.startsWith("&")) { //if starts with "&", it is a label or a variable
-				line = line.substring(1, line.length());
-				if (labels.contains(line))
-					found = true;
-				if (variables.contains(line))
-					found = true;
-				if (!found) {
+				if (!declared.contains(line)) {
+					line = line.substring(1, line.length());
 					System.out.println("FATAL ERROR! Variable or label "+line+" not declared!");
 					return false;
 				}
@@ -395,15 +527,86 @@ public class Assembler {
 		return -1;
 	}
 
+	/**
+	 * Usage: Assembler <source without .dsf> [memory size] [-binary] [-debug] [-stream] [-threads n]
+	 * -binary: also generates the binary executable (.dxb)
+	 * -debug: also generates the debug map (.dmap), with the source line of each address (see DebugMap).
+	 * The build cache is not used, and the source can not be streamed
+	 * -stream: the source is assembled while it is read, without keeping it in memory (see StreamingAssembler)
+	 * -threads n: the source is streamed through a pipeline of threads (see PipelinedAssembler)
+	 * -cache dir: the executables are kept in a build cache, and a source already assembled
+	 * is only copied from there (see BuildCache)
+	 * -cachesize bytes: the maximum size of the build cache
+	 * @param args
+	 * @throws IOException
+	 */
 	public static void main(String[] args) throws IOException {
 		String filename = args[0];
-		Assembler assembler = new Assembler();
-		System.out.println("Reading source assembler file: "+filename+".dsf");
-		assembler.read(filename);
-		System.out.println("Generating the object program");
-		assembler.parse();
-		System.out.println("Generating executable: "+filename+".dxf");
-		assembler.makeExecutable(filename);
+		int memorySize = Architecture.DEFAULT_MEMORY_SIZE;
+		boolean binary = false;
+		boolean debug = false;
+		boolean stream = false;
+		int threads = 0;
+		String cacheDirectory = null;
+		long cacheSize = BuildCache.DEFAULT_MAX_BYTES;
+		for (int i=1;i<args.length;i++) {
+			if ("-binary".equals(args[i]))
+				binary = true;
+			else if ("-debug".equals(args[i]))
+				debug = true;
+			else if ("-stream".equals(args[i]))
+				stream = true;
+			else if ("-threads".equals(args[i]) && (i+1 < args.length)) {
+				threads = Integer.parseInt(args[++i]);
+				stream = true;
+			}
+			else if ("-cache".equals(args[i]) && (i+1 < args.length))
+				cacheDirectory = args[++i];
+			else if ("-cachesize".equals(args[i]) && (i+1 < args.length))
+				cacheSize = Long.parseLong(args[++i]);
+			else
+				memorySize = Integer.parseInt(args[i]);
+		}
+		if (debug && stream) {
+			System.out.println("FATAL ERROR! The debug map can not be generated while streaming the source");
+			return;
+		}
+		BuildCache cache = null;
+		String key = null;
+		if ((cacheDirectory != null) && !debug) { //the debug map is not kept in the cache
+			cache = new BuildCache(new File(cacheDirectory), cacheSize);
+			key = BuildCache.key(Files.readAllBytes(new File(filename+".dsf").toPath()), memorySize, binary);
+			if (cache.fetch(key, filename, binary)) { //nothing is parsed or resolved
+				System.out.println("Executable taken from the build cache: "+filename+".dxf");
+				return;
+			}
+		}
+		boolean made;
+		if (stream) {
+			StreamingAssembler assembler;
+			if (threads > 0)
+				assembler = new PipelinedAssembler(memorySize, threads);
+			else
+				assembler = new StreamingAssembler(memorySize);
+			assembler.setBinaryOutput(binary);
+			System.out.println("Assembling "+filename+".dsf into "+filename+".dxf");
+			made = assembler.assemble(filename);
+			if (made)
+				System.out.println("Finished");
+		}
+		else {
+			Assembler assembler = new Assembler(memorySize);
+			assembler.setBinaryOutput(binary);
+			assembler.setDebugOutput(debug);
+			System.out.println("Reading source assembler file: "+filename+".dsf");
+			assembler.read(filename);
+			System.out.println("Generating the object program");
+			assembler.parse();
+			System.out.println("Generating executable: "+filename+".dxf");
+			made = assembler.makeExecutable(filename);
+		}
+		if (made && (cache != null))
+			cache.store(key, filename, binary);
 	}
 		
 }
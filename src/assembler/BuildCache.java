@@ -0,0 +1,192 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import architecture.Architecture;
+import components.Register;
+
+/**
+ * This class keeps executables already assembled in a local directory, so a source
+ * that was assembled before is not assembled again.
+ *
+ * Each entry is found by a key: the hash of the source text, of the commands and registers
+ * of the architecture (so changing them makes all the old entries useless) and of the options
+ * that change the executable (memory size, binary output).
+ *
+ * The directory never grows beyond a maximum size: when it does, the entries used least
+ * recently are removed. Reading an entry marks it as used (its modification time is updated).
+ */
+public class BuildCache {
+
+	public static final long DEFAULT_MAX_BYTES = 64L << 20; //64MB
+	private static final int FORMAT = 1; //changes when the executables change for the same source
+
+	private File directory;
+	private long maxBytes;
+	private int hits;
+	private int misses;
+
+	/**
+	 * @param directory where the entries are kept. It is created if it does not exist
+	 * @param maxBytes the maximum size of all the entries together
+	 */
+	public BuildCache(File directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * This method computes the key of a source
+	 * @param source the bytes of the source file
+	 * @param memorySize the memory size the source is assembled for
+	 * @param binary true if the binary executable is also generated
+	 * @return the key, in hexadecimal
+	 */
+	public static String key(byte source[], int memorySize, boolean binary) {
+		Architecture arch = new Architecture();
+		StringBuilder layout = new StringBuilder();
+		layout.append("format ").append(FORMAT).append('\n');
+		layout.append("memory ").append(memorySize).append('\n');
+		layout.append("binary ").append(binary).append('\n');
+		for (String command : arch.getCommandsList())
+			layout.append("command ").append(command).append('\n');
+		for (Register register : arch.getRegistersList())
+			layout.append("register ").append(register.getRegisterName()).append('\n');
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(layout.toString().getBytes(StandardCharsets.UTF_8));
+			digest.update(source);
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest())
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * This method copies the executables of an entry, if it exists
+	 * @param key
+	 * @param filename the executable name, without extension
+	 * @param binary true if the binary executable (.dxb) is also needed
+	 * @return false if the entry is not in the cache
+	 * @throws IOException
+	 */
+	public boolean fetch(String key, String filename, boolean binary) throws IOException {
+		File text = new File(directory, key+".dxf");
+		File bin = new File(directory, key+".dxb");
+		if (!text.isFile() || (binary && !bin.isFile())) {
+			misses++;
+			return false;
+		}
+		Files.copy(text.toPath(), new File(filename+".dxf").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		if (binary)
+			Files.copy(bin.toPath(), new File(filename+".dxb").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		long now = System.currentTimeMillis();
+		text.setLastModified(now); //the entry was used now
+		if (binary)
+			bin.setLastModified(now);
+		hits++;
+		return true;
+	}
+
+	/**
+	 * This method keeps the executables just assembled as an entry, removing
+	 * the oldest entries if the cache becomes too large
+	 * @param key
+	 * @param filename the executable name, without extension
+	 * @param binary true if the binary executable (.dxb) was also generated
+	 * @throws IOException
+	 */
+	public void store(String key, String filename, boolean binary) throws IOException {
+		if (!directory.isDirectory())
+			Files.createDirectories(directory.toPath());
+		if (binary)
+			put(new File(filename+".dxb").toPath(), new File(directory, key+".dxb"));
+		put(new File(filename+".dxf").toPath(), new File(directory, key+".dxf"));
+		evict();
+	}
+
+	/**
+	 * This method copies a file into the cache. It is copied with another name and then renamed,
+	 * so other processes never read an entry being written
+	 */
+	private void put(Path source, File entry) throws IOException {
+		Path temporary = Files.createTempFile(directory.toPath(), "entry", ".tmp");
+		try {
+			Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(temporary, entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * This method removes the entries used least recently until the cache fits into its maximum size
+	 */
+	private void evict() {
+		File files[] = directory.listFiles();
+		if (files == null)
+			return;
+		ArrayList<File> entries = new ArrayList<>();
+		long total = 0;
+		for (File file : files)
+			if (file.getName().endsWith(".dxf")) {
+				entries.add(file);
+				total += file.length() + binaryOf(file).length();
+			}
+		if (total <= maxBytes)
+			return;
+		File oldest[] = entries.toArray(new File[entries.size()]);
+		Arrays.sort(oldest, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (int i=0;(i<oldest.length)&&(total>maxBytes);i++) {
+			File bin = binaryOf(oldest[i]);
+			total -= oldest[i].length() + bin.length();
+			oldest[i].delete();
+			bin.delete();
+		}
+	}
+
+	private static File binaryOf(File text) {
+		String name = text.getName();
+		return new File(text.getParentFile(), name.substring(0, name.length()-4)+".dxb");
+	}
+
+}
@@ -0,0 +1,129 @@
+package assembler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * This class keeps the debug map of an executable: for each command, its address in the
+ * executable (.dxf), the line of the source (.dsf) where it was written, the last label declared
+ * before it (the label whose code it belongs to) and the text of that line.
+ *
+ * The map is saved as a side-car of the executable (.dmap), one command per line:
+ * address, line, label ("-" if there is none) and source, separated by tabs.
+ * Lines starting with ';' are comments.
+ */
+public class DebugMap {
+
+	public static final String NO_LABEL = "-";
+
+	private ArrayList<Integer> addresses;
+	private ArrayList<Integer> lines;
+	private ArrayList<String> labels;
+	private ArrayList<String> sources;
+
+	public DebugMap() {
+		addresses = new ArrayList<>();
+		lines = new ArrayList<>();
+		labels = new ArrayList<>();
+		sources = new ArrayList<>();
+	}
+
+	/**
+	 * This method adds a command into the map. Commands must be added in the order of their addresses
+	 * @param address
+	 * @param line the line of the source, starting from 1
+	 * @param label the last label declared before the command, or null
+	 * @param source the text of the line
+	 */
+	public void add(int address, int line, String label, String source) {
+		addresses.add(address);
+		lines.add(line);
+		labels.add((label == null)?NO_LABEL:label);
+		sources.add(source.trim().replace('\t', ' '));
+	}
+
+	public int size() {
+		return addresses.size();
+	}
+
+	public int getAddress(int i) {
+		return addresses.get(i);
+	}
+
+	public int getLine(int i) {
+		return lines.get(i);
+	}
+
+	public String getLabel(int i) {
+		return labels.get(i);
+	}
+
+	public String getSource(int i) {
+		return sources.get(i);
+	}
+
+	/**
+	 * This method finds the command that starts in an address
+	 * @param address
+	 * @return the position of the command in the map, or -1 if no command starts there
+	 */
+	public int find(int address) {
+		int low = 0;
+		int high = addresses.size()-1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int a = addresses.get(middle);
+			if (a < address)
+				low = middle + 1;
+			else if (a > address)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+	/**
+	 * This method saves the map
+	 * @param filename the complete filename, with its extension
+	 * @throws IOException
+	 */
+	public void write(String filename) throws IOException {
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+			writer.write("; address\tline\tlabel\tsource\n");
+			for (int i=0;i<addresses.size();i++)
+				writer.write(addresses.get(i)+"\t"+lines.get(i)+"\t"+labels.get(i)+"\t"+sources.get(i)+"\n");
+		}
+	}
+
+	/**
+	 * This method reads a map saved by write()
+	 * @param filename the complete filename, with its extension
+	 * @return
+	 * @throws IOException if the file is not a valid debug map
+	 */
+	public static DebugMap read(String filename) throws IOException {
+		DebugMap map = new DebugMap();
+		try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+			String linha;
+			while ((linha = br.readLine()) != null) {
+				if (linha.isEmpty() || linha.startsWith(";"))
+					continue;
+				String fields[] = linha.split("\t", 4);
+				if (fields.length != 4)
+					throw new IOException("Invalid debug map line: "+linha);
+				try {
+					map.add(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), fields[2], fields[3]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid debug map line: "+linha);
+				}
+			}
+		}
+		return map;
+	}
+
+}
@@ -0,0 +1,283 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class finds the command of a mnemonic with one single probe in a perfect hash table,
+ * built once from the commands list of the architecture.
+ *
+ * Besides the commands themselves (addRegReg, jmp...), the table knows the families of the
+ * commands with many formats (add, sub, imul, move, inc). The command of a family is chosen by
+ * the kinds of its operands (see variant()): the names of the commands tell these kinds, so
+ * "add %REG0 %REG1" is addRegReg and "add 5 %REG1" is addImmReg.
+ *
+ * Mnemonics are looked up directly in a range of the source line, so no String is built.
+ */
+public class MnemonicTable {
+
+	public static final int NOT_FOUND = -1;
+
+	//kinds of the operands
+	public static final int REG = 0;
+	public static final int MEM = 1; //a memory address: a number, a variable or a label
+	public static final int IMM = 2;
+	private static final String KINDS[] = {"Reg", "Mem", "Imm"};
+	private static final char KIND_CHARS[] = {'R', 'M', 'I'};
+
+	//operands of the commands whose names do not tell them
+	private static final String JUMPS[][] = {{"jmp", "M"}, {"jn", "M"}, {"jz", "M"},
+			{"jeq", "RRM"}, {"jneq", "RRM"}, {"jgt", "RRM"}, {"jlw", "RRM"}};
+
+	//perfect hash table: every key is in the slot given by its hash
+	private String keys[];
+	private int values[]; //command id, or -2-family for the families
+	private int seed;
+	private int mask;
+
+	private String operands[]; //for each command id, the kinds of its operands ("RR", "MR"...)
+	private ArrayList<String> families;
+	private int variants[][]; //for each family, the command id of each combination of kinds
+
+	/**
+	 * @param commands the commands list of the architecture (the position is the command id)
+	 */
+	public MnemonicTable(ArrayList<String> commands) {
+		HashMap<String, Integer> mnemonics = new HashMap<>();
+		families = new ArrayList<>();
+		ArrayList<int[]> familyVariants = new ArrayList<>();
+		operands = new String[commands.size()];
+		for (int id=0;id<commands.size();id++) {
+			String name = commands.get(id);
+			mnemonics.put(name, id);
+			int familyEnd = suffixStart(name);
+			operands[id] = kinds(name, familyEnd);
+			if (familyEnd == name.length()) //the name tells no operands
+				continue;
+			String family = name.substring(0, familyEnd);
+			int f = families.indexOf(family);
+			if (f < 0) {
+				f = families.size();
+				families.add(family);
+				int none[] = new int[12];
+				Arrays.fill(none, NOT_FOUND);
+				familyVariants.add(none);
+			}
+			familyVariants.get(f)[variantIndex(operands[id])] = id;
+		}
+		variants = familyVariants.toArray(new int[families.size()][]);
+		for (int f=0;f<families.size();f++)
+			if (!mnemonics.containsKey(families.get(f)))
+				mnemonics.put(families.get(f), -2-f);
+		build(mnemonics);
+	}
+
+	/**
+	 * This method returns where the operands kinds (Reg, Mem, Imm) start in a command name,
+	 * or the length of the name if it has no kinds
+	 */
+	private static int suffixStart(String name) {
+		int end = name.length();
+		boolean found = true;
+		while (found) {
+			found = false;
+			for (String kind : KINDS)
+				if ((end > kind.length()) && name.startsWith(kind, end - kind.length())) {
+					end -= kind.length();
+					found = true;
+					break;
+				}
+		}
+		return end;
+	}
+
+	/**
+	 * This method returns the kinds of the operands of a command, as one char per operand
+	 */
+	private static String kinds(String name, int suffixStart) {
+		if (suffixStart == name.length()) {
+			for (String jump[] : JUMPS)
+				if (jump[0].equals(name))
+					return jump[1];
+			return "";
+		}
+		StringBuilder kinds = new StringBuilder();
+		for (int i=suffixStart;i<name.length();i+=3)
+			for (int k=0;k<KINDS.length;k++)
+				if (name.startsWith(KINDS[k], i))
+					kinds.append(KIND_CHARS[k]);
+		return kinds.toString();
+	}
+
+	/**
+	 * This method returns the position, in the variants of a family, of a combination of kinds.
+	 * Up to two operands are supported
+	 */
+	private static int variantIndex(String kinds) {
+		if (kinds.length() == 1)
+			return 9 + kind(kinds.charAt(0));
+		return kind(kinds.charAt(0))*3 + kind(kinds.charAt(1));
+	}
+
+	private static int kind(char c) {
+		for (int k=0;k<KIND_CHARS.length;k++)
+			if (KIND_CHARS[k] == c)
+				return k;
+		return NOT_FOUND;
+	}
+
+	/**
+	 * This method finds a seed and a table size so that no two mnemonics share a slot
+	 */
+	private void build(HashMap<String, Integer> mnemonics) {
+		int size = Integer.highestOneBit(Math.max(1, mnemonics.size()*2 - 1)) << 1;
+		for (;;) {
+			for (seed=31;seed<31+64;seed+=2) {
+				mask = size - 1;
+				keys = new String[size];
+				values = new int[size];
+				boolean collision = false;
+				for (String key : mnemonics.keySet()) {
+					int slot = hash(key, 0, key.length());
+					if (keys[slot] != null) {
+						collision = true;
+						break;
+					}
+					keys[slot] = key;
+					values[slot] = mnemonics.get(key);
+				}
+				if (!collision)
+					return;
+			}
+			size <<= 1;
+		}
+	}
+
+	private int hash(String text, int start, int end) {
+		int h = end - start;
+		for (int i=start;i<end;i++)
+			h = h*seed + text.charAt(i);
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	/**
+	 * This method looks up a mnemonic
+	 * @param text
+	 * @param start the first char of the mnemonic in the text
+	 * @param end the position after the last char of the mnemonic
+	 * @return the command id, a family (see isFamily()) or NOT_FOUND
+	 */
+	public int lookup(String text, int start, int end) {
+		int slot = hash(text, start, end);
+		String key = keys[slot];
+		if ((key == null) || (key.length() != end - start) || !key.regionMatches(0, text, start, end - start))
+			return NOT_FOUND;
+		return values[slot];
+	}
+
+	public int lookup(String mnemonic) {
+		return lookup(mnemonic, 0, mnemonic.length());
+	}
+
+	/**
+	 * @param code a value returned by lookup()
+	 * @return true if the code is a family of commands, not a command
+	 */
+	public static boolean isFamily(int code) {
+		return code < NOT_FOUND;
+	}
+
+	/**
+	 * This method chooses the command of a family by the kinds of its operands
+	 * @param family a value returned by lookup()
+	 * @param first the kind of the first operand
+	 * @param second the kind of the second operand, or NOT_FOUND if there is only one operand
+	 * @return the command id, or NOT_FOUND if the family has no such format
+	 */
+	public int variant(int family, int first, int second) {
+		int index = (second == NOT_FOUND)?9 + first:first*3 + second;
+		return variants[-2-family][index];
+	}
+
+	/**
+	 * This method finds the command of a line whose mnemonic and operands were already tokenized.
+	 * The command of a family is chosen by the kinds of its operands: registers start with %,
+	 * numbers are immediates (or addresses, if there is no immediate format) and names are
+	 * addresses (or immediates, if there is no address format)
+	 * @param code the value returned by lookup() for the mnemonic
+	 * @param line
+	 * @param start the first char of each operand in the line
+	 * @param end the position after the last char of each operand
+	 * @param count the amount of operands
+	 * @return the command id, or NOT_FOUND if the operands do not fit any command
+	 */
+	public int command(int code, String line, int start[], int end[], int count) {
+		int command = code;
+		if (isFamily(code))
+			command = variant(code, line, start, end, count);
+		if (command == NOT_FOUND)
+			return NOT_FOUND;
+		String kinds = operands[command];
+		if (kinds.length() != count)
+			return NOT_FOUND;
+		for (int i=0;i<count;i++) //registers must be prefixed by %, and only registers
+			if ((kinds.charAt(i) == 'R') != (line.charAt(start[i]) == '%'))
+				return NOT_FOUND;
+		return command;
+	}
+
+	private int variant(int family, String line, int start[], int end[], int count) {
+		if ((count < 1) || (count > 2))
+			return NOT_FOUND;
+		for (int a=0;a<2;a++) {
+			int first = operandKind(line, start[0], end[0], a);
+			if (count == 1) {
+				int p = variant(family, first, NOT_FOUND);
+				if (p != NOT_FOUND)
+					return p;
+				continue;
+			}
+			for (int b=0;b<2;b++) {
+				int p = variant(family, first, operandKind(line, start[1], end[1], b));
+				if (p != NOT_FOUND)
+					return p;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * This method returns a kind an operand may have
+	 * @param choice 0 for the most probable kind, 1 for the other one
+	 */
+	private static int operandKind(String line, int start, int end, int choice) {
+		if (line.charAt(start) == '%')
+			return REG;
+		boolean number = Tokenizer.isNumber(line, start, end);
+		if (number == (choice == 0))
+			return IMM;
+		return MEM;
+	}
+
+	/**
+	 * This method returns the kinds of the operands of a command, one char per operand:
+	 * 'R' for registers, 'M' for memory addresses and 'I' for immediates
+	 * @param command
+	 * @return
+	 */
+	public String getOperands(int command) {
+		return operands[command];
+	}
+
+	/**
+	 * This method returns the name of a family
+	 * @param family a value returned by lookup()
+	 * @return
+	 */
+	public String getFamily(int family) {
+		return families.get(-2-family);
+	}
+
+}
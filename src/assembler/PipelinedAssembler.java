@@ -0,0 +1,133 @@
+package assembler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class assembles a source using many threads, in stages connected by bounded queues:
+ *
+ * 1. one thread reads the lines of the source, in batches
+ * 2. a pool of threads tokenizes and classifies the batches, many at the same time
+ * 3. the calling thread collects the symbols and emits the code of each batch, in the order of the source
+ * 4. in the end, the fixups are resolved and the executable is written (see StreamingAssembler)
+ *
+ * The classified batches wait in a queue in the same order they were read, so the symbols
+ * and the code are exactly the ones of StreamingAssembler, and so are the executables.
+ * The queues are bounded, so a slow stage makes the faster ones wait instead of filling the memory.
+ */
+public class PipelinedAssembler extends StreamingAssembler {
+
+	private static final int BATCH_LINES = 4096;
+
+	private int threads;
+
+	/**
+	 * @param memorySize the amount of positions in the memory of the architecture
+	 * @param threads the amount of threads classifying lines
+	 */
+	public PipelinedAssembler(int memorySize, int threads) {
+		super(memorySize);
+		this.threads = Math.max(1, threads);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	@Override
+	protected void parseSource(final BufferedReader source) throws IOException {
+		final ExecutorService classifiers = Executors.newFixedThreadPool(threads);
+		//classified batches, in the order of the source. An empty batch (null) ends the source
+		final BlockingQueue<Future<Batch>> classified = new ArrayBlockingQueue<>(2*threads);
+		final IOException readError[] = new IOException[1];
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					String lines[] = new String[BATCH_LINES];
+					int count = 0;
+					String line;
+					while ((line = source.readLine()) != null) {
+						lines[count++] = line;
+						if (count == BATCH_LINES) {
+							classified.put(classifiers.submit(classifier(lines, count)));
+							lines = new String[BATCH_LINES];
+							count = 0;
+						}
+					}
+					if (count > 0)
+						classified.put(classifiers.submit(classifier(lines, count)));
+				} catch (IOException e) {
+					readError[0] = e;
+				} catch (InterruptedException e) {
+					//the assembling was cancelled
+				} finally {
+					try {
+						classified.put(end());
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+		}, "assembler-reader");
+		reader.setDaemon(true);
+		reader.start();
+		try {
+			for (;;) {
+				Batch batch = classified.take().get();
+				if (batch == null)
+					break;
+				apply(batch);
+			}
+			reader.join();
+			if (readError[0] != null)
+				throw readError[0];
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("The assembling was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A line could not be classified", e.getCause());
+		} finally {
+			reader.interrupt();
+			classifiers.shutdownNow();
+		}
+	}
+
+	/**
+	 * This method builds the task that classifies a batch of lines
+	 */
+	private Callable<Batch> classifier(final String lines[], final int count) {
+		return new Callable<Batch>() {
+			@Override
+			public Batch call() {
+				Batch batch = new Batch();
+				Tokenizer tokenizer = new Tokenizer();
+				for (int i=0;i<count;i++)
+					classify(lines[i], tokenizer, batch);
+				return batch;
+			}
+		};
+	}
+
+	/**
+	 * This method builds the mark of the end of the source
+	 */
+	private static Future<Batch> end() {
+		FutureTask<Batch> end = new FutureTask<>(new Callable<Batch>() {
+			@Override
+			public Batch call() {
+				return null;
+			}
+		});
+		end.run();
+		return end;
+	}
+
+}
@@ -0,0 +1,497 @@
+package assembler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import architecture.Architecture;
+import architecture.BinaryExecutable;
+import architecture.SimulatorEvents;
+import components.Register;
+
+/**
+ * This class assembles very large sources (.dsf) without keeping them in memory.
+ * It accepts the same language of Assembler, and produces the same executables.
+ *
+ * Each line is read, parsed and its machine code is emitted at once, through a buffered channel,
+ * into a binary executable (.dxb) that works as a spool. References to labels and variables
+ * are emitted as zeros, and their positions are kept in a fixup list. In the end, one single
+ * sequential pass over the spool patches the fixups and writes the text executable (.dxf).
+ * So the memory used is bounded by the symbol table and the fixup list, not by the source.
+ */
+public class StreamingAssembler {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private int memorySize; //the variables are placed from the top of this memory
+	private boolean binaryOutput; //if true, the spool is kept as the binary executable
+	private MnemonicTable mnemonics; //only read after being built, so it is shared by all the threads
+	private ArrayList<Register> registers;
+
+	//symbol table: every name used or declared has an id
+	private HashMap<String, Integer> symbols;
+	private ArrayList<String> names;
+	private int symbolAddress[]; //label address or variable address of each symbol, -1 if undeclared
+	private boolean symbolVariable[]; //true if the symbol address is a variable address
+
+	private ArrayList<String> variables; //in the order they were declared, for the variable table
+
+	//fixup list: positions of the code that refer to a symbol
+	private int fixupPosition[];
+	private int fixupSymbol[];
+	private int fixups;
+
+	private int codeSize;
+	private int parseErrors;
+	private FileChannel spool;
+	private ByteBuffer buffer;
+
+	public StreamingAssembler() {
+		this(Architecture.DEFAULT_MEMORY_SIZE);
+	}
+
+	/**
+	 * @param memorySize the amount of positions in the memory of the architecture
+	 */
+	public StreamingAssembler(int memorySize) {
+		this.memorySize = memorySize;
+		Architecture arch = new Architecture();
+		mnemonics = new MnemonicTable(arch.getCommandsList());
+		registers = arch.getRegistersList();
+	}
+
+	public boolean isBinaryOutput() {
+		return binaryOutput;
+	}
+
+	/**
+	 * @param binaryOutput if true, the binary executable (.dxb) is also kept
+	 */
+	public void setBinaryOutput(boolean binaryOutput) {
+		this.binaryOutput = binaryOutput;
+	}
+
+	public int getCodeSize() {
+		return codeSize;
+	}
+
+	/**
+	 * This method returns the amount of references to labels and variables patched in the end
+	 * @return
+	 */
+	public int getFixups() {
+		return fixups;
+	}
+
+	/**
+	 * This method assembles a source into an executable
+	 * @param filename without the .dsf extension. The executable has the same name, with .dxf
+	 * @return false if the source has errors. In this case, no executable is written
+	 * @throws IOException
+	 */
+	public boolean assemble(String filename) throws IOException {
+		try (BufferedReader br = new BufferedReader(new FileReader(filename+".dsf"), BUFFER_SIZE)) {
+			return assemble(br, filename);
+		}
+	}
+
+	/**
+	 * This method assembles a source read line by line from a reader
+	 * @param source
+	 * @param filename the executable name, without extension
+	 * @return false if the source has errors. In this case, no executable is written
+	 * @throws IOException
+	 */
+	public boolean assemble(BufferedReader source, String filename) throws IOException {
+		symbols = new HashMap<>();
+		names = new ArrayList<>();
+		symbolAddress = new int[64];
+		symbolVariable = new boolean[64];
+		variables = new ArrayList<>();
+		fixupPosition = new int[1024];
+		fixupSymbol = new int[1024];
+		fixups = 0;
+		codeSize = 0;
+		parseErrors = 0;
+		Path spoolFile = binaryOutput?Paths.get(filename+".dxb"):Files.createTempFile("spool", ".dxb");
+		boolean done = false;
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(spoolFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			spool = channel;
+			spool.position(BinaryExecutable.HEADER_BYTES); //the header is written in the end
+			long start = SimulatorEvents.begin();
+			parseSource(source);
+			emit(-1); //-1 is a flag indicating that the program is finished
+			flush();
+			SimulatorEvents.assemblyPhase("parse", start);
+			if (parseErrors > 0)
+				return false;
+			start = SimulatorEvents.begin();
+			boolean declared = checkLabels();
+			SimulatorEvents.assemblyPhase("checkLabels", start);
+			if (!declared)
+				return false;
+			start = SimulatorEvents.begin();
+			writeData();
+			patch(filename);
+			SimulatorEvents.assemblyPhase("patch", start);
+			done = true;
+			return true;
+		} finally {
+			spool = null;
+			if (!binaryOutput || !done)
+				Files.deleteIfExists(spoolFile);
+		}
+	}
+
+	/**
+	 * This method reads and parses all the lines of the source, emitting their code.
+	 * Each line is classified into a batch and the batch is applied at once
+	 * @param source
+	 * @throws IOException
+	 */
+	protected void parseSource(BufferedReader source) throws IOException {
+		Batch batch = new Batch();
+		Tokenizer tokenizer = new Tokenizer();
+		String line;
+		while ((line = source.readLine()) != null) {
+			batch.clear();
+			classify(line, tokenizer, batch);
+			apply(batch);
+		}
+	}
+
+	/**
+	 * This class keeps lines already classified, waiting for their symbols to be collected
+	 * and their code to be emitted. Each entry is a label, a variable, a command or an error
+	 */
+	static class Batch {
+		static final byte LABEL = 0;
+		static final byte VARIABLE = 1;
+		static final byte COMMAND = 2;
+		static final byte ERROR = 3;
+
+		int size;
+		byte kinds[] = new byte[64];
+		String texts[] = new String[64]; //the name of labels and variables, or the line with an error
+		int wordsEnd[] = new int[64]; //the words of a command end here
+		int words;
+		int code[] = new int[256];
+		String references[] = new String[256]; //the label or the variable of a word, or null
+		int operandStart[] = new int[3]; //operands of the command being classified
+		int operandEnd[] = new int[3];
+
+		void clear() {
+			Arrays.fill(texts, 0, size, null);
+			Arrays.fill(references, 0, words, null);
+			size = 0;
+			words = 0;
+		}
+
+		void add(byte kind, String text) {
+			if (size == kinds.length) {
+				kinds = Arrays.copyOf(kinds, size*2);
+				texts = Arrays.copyOf(texts, size*2);
+				wordsEnd = Arrays.copyOf(wordsEnd, size*2);
+			}
+			kinds[size] = kind;
+			texts[size] = text;
+			wordsEnd[size] = words;
+			size++;
+		}
+
+		void addWord(int word, String reference) {
+			if (words == code.length) {
+				code = Arrays.copyOf(code, words*2);
+				references = Arrays.copyOf(references, words*2);
+			}
+			code[words] = word;
+			references[words] = reference;
+			words++;
+			wordsEnd[size-1] = words;
+		}
+	}
+
+	/**
+	 * This method classifies one line, putting it into a batch. The language is the same of Assembler.parse().
+	 * Only the tokenizer and the batch are changed, so many lines can be classified at the same time
+	 */
+	void classify(String s, Tokenizer tokenizer, Batch batch) {
+		tokenizer.reset(s);
+		if (!tokenizer.next()) //blank line or comment
+			return;
+		int code = mnemonics.lookup(s, tokenizer.getStart(), tokenizer.getEnd());
+		if (code != MnemonicTable.NOT_FOUND) { //the line is a command
+			classifyCommand(code, tokenizer, batch);
+			return;
+		}
+		if (tokenizer.charAt(tokenizer.length()-1) == ':') { //if it ends with : it is a label
+			batch.add(Batch.LABEL, s.substring(tokenizer.getStart(), tokenizer.getEnd()-1));
+			if (tokenizer.next()) { //a command may follow the label in the same line
+				code = mnemonics.lookup(s, tokenizer.getStart(), tokenizer.getEnd());
+				if (code != MnemonicTable.NOT_FOUND)
+					classifyCommand(code, tokenizer, batch);
+				else
+					batch.add(Batch.ERROR, s);
+			}
+		}
+		else //otherwise, it must be a variable
+			batch.add(Batch.VARIABLE, tokenizer.getText());
+	}
+
+	/**
+	 * This method classifies the command in the tokenizer, whose mnemonic was already read
+	 */
+	private void classifyCommand(int code, Tokenizer tokenizer, Batch batch) {
+		String line = tokenizer.getLine();
+		int start[] = batch.operandStart;
+		int end[] = batch.operandEnd;
+		int count = 0;
+		while (tokenizer.next()) {
+			if (count == start.length) {
+				batch.add(Batch.ERROR, line);
+				return;
+			}
+			start[count] = tokenizer.getStart();
+			end[count] = tokenizer.getEnd();
+			count++;
+		}
+		int commandNumber = mnemonics.command(code, line, start, end, count);
+		if (commandNumber == MnemonicTable.NOT_FOUND) {
+			batch.add(Batch.ERROR, line);
+			return;
+		}
+		for (int i=0;i<count;i++) //numbers must fit into a word
+			if (Tokenizer.isNumber(line, start[i], end[i]) && !Tokenizer.isWord(line, start[i], end[i])) {
+				batch.add(Batch.ERROR, line);
+				return;
+			}
+		batch.add(Batch.COMMAND, null);
+		batch.addWord(commandNumber, null);
+		for (int i=0;i<count;i++) {
+			if (line.charAt(start[i]) == '%') //registers are replaced by their ids
+				batch.addWord(registerId(line, start[i] + 1, end[i]), null);
+			else if (Tokenizer.isNumber(line, start[i], end[i]))
+				batch.addWord((int) Tokenizer.value(line, start[i], end[i]), null);
+			else { //a label or a variable, patched in the end
+				int nameStart = (line.charAt(start[i]) == '&')?start[i]+1:start[i];
+				batch.addWord(0, line.substring(nameStart, end[i]));
+			}
+		}
+	}
+
+	/**
+	 * This method collects the symbols of a batch and emits its code, in the order of the source.
+	 * Batches must be applied one by one, in the same order of their lines
+	 */
+	void apply(Batch batch) throws IOException {
+		int word = 0;
+		for (int e=0;e<batch.size;e++) {
+			String text = batch.texts[e];
+			switch (batch.kinds[e]) {
+			case Batch.LABEL:
+				int label = symbol(text);
+				if ((symbolAddress[label] < 0) && !symbolVariable[label]) //a label declared twice keeps its first address
+					symbolAddress[label] = codeSize;
+				break;
+			case Batch.VARIABLE:
+				int var = symbol(text);
+				if (!symbolVariable[var]) { //a variable declared twice keeps its first address
+					symbolVariable[var] = true; //a name used both as a variable and as a label refers to the variable
+					symbolAddress[var] = memorySize - 1 - variables.size();
+				}
+				variables.add(text);
+				break;
+			case Batch.ERROR:
+				parseError(text);
+				break;
+			default: //a command
+				for (;word<batch.wordsEnd[e];word++) {
+					if (batch.references[word] != null)
+						addFixup(symbol(batch.references[word]));
+					emit(batch.code[word]);
+				}
+			}
+		}
+	}
+
+	private void parseError(String line) {
+		System.out.println("FATAL ERROR! Invalid line: "+line.trim());
+		parseErrors++;
+	}
+
+	/**
+	 * This method searches for a register in the architecture register list
+	 * @return the register id, or -1 if it does not exist
+	 */
+	private int registerId(String line, int start, int end) {
+		for (int i=0;i<registers.size();i++) {
+			String name = registers.get(i).getRegisterName();
+			if ((name.length() == end - start) && name.regionMatches(0, line, start, end - start))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * This method returns the id of a symbol, adding it into the symbol table if it is new
+	 */
+	private int symbol(String name) {
+		Integer id = symbols.get(name);
+		if (id != null)
+			return id;
+		int symbol = names.size();
+		names.add(name);
+		symbols.put(name, symbol);
+		if (symbol == symbolAddress.length) {
+			symbolAddress = Arrays.copyOf(symbolAddress, symbol*2);
+			symbolVariable = Arrays.copyOf(symbolVariable, symbol*2);
+		}
+		symbolAddress[symbol] = -1;
+		return symbol;
+	}
+
+	private void addFixup(int symbol) {
+		if (fixups == fixupPosition.length) {
+			fixupPosition = Arrays.copyOf(fixupPosition, fixups*2);
+			fixupSymbol = Arrays.copyOf(fixupSymbol, fixups*2);
+		}
+		fixupPosition[fixups] = codeSize;
+		fixupSymbol[fixups] = symbol;
+		fixups++;
+	}
+
+	/**
+	 * This method writes a word of code into the spool
+	 */
+	private void emit(int word) throws IOException {
+		if (!buffer.hasRemaining())
+			flush();
+		buffer.putInt(word);
+		codeSize++;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			spool.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * This method checks if all labels and variables used were declared
+	 */
+	private boolean checkLabels() {
+		for (int f=0;f<fixups;f++)
+			if (symbolAddress[fixupSymbol[f]] < 0) {
+				System.out.println("FATAL ERROR! Variable or label "+names.get(fixupSymbol[f])+" not declared!");
+				return false;
+			}
+		return true;
+	}
+
+	/**
+	 * This method writes the data section (one position for each variable), the variable table
+	 * and the header of the binary executable
+	 */
+	private void writeData() throws IOException {
+		int dataAddress = memorySize - variables.size(); //the variables are in the top of the memory
+		for (int i=0;i<variables.size();i++) {
+			if (!buffer.hasRemaining())
+				flush();
+			buffer.putInt(0);
+		}
+		flush();
+		int position = memorySize-1;
+		for (String var : variables) {
+			ByteBuffer entry = BinaryExecutable.variable(var, position);
+			while (entry.hasRemaining())
+				spool.write(entry);
+			position--;
+		}
+		ByteBuffer header = BinaryExecutable.header(0, codeSize, dataAddress, variables.size(), variables.size());
+		while (header.hasRemaining())
+			spool.write(header, header.position());
+	}
+
+	/**
+	 * This method reads the code back from the spool, patching the fixups, and writes
+	 * the text executable, in one single sequential pass
+	 */
+	private void patch(String filename) throws IOException {
+		ByteBuffer text = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		byte digits[] = new byte[12];
+		int f = 0;
+		try (FileChannel output = FileChannel.open(new File(filename+".dxf").toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long offset = BinaryExecutable.HEADER_BYTES;
+			for (int chunkStart=0;chunkStart<codeSize;chunkStart+=BUFFER_SIZE/4) {
+				int words = Math.min(BUFFER_SIZE/4, codeSize - chunkStart);
+				buffer.clear();
+				buffer.limit(words*4);
+				while (buffer.hasRemaining())
+					if (spool.read(buffer, offset + buffer.position()) < 0)
+						throw new IOException("The spool is shorter than the code");
+				boolean patched = false;
+				while ((f < fixups) && (fixupPosition[f] < chunkStart + words)) {
+					buffer.putInt((fixupPosition[f] - chunkStart)*4, symbolAddress[fixupSymbol[f]]);
+					patched = true;
+					f++;
+				}
+				if (patched && binaryOutput) {
+					buffer.position(0);
+					while (buffer.hasRemaining())
+						spool.write(buffer, offset + buffer.position());
+				}
+				for (int i=0;i<words;i++) {
+					if (text.remaining() < digits.length + 1) {
+						text.flip();
+						while (text.hasRemaining())
+							output.write(text);
+						text.clear();
+					}
+					int length = format(buffer.getInt(i*4), digits);
+					text.put(digits, digits.length - length, length);
+					if (chunkStart + i < codeSize - 1) //the last word (-1) has no line break
+						text.put((byte) '\n');
+				}
+				offset += words*4;
+			}
+			text.flip();
+			while (text.hasRemaining())
+				output.write(text);
+		}
+	}
+
+	/**
+	 * This method writes the decimal digits of a word in the end of an array
+	 * @return the amount of chars written
+	 */
+	private static int format(int word, byte digits[]) {
+		long value = word;
+		boolean negative = value < 0;
+		if (negative)
+			value = -value;
+		int p = digits.length;
+		do {
+			digits[--p] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value > 0);
+		if (negative)
+			digits[--p] = '-';
+		return digits.length - p;
+	}
+
+}
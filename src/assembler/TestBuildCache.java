@@ -0,0 +1,131 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class TestBuildCache {
+
+	private File directory() throws IOException {
+		return Files.createTempDirectory("cache").toFile();
+	}
+
+	/**
+	 * This method deletes a cache directory with everything in it
+	 * (deleteOnExit() does not delete directories that are not empty)
+	 */
+	private void delete(File file) {
+		File files[] = file.listFiles();
+		if (files != null) {
+			for (File child : files)
+				delete(child);
+		}
+		file.delete();
+	}
+
+	/**
+	 * This method writes an executable (its content does not matter to the cache)
+	 * @return the filename, without extension
+	 */
+	private String executable(String content, boolean binary) throws IOException {
+		File file = File.createTempFile("cached", ".dxf");
+		file.deleteOnExit();
+		String name = file.getPath();
+		name = name.substring(0, name.length()-4);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		if (binary) {
+			File bin = new File(name+".dxb");
+			bin.deleteOnExit();
+			Files.write(bin.toPath(), (content+" binary").getBytes(StandardCharsets.UTF_8));
+		}
+		return name;
+	}
+
+	private String target() throws IOException {
+		File file = File.createTempFile("target", ".dxf");
+		file.delete();
+		String name = file.getPath();
+		name = name.substring(0, name.length()-4);
+		new File(name+".dxf").deleteOnExit();
+		new File(name+".dxb").deleteOnExit();
+		return name;
+	}
+
+	@Test
+	public void testKey() {
+		byte source[] = "a\nmove 1 %REG0\n".getBytes(StandardCharsets.UTF_8);
+		String key = BuildCache.key(source, 128, false);
+		assertEquals(64, key.length());
+		assertEquals(key, BuildCache.key(source.clone(), 128, false));
+		assertFalse(key.equals(BuildCache.key("a\nmove 2 %REG0\n".getBytes(StandardCharsets.UTF_8), 128, false)));
+		assertFalse(key.equals(BuildCache.key(source, 256, false)));
+		assertFalse(key.equals(BuildCache.key(source, 128, true)));
+	}
+
+	@Test
+	public void testFetchStore() throws IOException {
+		File directory = directory();
+		try {
+			BuildCache cache = new BuildCache(new File(directory, "entries"), BuildCache.DEFAULT_MAX_BYTES);
+			String key = BuildCache.key(new byte[] {1, 2, 3}, 128, true);
+			String target = target();
+			assertFalse(cache.fetch(key, target, true));
+			assertFalse(new File(target+".dxf").exists());
+			assertEquals(1, cache.getMisses());
+
+			String assembled = executable("15\n3\n-1", true);
+			cache.store(key, assembled, true);
+			assertTrue(cache.fetch(key, target, true));
+			assertEquals(1, cache.getHits());
+			assertArrayEquals(Files.readAllBytes(new File(assembled+".dxf").toPath()), Files.readAllBytes(new File(target+".dxf").toPath()));
+			assertArrayEquals(Files.readAllBytes(new File(assembled+".dxb").toPath()), Files.readAllBytes(new File(target+".dxb").toPath()));
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testTextOnlyEntry() throws IOException {
+		//an entry stored without the binary executable can not serve a binary build
+		File directory = directory();
+		try {
+			BuildCache cache = new BuildCache(directory, BuildCache.DEFAULT_MAX_BYTES);
+			String key = BuildCache.key(new byte[] {4}, 128, false);
+			cache.store(key, executable("-1", false), false);
+			assertFalse(cache.fetch(key, target(), true));
+			assertTrue(cache.fetch(key, target(), false));
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		File directory = directory();
+		try {
+			BuildCache cache = new BuildCache(directory, 250);
+			String content = new String(new char[100]).replace('\0', '7');
+			String first = BuildCache.key(new byte[] {1}, 128, false);
+			String second = BuildCache.key(new byte[] {2}, 128, false);
+			String third = BuildCache.key(new byte[] {3}, 128, false);
+			cache.store(first, executable(content, false), false);
+			new File(directory, first+".dxf").setLastModified(System.currentTimeMillis() - 20000);
+			cache.store(second, executable(content, false), false);
+			new File(directory, second+".dxf").setLastModified(System.currentTimeMillis() - 10000);
+			assertTrue(cache.fetch(first, target(), false)); //now the second one is the least recently used
+			cache.store(third, executable(content, false), false);
+
+			assertTrue(new File(directory, first+".dxf").exists());
+			assertFalse(new File(directory, second+".dxf").exists());
+			assertTrue(new File(directory, third+".dxf").exists());
+		} finally {
+			delete(directory);
+		}
+	}
+
+}
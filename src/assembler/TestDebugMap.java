@@ -0,0 +1,76 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TestDebugMap {
+
+	@Test
+	public void testAssemblerMap() throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add("; counts up to zero");
+		lines.add("x");
+		lines.add("\tmove -3 %REG0");
+		lines.add("");
+		lines.add("laco:");
+		lines.add("\tinc %REG0");
+		lines.add("\tjn laco");
+		lines.add("fim: move %REG0 x");
+		Assembler assembler = new Assembler();
+		assembler.setDebugOutput(true);
+		assembler.setLines(lines);
+		assembler.parse();
+		DebugMap map = assembler.getDebugMap();
+		assertEquals(4, map.size());
+		assertEquals(0, map.getAddress(0));
+		assertEquals(3, map.getLine(0));
+		assertEquals(DebugMap.NO_LABEL, map.getLabel(0));
+		assertEquals(3, map.getAddress(1));
+		assertEquals(6, map.getLine(1));
+		assertEquals("laco", map.getLabel(1));
+		assertEquals("jn laco", map.getSource(2));
+		assertEquals("laco", map.getLabel(2));
+		assertEquals(7, map.getAddress(3));
+		assertEquals("fim", map.getLabel(3));
+
+		File file = File.createTempFile("debug", ".dxf");
+		file.deleteOnExit();
+		String filename = file.getPath().substring(0, file.getPath().length()-4);
+		new File(filename+".dmap").deleteOnExit();
+		assertTrue(assembler.makeExecutable(filename));
+		DebugMap read = DebugMap.read(filename+".dmap");
+		assertEquals(map.size(), read.size());
+		for (int i=0;i<map.size();i++) {
+			assertEquals(map.getAddress(i), read.getAddress(i));
+			assertEquals(map.getLine(i), read.getLine(i));
+			assertEquals(map.getLabel(i), read.getLabel(i));
+			assertEquals(map.getSource(i), read.getSource(i));
+		}
+	}
+
+	@Test
+	public void testFind() {
+		DebugMap map = new DebugMap();
+		map.add(0, 1, null, "move 1 %REG0");
+		map.add(3, 2, "a", "inc %REG0");
+		map.add(5, 3, "a", "jmp a");
+		assertEquals(0, map.find(0));
+		assertEquals(1, map.find(3));
+		assertEquals(2, map.find(5));
+		assertEquals(-1, map.find(4)); //an operand
+		assertEquals(-1, map.find(7));
+	}
+
+	@Test
+	public void testNoMap() {
+		Assembler assembler = new Assembler();
+		assertFalse(assembler.isDebugOutput());
+		assertNull(assembler.getDebugMap());
+	}
+
+}
@@ -0,0 +1,53 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import architecture.Architecture;
+
+public class TestMnemonicTable {
+
+	@Test
+	public void testLookup() {
+		ArrayList<String> commands = new Architecture().getCommandsList();
+		MnemonicTable table = new MnemonicTable(commands);
+		//all the commands are found by their names
+		for (int i=0;i<commands.size();i++) {
+			assertEquals(i, table.lookup(commands.get(i)));
+			assertFalse(MnemonicTable.isFamily(table.lookup(commands.get(i))));
+		}
+		assertEquals("RR", table.getOperands(commands.indexOf("addRegReg")));
+		assertEquals("IR", table.getOperands(commands.indexOf("moveImmReg")));
+		assertEquals("R", table.getOperands(commands.indexOf("incReg")));
+		assertEquals("M", table.getOperands(commands.indexOf("jmp")));
+		assertEquals("RRM", table.getOperands(commands.indexOf("jeq")));
+		//mnemonics inside a line
+		assertEquals(commands.indexOf("jz"), table.lookup("  jz loop", 2, 4));
+		assertEquals(MnemonicTable.NOT_FOUND, table.lookup("jzz"));
+		assertEquals(MnemonicTable.NOT_FOUND, table.lookup("loop:"));
+		assertEquals(MnemonicTable.NOT_FOUND, table.lookup(""));
+	}
+
+	@Test
+	public void testFamilies() {
+		ArrayList<String> commands = new Architecture().getCommandsList();
+		MnemonicTable table = new MnemonicTable(commands);
+		int add = table.lookup("add");
+		assertTrue(MnemonicTable.isFamily(add));
+		assertEquals("add", table.getFamily(add));
+		assertEquals(commands.indexOf("addRegReg"), table.variant(add, MnemonicTable.REG, MnemonicTable.REG));
+		assertEquals(commands.indexOf("addMemReg"), table.variant(add, MnemonicTable.MEM, MnemonicTable.REG));
+		assertEquals(commands.indexOf("addRegMem"), table.variant(add, MnemonicTable.REG, MnemonicTable.MEM));
+		assertEquals(commands.indexOf("addImmReg"), table.variant(add, MnemonicTable.IMM, MnemonicTable.REG));
+		int imul = table.lookup("imul");
+		assertEquals(MnemonicTable.NOT_FOUND, table.variant(imul, MnemonicTable.IMM, MnemonicTable.REG));
+		int inc = table.lookup("inc");
+		assertEquals(commands.indexOf("incReg"), table.variant(inc, MnemonicTable.REG, MnemonicTable.NOT_FOUND));
+		assertTrue(MnemonicTable.isFamily(table.lookup("move")));
+		assertTrue(MnemonicTable.isFamily(table.lookup("sub")));
+	}
+
+}
@@ -0,0 +1,74 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class TestPipelinedAssembler {
+
+	/**
+	 * This method returns a temporary filename, without extension
+	 */
+	private String tempName() throws IOException {
+		File file = File.createTempFile("pipeline", ".dsf");
+		file.deleteOnExit();
+		String name = file.getPath();
+		name = name.substring(0, name.length()-4);
+		new File(name+".dxf").deleteOnExit();
+		new File(name+".dxb").deleteOnExit();
+		return name;
+	}
+
+	/**
+	 * This method builds a source with many batches of lines, with references to labels
+	 * declared before and after them
+	 */
+	private String source(int blocks) {
+		StringBuilder source = new StringBuilder();
+		for (int i=0;i<100;i++)
+			source.append("v").append(i).append("\n");
+		for (int i=0;i<blocks;i++) {
+			source.append("l").append(i).append(":\tmove v").append(i%100).append(" %REG1 ; load\n");
+			source.append("  add   ").append(i).append(" %REG1\n");
+			source.append("\tsub %REG1 v").append((i*7)%100).append("\n");
+			source.append("jz l").append(blocks-1-i).append("\n");
+			source.append("jlw %REG0 %REG2 l").append(i/2).append("\n");
+		}
+		source.append("inc %REG3\n");
+		return source.toString();
+	}
+
+	@Test
+	public void testSameExecutable() throws IOException {
+		String text = source(5000); //25 thousand lines, many batches
+		String sequential = tempName();
+		StreamingAssembler streaming = new StreamingAssembler(1000000);
+		streaming.setBinaryOutput(true);
+		assertTrue(streaming.assemble(new BufferedReader(new StringReader(text)), sequential));
+		for (int threads : new int[] {1, 4}) {
+			String pipelined = tempName();
+			PipelinedAssembler pipeline = new PipelinedAssembler(1000000, threads);
+			pipeline.setBinaryOutput(true);
+			assertTrue(pipeline.assemble(new BufferedReader(new StringReader(text)), pipelined));
+			assertEquals(streaming.getCodeSize(), pipeline.getCodeSize());
+			assertEquals(streaming.getFixups(), pipeline.getFixups());
+			assertArrayEquals(Files.readAllBytes(new File(sequential+".dxf").toPath()), Files.readAllBytes(new File(pipelined+".dxf").toPath()));
+			assertArrayEquals(Files.readAllBytes(new File(sequential+".dxb").toPath()), Files.readAllBytes(new File(pipelined+".dxb").toPath()));
+		}
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		String text = source(2000) + "move %REG0\n";
+		String filename = tempName();
+		assertFalse(new PipelinedAssembler(1000000, 4).assemble(new BufferedReader(new StringReader(text)), filename));
+		assertFalse(new File(filename+".dxf").exists());
+	}
+
+}
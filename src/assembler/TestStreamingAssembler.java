@@ -0,0 +1,123 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestStreamingAssembler {
+
+	/**
+	 * This method writes a source into a temporary file
+	 * @return the filename, without the .dsf extension
+	 */
+	private String writeSource(ArrayList<String> lines) throws IOException {
+		File file = File.createTempFile("stream", ".dsf");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		for (String line : lines)
+			writer.write(line+"\n");
+		writer.close();
+		String name = file.getPath();
+		name = name.substring(0, name.length()-4);
+		new File(name+".dxf").deleteOnExit();
+		new File(name+".dxb").deleteOnExit();
+		return name;
+	}
+
+	private ArrayList<String> source(int blocks) {
+		ArrayList<String> lines = new ArrayList<>();
+		for (int i=0;i<blocks;i++)
+			lines.add("v"+i+"\t; variable "+i);
+		lines.add("  move   -3\t%REG0");
+		for (int i=0;i<blocks;i++) {
+			lines.add("l"+i+":\tmove v"+i+" %REG1");
+			lines.add("add 5 %REG1 # immediate");
+			lines.add("move %REG1 v"+(blocks-1-i));
+			lines.add("jeq %REG0 %REG1 l"+(blocks-1-i)); //forward references
+			lines.add("");
+		}
+		lines.add("inc %REG0");
+		lines.add("jn l0");
+		return lines;
+	}
+
+	@Test
+	public void testSameExecutable() throws IOException {
+		ArrayList<String> lines = source(300);
+		String streamed = writeSource(lines);
+		String assembled = writeSource(lines);
+		StreamingAssembler streaming = new StreamingAssembler(1000);
+		streaming.setBinaryOutput(true);
+		assertTrue(streaming.assemble(streamed));
+		assertEquals(3*300+1, streaming.getFixups());
+		Assembler assembler = new Assembler(1000);
+		assembler.setBinaryOutput(true);
+		assembler.read(assembled);
+		assembler.parse();
+		assembler.makeExecutable(assembled);
+		assertArrayEquals(Files.readAllBytes(new File(assembled+".dxf").toPath()), Files.readAllBytes(new File(streamed+".dxf").toPath()));
+		assertArrayEquals(Files.readAllBytes(new File(assembled+".dxb").toPath()), Files.readAllBytes(new File(streamed+".dxb").toPath()));
+		assertEquals(assembler.getExecProgram().size()+1, streaming.getCodeSize());
+	}
+
+	/**
+	 * This method assembles a source with Assembler
+	 * @return the result of makeExecutable()
+	 */
+	private boolean assemble(String filename) throws IOException {
+		Assembler assembler = new Assembler();
+		assembler.read(filename);
+		assembler.parse();
+		return assembler.makeExecutable(filename);
+	}
+
+	@Test
+	public void testSameLiterals() throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add("move 007 %REG0");
+		lines.add("move -0 %REG1");
+		lines.add("move 000000000005 %REG2");
+		lines.add("add -2147483648 %REG3");
+		String streamed = writeSource(lines);
+		String assembled = writeSource(lines);
+		assertTrue(new StreamingAssembler().assemble(streamed));
+		assertTrue(assemble(assembled));
+		List<String> words = Files.readAllLines(new File(assembled+".dxf").toPath());
+		assertEquals(Arrays.asList("14", "7", "0", "14", "0", "1", "14", "5", "2", "3", "-2147483648", "3", "-1"), words);
+		assertEquals(words, Files.readAllLines(new File(streamed+".dxf").toPath()));
+		//numbers that do not fit into a word are errors in both
+		lines.add("move 2147483648 %REG0");
+		streamed = writeSource(lines);
+		assembled = writeSource(lines);
+		assertFalse(new StreamingAssembler().assemble(streamed));
+		assertFalse(assemble(assembled));
+		assertFalse(new File(assembled+".dxf").exists());
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add("x");
+		lines.add("move x %REG0");
+		lines.add("jmp undeclared");
+		String filename = writeSource(lines);
+		StreamingAssembler streaming = new StreamingAssembler();
+		streaming.setBinaryOutput(true);
+		assertFalse(streaming.assemble(filename));
+		assertFalse(new File(filename+".dxf").exists());
+		assertFalse(new File(filename+".dxb").exists());
+		lines.set(2, "move 99999999999 %REG0");
+		filename = writeSource(lines);
+		assertFalse(streaming.assemble(filename));
+		assertFalse(new File(filename+".dxf").exists());
+	}
+
+}
@@ -0,0 +1,42 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestTokenizer {
+
+	@Test
+	public void testTokens() {
+		Tokenizer tokenizer = new Tokenizer();
+		tokenizer.reset("  move\t\t%REG0   -15 ; the comment is ignored");
+		assertTrue(tokenizer.next());
+		assertEquals("move", tokenizer.getText());
+		assertFalse(tokenizer.isNumber());
+		assertTrue(tokenizer.next());
+		assertEquals("%REG0", tokenizer.getText());
+		assertEquals('%', tokenizer.charAt(0));
+		assertTrue(tokenizer.next());
+		assertEquals("-15", tokenizer.getText());
+		assertEquals(3, tokenizer.length());
+		assertTrue(tokenizer.isNumber());
+		assertFalse(tokenizer.next());
+		assertFalse(tokenizer.next());
+		//comments without spaces before them
+		tokenizer.reset("loop:#comment");
+		assertTrue(tokenizer.next());
+		assertEquals("loop:", tokenizer.getText());
+		assertFalse(tokenizer.next());
+		//blank lines and lines with comments only
+		tokenizer.reset(" \t ");
+		assertFalse(tokenizer.next());
+		tokenizer.reset("; comment");
+		assertFalse(tokenizer.next());
+		tokenizer.reset("");
+		assertFalse(tokenizer.next());
+		tokenizer.reset("-");
+		assertTrue(tokenizer.next());
+		assertFalse(tokenizer.isNumber());
+	}
+
+}
@@ -0,0 +1,145 @@
+package assembler;
+
+/**
+ * This class splits a line of assembly into tokens without building arrays or strings:
+ * each token is only a range (start, end) of the line, and a String is built only
+ * when the assembler really needs to keep the token (see getText()).
+ *
+ * Tokens are separated by any amount of spaces or tabs. A comment starts with ';' or '#'
+ * and goes until the end of the line.
+ */
+public class Tokenizer {
+
+	private String line;
+	private int position; //where the search for the next token starts
+	private int start; //first char of the current token
+	private int end; //position after the last char of the current token
+
+	/**
+	 * This method starts the tokenizing of a new line
+	 * @param line
+	 */
+	public void reset(String line) {
+		this.line = line;
+		position = 0;
+		start = 0;
+		end = 0;
+	}
+
+	/**
+	 * This method moves to the next token of the line
+	 * @return false if there are no more tokens (the line or a comment was reached)
+	 */
+	public boolean next() {
+		int length = line.length();
+		while ((position < length) && isSpace(line.charAt(position)))
+			position++;
+		if ((position == length) || isComment(line.charAt(position))) {
+			position = length;
+			start = length;
+			end = length;
+			return false;
+		}
+		start = position;
+		while ((position < length) && !isSpace(line.charAt(position)) && !isComment(line.charAt(position)))
+			position++;
+		end = position;
+		return true;
+	}
+
+	private static boolean isSpace(char c) {
+		return (c == ' ') || (c == '\t') || (c == '\r') || (c == '\n') || (c == '\f');
+	}
+
+	private static boolean isComment(char c) {
+		return (c == ';') || (c == '#');
+	}
+
+	public String getLine() {
+		return line;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public int length() {
+		return end - start;
+	}
+
+	/**
+	 * This method returns a char of the current token
+	 * @param i the position inside the token
+	 * @return
+	 */
+	public char charAt(int i) {
+		return line.charAt(start + i);
+	}
+
+	/**
+	 * This method builds a String with the current token
+	 * @return
+	 */
+	public String getText() {
+		return line.substring(start, end);
+	}
+
+	/**
+	 * This method returns true if the current token is an integer (digits, after an optional '-')
+	 * @return
+	 */
+	public boolean isNumber() {
+		return isNumber(line, start, end);
+	}
+
+	/**
+	 * This method returns the value of a range of the text that is an integer (see isNumber()).
+	 * Leading zeros are ignored, and values with more than 11 other digits are returned as
+	 * Long.MAX_VALUE, so they are never taken as ints
+	 */
+	static long value(String text, int start, int end) {
+		boolean negative = text.charAt(start) == '-';
+		if (negative)
+			start++;
+		while ((start < end - 1) && (text.charAt(start) == '0'))
+			start++;
+		if (end - start > 11)
+			return Long.MAX_VALUE;
+		long value = 0;
+		for (int i=start;i<end;i++)
+			value = value*10 + (text.charAt(i) - '0');
+		return negative?-value:value;
+	}
+
+	/**
+	 * This method returns true if the range of the text is an integer (digits, after an optional '-')
+	 */
+	static boolean isNumber(String text, int start, int end) {
+		if ((start < end) && (text.charAt(start) == '-'))
+			start++;
+		if (start == end)
+			return false;
+		for (int i=start;i<end;i++) {
+			char c = text.charAt(i);
+			if ((c < '0') || (c > '9'))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This method returns true if the range of the text is an integer that fits into a word.
+	 * Both assemblers accept only these numbers, and emit them as (int) value(), so 007 becomes 7 and -0 becomes 0
+	 */
+	static boolean isWord(String text, int start, int end) {
+		if (!isNumber(text, start, end))
+			return false;
+		long value = value(text, start, end);
+		return (value >= Integer.MIN_VALUE) && (value <= Integer.MAX_VALUE);
+	}
+
+}
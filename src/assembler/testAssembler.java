@@ -2,207 +2,157 @@ package assembler;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import org.junit.Test;
 
+import architecture.Architecture;
+
 public class testAssembler {
 
+	/**
+	 * This method processes one command in a new assembler
+	 * @return the object program of the command
+	 */
+	private ArrayList<String> proccess(String... commandLine) {
+		Assembler ass = new Assembler();
+		ass.proccessCommand(commandLine);
+		return ass.getObjProgram();
+	}
+
 	@Test
 	public void testProccessCommand() {
 		
 		/*
 		 *  we must to test if the assembler generates correct sequence lines
-		 *  of object program for all of these commands
-				Code	Command		arg
-				0		add 		addr (rpg0 <- rpg0 + addr)
-				1		sub 		addr (rpg0 <- rpg0 - addr)
-				2		jmp 		addr (pc <- addr)
-				3		jz 			addr  (se bitZero pc <- addr)
-				4		jn 			addr  (se bitneg pc <- addr)
-				5		read 		addr (rrpg0pg <- addr)
-				6		store 		addr  (addr <- rpg0)
-				7		ldi 		x (rpg0 <- x. x must be an integer)
-				8		inc    		(rpg0++)
-				9       move        %regA %regB (regA <- regB)
+		 *  of object program for all of these commands (see Architecture.fillCommandsList())
+				Code	Command		args
+				0-3		add 		%regA %regB | addr %regB | %regA addr | imm %regB
+				4-7		sub 		%regA %regB | addr %regB | %regA addr | imm %regB
+				11-14	move 		addr %regB | %regA addr | %regA %regB | imm %regB
+				15		inc    		%regA
+				16		jmp 		addr (pc <- addr)
+				17		jn 			addr (se bitneg pc <- addr)
+				18		jz 			addr (se bitZero pc <- addr)
+		 * the variant of add, sub and move is chosen by the kinds of the operands
 		 */
-		Assembler ass = new Assembler();
-		String commandLine[] = new String[3];
-		ArrayList<String> returnedObj = new ArrayList<>();
+		ArrayList<String> returnedObj;
 		
 		//first test: add
-		commandLine[0] = "add";
-		commandLine[1] = "variable";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("0", returnedObj.get(0)); //the add code is 0
-		assertEquals("&variable", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the address
+		returnedObj = proccess("add", "%REG0", "%REG1");
+		assertEquals("[0, %REG0, %REG1]", returnedObj.toString()); //addRegReg
+		returnedObj = proccess("add", "variable", "%REG1");
+		assertEquals("[1, &variable, %REG1]", returnedObj.toString()); //addMemReg
+		returnedObj = proccess("add", "%REG0", "variable");
+		assertEquals("[2, %REG0, &variable]", returnedObj.toString()); //addRegMem
+		returnedObj = proccess("add", "5", "%REG1");
+		assertEquals("[3, 5, %REG1]", returnedObj.toString()); //addImmReg
 		
 		//second test: sub
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "sub";
-		commandLine[1] = "variable";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("1", returnedObj.get(0)); //the add code is 0
-		assertEquals("&variable", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the address
-		
-		//third test: jmp
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "jmp";
-		commandLine[1] = "label";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("2", returnedObj.get(0)); //the add code is 0
-		assertEquals("&label", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the address
-		
-		//fourth test: jz
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "jz";
-		commandLine[1] = "label";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("3", returnedObj.get(0)); //the add code is 0
-		assertEquals("&label", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the address
-		
-		//fifth test: jn
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "jn";
-		commandLine[1] = "label";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("4", returnedObj.get(0)); //the add code is 0
-		assertEquals("&label", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the address
-		
-		//sixth test: read
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "read";
-		commandLine[1] = "address";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("5", returnedObj.get(0)); //the add code is 0
-		assertEquals("&address", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the address
-		
-		//seventh test: store
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "store";
-		commandLine[1] = "address";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("6", returnedObj.get(0)); //the add code is 0
-		assertEquals("&address", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the address
-		
-		//eighth test: ldi
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "ldi";
-		commandLine[1] = "40";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("7", returnedObj.get(0)); //the add code is 0
-		assertEquals("40", ass.getObjProgram().get(1));
-		assertEquals(2, ass.getObjProgram().size()); //only two lines: the command and the immediate
-		
-		//nineth test: inc
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "inc";
-		commandLine[1] = "address";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("8", returnedObj.get(0)); //the add code is 0
-		assertEquals(1, ass.getObjProgram().size()); //only one lines: the command and no parameters
-		
-		//tenth test: move %regA %regB
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
-		commandLine[0] = "move";
-		commandLine[1] = "%RPG0";
-		commandLine[2] = "%RPG1";
-		ass.proccessCommand(commandLine);
-		returnedObj = ass.getObjProgram();
-		assertEquals("9", returnedObj.get(0)); //the move %regA %regB code is 9
-		assertEquals("%RPG0", ass.getObjProgram().get(1));
-		assertEquals("%RPG1", ass.getObjProgram().get(2));
-		assertEquals(3, ass.getObjProgram().size()); //only two lines: the command and the address
+		returnedObj = proccess("sub", "%REG2", "%REG3");
+		assertEquals("[4, %REG2, %REG3]", returnedObj.toString()); //subRegReg
+		returnedObj = proccess("sub", "variable", "%REG0");
+		assertEquals("[5, &variable, %REG0]", returnedObj.toString()); //subMemReg
+		returnedObj = proccess("sub", "%REG0", "variable");
+		assertEquals("[6, %REG0, &variable]", returnedObj.toString()); //subRegMem
+		returnedObj = proccess("sub", "-7", "%REG0");
+		assertEquals("[7, -7, %REG0]", returnedObj.toString()); //subImmReg
+		
+		//third test: move
+		returnedObj = proccess("move", "address", "%REG0");
+		assertEquals("[11, &address, %REG0]", returnedObj.toString()); //moveMemReg
+		returnedObj = proccess("move", "%REG0", "address");
+		assertEquals("[12, %REG0, &address]", returnedObj.toString()); //moveRegMem
+		returnedObj = proccess("move", "%REG0", "%REG1");
+		assertEquals("[13, %REG0, %REG1]", returnedObj.toString()); //moveRegReg
+		returnedObj = proccess("move", "40", "%REG0");
+		assertEquals("[14, 40, %REG0]", returnedObj.toString()); //moveImmReg
+		
+		//fourth test: inc
+		returnedObj = proccess("inc", "%REG0");
+		assertEquals("[15, %REG0]", returnedObj.toString()); //only two lines: the command and the register
+		
+		//fifth test: jumps
+		returnedObj = proccess("jmp", "label");
+		assertEquals("[16, &label]", returnedObj.toString()); //only two lines: the command and the address
+		returnedObj = proccess("jn", "label");
+		assertEquals("[17, &label]", returnedObj.toString());
+		returnedObj = proccess("jz", "label");
+		assertEquals("[18, &label]", returnedObj.toString());
 		
 		//final test: a small program
 		//testing the following lines
-		//sub adr1
-		//add adr2
+		//sub adr1 %REG0
+		//add adr2 %REG0
 		//jmp label1
-		//inc
+		//inc %REG0
 		//jn label2
-		//ldi 86
-		//move %RPG0 %RPG1
-		//read adr3
+		//move 86 %REG1
+		//move %REG0 %REG1
+		//move adr3 %REG0
 		//let's start!!!
-		returnedObj = new ArrayList<>();
-		ass = new Assembler();
+		Assembler ass = new Assembler();
+		String commandLine[] = new String[3];
 		commandLine[0] = "sub";
 		commandLine[1] = "adr1";
+		commandLine[2] = "%REG0";
 		ass.proccessCommand(commandLine);
 		commandLine[0] = "add";
 		commandLine[1] = "adr2";
 		ass.proccessCommand(commandLine);
 		commandLine[0] = "jmp";
 		commandLine[1] = "label1";
+		commandLine[2] = null;
 		ass.proccessCommand(commandLine);
 		commandLine[0] = "inc";
+		commandLine[1] = "%REG0";
 		ass.proccessCommand(commandLine);
 		commandLine[0] = "jn";
 		commandLine[1] = "label2";
 		ass.proccessCommand(commandLine);
-		commandLine[0] = "ldi";
+		commandLine[0] = "move";
 		commandLine[1] = "86";
+		commandLine[2] = "%REG1";
 		ass.proccessCommand(commandLine);
-		commandLine[0] = "move";
-		commandLine[1] = "%RPG0";
-		commandLine[2] = "%RPG1";
+		commandLine[1] = "%REG0";
 		ass.proccessCommand(commandLine);
-		commandLine[0] = "read";
 		commandLine[1] = "adr3";
+		commandLine[2] = "%REG0";
 		ass.proccessCommand(commandLine);
 		//now, getting the object program
 		returnedObj = ass.getObjProgram();
-		assertEquals(16, returnedObj.size()); //the object program must have 16 lines
+		assertEquals(21, returnedObj.size()); //the object program must have 21 lines
 		
-		assertEquals("1", returnedObj.get(0)); //the code of sub is 1
-		assertEquals("&adr1", returnedObj.get(1)); //the parameter
+		assertEquals("5", returnedObj.get(0)); //the code of subMemReg is 5
+		assertEquals("&adr1", returnedObj.get(1)); //the parameters
+		assertEquals("%REG0", returnedObj.get(2));
 		
-		assertEquals("0", returnedObj.get(2)); //the code of add is 0
-		assertEquals("&adr2", returnedObj.get(3)); //the parameter
+		assertEquals("1", returnedObj.get(3)); //the code of addMemReg is 1
+		assertEquals("&adr2", returnedObj.get(4)); //the parameters
+		assertEquals("%REG0", returnedObj.get(5));
 		
-		assertEquals("2", returnedObj.get(4)); //the code of jmp is 2
-		assertEquals("&label1", returnedObj.get(5)); //the parameter
+		assertEquals("16", returnedObj.get(6)); //the code of jmp is 16
+		assertEquals("&label1", returnedObj.get(7)); //the parameter
 		
-		assertEquals("8", returnedObj.get(6)); //the code of inc is 8
+		assertEquals("15", returnedObj.get(8)); //the code of inc is 15
+		assertEquals("%REG0", returnedObj.get(9)); //the parameter
 		
-		assertEquals("4", returnedObj.get(7)); //the code of jn is 4
-		assertEquals("&label2", returnedObj.get(8)); //the parameter
+		assertEquals("17", returnedObj.get(10)); //the code of jn is 17
+		assertEquals("&label2", returnedObj.get(11)); //the parameter
 		
-		assertEquals("7", returnedObj.get(9)); //the code of ldi is 7
-		assertEquals("86", returnedObj.get(10)); //the parameter
+		assertEquals("14", returnedObj.get(12)); //the code of moveImmReg is 14
+		assertEquals("86", returnedObj.get(13)); //the parameters
+		assertEquals("%REG1", returnedObj.get(14));
 		
-		assertEquals("9", returnedObj.get(11)); //the code of moveRegReg is 9
-		assertEquals("%RPG0", returnedObj.get(12)); //the parameter
-		assertEquals("%RPG1", returnedObj.get(13)); //the parameter
+		assertEquals("13", returnedObj.get(15)); //the code of moveRegReg is 13
+		assertEquals("%REG0", returnedObj.get(16)); //the parameters
+		assertEquals("%REG1", returnedObj.get(17));
 		
-		assertEquals("5", returnedObj.get(14)); //the code of read is 5
-		assertEquals("&adr3", returnedObj.get(15)); //the parameter
+		assertEquals("11", returnedObj.get(18)); //the code of moveMemReg is 11
+		assertEquals("&adr3", returnedObj.get(19)); //the parameters
+		assertEquals("%REG0", returnedObj.get(20));
 	}
 
 	@Test
@@ -216,35 +166,35 @@ public class testAssembler {
 		 * var1
 		 * var2
 		 * var3
-		 * ldi 10
-		 * store var3
-		 * ldi 2
-		 * store var2
-		 * ldi 0
-		 * store var1
+		 * move 10 %REG0
+		 * move %REG0 var3
+		 * move 2 %REG0
+		 * move %REG0 var2
+		 * move 0 %REG0
+		 * move %REG0 var1
 		 * label:
-		 * read var1
-		 * add var2
-		 * store var1
-		 * move %RPG1 %RPG0
-		 * sub var3
+		 * move var1 %REG0
+		 * add var2 %REG0
+		 * move %REG0 var1
+		 * move %REG1 %REG0
+		 * sub var3 %REG0
 		 * jn label
 		 */
 		sourceProgram.add("var1");
 		sourceProgram.add("var2");
 		sourceProgram.add("var3");
-		sourceProgram.add("ldi 10");
-		sourceProgram.add("store var3");
-		sourceProgram.add("ldi 2");
-		sourceProgram.add("store var2");
-		sourceProgram.add("ldi 0");
-		sourceProgram.add("store var1");
+		sourceProgram.add("move 10 %REG0");
+		sourceProgram.add("move %REG0 var3");
+		sourceProgram.add("move 2 %REG0");
+		sourceProgram.add("move %REG0 var2");
+		sourceProgram.add("move 0 %REG0");
+		sourceProgram.add("move %REG0 var1");
 		sourceProgram.add("label:");
-		sourceProgram.add("read var1");
-		sourceProgram.add("add var2");
-		sourceProgram.add("store var1");
-		sourceProgram.add("move %RPG1 %RPG0");
-		sourceProgram.add("sub var3");
+		sourceProgram.add("move var1 %REG0");
+		sourceProgram.add("add var2 %REG0");
+		sourceProgram.add("move %REG0 var1");
+		sourceProgram.add("move %REG1 %REG0");
+		sourceProgram.add("sub var3 %REG0");
 		sourceProgram.add("jn label");
 		
 		//now we can generate the object program
@@ -253,55 +203,33 @@ public class testAssembler {
 		returnedObj = ass.getObjProgram();
 		
 		//testing
-		assertEquals(25, returnedObj.size());
+		assertEquals(35, returnedObj.size());
 		
 		//checking line by line
-		assertEquals("7", returnedObj.get(0)); //the code of ldi is 7
-		assertEquals("10", returnedObj.get(1)); //the parameter
-		
-		assertEquals("6", returnedObj.get(2)); //the code of store is 6
-		assertEquals("&var3", returnedObj.get(3)); //the parameter
-		
-		assertEquals("7", returnedObj.get(4)); //the code of ldi is 7
-		assertEquals("2", returnedObj.get(5)); //the parameter
-		
-		assertEquals("6", returnedObj.get(6)); //the code of store is 6
-		assertEquals("&var2", returnedObj.get(7)); //the parameter
-		
-		assertEquals("7", returnedObj.get(8)); //the code of ldi is 7
-		assertEquals("0", returnedObj.get(9)); //the parameter
-		
-		assertEquals("6", returnedObj.get(10)); //the code of store is 6
-		assertEquals("&var1", returnedObj.get(11)); //the parameter
-		
-		assertEquals("5", returnedObj.get(12)); //the code of read is 5
-		assertEquals("&var1", returnedObj.get(13)); //the parameter
-		
-		assertEquals("0", returnedObj.get(14)); //the code of add is 0
-		assertEquals("&var2", returnedObj.get(15)); //the parameter
-		
-		assertEquals("6", returnedObj.get(16)); //the code of store is 6
-		assertEquals("&var1", returnedObj.get(17)); //the parameter
-		
-		assertEquals("9", returnedObj.get(18)); //the code of moveRegReg is 9
-		assertEquals("%RPG1", returnedObj.get(19)); //the parameter
-		assertEquals("%RPG0", returnedObj.get(20)); //the parameter
-		
-		assertEquals("1", returnedObj.get(21)); //the code of sub is 1
-		assertEquals("&var3", returnedObj.get(22)); //the parameter
-		
-		assertEquals("4", returnedObj.get(23)); //the code of jn is 4
-		assertEquals("&label", returnedObj.get(24)); //the parameter
-		
-		//now, checking if the label "label" was inserted, pointing to the position 12
-		//the line 'read var1' is just after the label
-		//once the command was inserted in the position 12, the label must 
-		//be pointing to the position 12
+		String expected[] = {"14", "10", "%REG0", //moveImmReg
+				"12", "%REG0", "&var3", //moveRegMem
+				"14", "2", "%REG0",
+				"12", "%REG0", "&var2",
+				"14", "0", "%REG0",
+				"12", "%REG0", "&var1",
+				"11", "&var1", "%REG0", //moveMemReg
+				"1", "&var2", "%REG0", //addMemReg
+				"12", "%REG0", "&var1",
+				"13", "%REG1", "%REG0", //moveRegReg
+				"5", "&var3", "%REG0", //subMemReg
+				"17", "&label"}; //jn
+		for (int i=0;i<expected.length;i++)
+			assertEquals(expected[i], returnedObj.get(i));
+		
+		//now, checking if the label "label" was inserted, pointing to the position 18
+		//the line 'move var1 %REG0' is just after the label
+		//once the command was inserted in the position 18, the label must 
+		//be pointing to the position 18
 		assertTrue(ass.getLabels().contains("label"));
 		assertEquals(1, ass.getLabels().size());
 		assertEquals(1, ass.getLabelsAddresses().size());
 		assertEquals(0, ass.getLabels().indexOf("label"));
-		assertEquals(12, (int) ass.getLabelsAddresses().get(0));
+		assertEquals(18, (int) ass.getLabelsAddresses().get(0));
 		
 		//checking if all variables are stored in variables collection
 		assertEquals("var1", ass.getVariables().get(0));
@@ -465,47 +393,59 @@ public class testAssembler {
 		
 		//creating a fictional exec program with some registers
 		sampleexec.add("9");
-		sampleexec.add("%RPG1"); //rpg1 in the position 1
+		sampleexec.add("%REG1"); //reg1 in the position 1
 		sampleexec.add("9");
 		sampleexec.add("9");
 		sampleexec.add("%PC"); //pc is in position 4
 		sampleexec.add("9");
-		sampleexec.add("%RPG0"); //rpg0 is in position 6
+		sampleexec.add("%REG0"); //reg0 is in position 6
 		sampleexec.add("9");
 		sampleexec.add("9");
 		sampleexec.add("%IR"); //ir in the position 9
 		sampleexec.add("9");
-		sampleexec.add("%RPG0"); //rpg0 in the position 11
+		sampleexec.add("%REG0"); //reg0 in the position 11
 		sampleexec.add("9");
-		sampleexec.add("%RPG1"); //rpg1 in the position 13
+		sampleexec.add("%REG1"); //reg1 in the position 13
+		sampleexec.add("%REG3"); //reg3 in the position 14
+		sampleexec.add("%Flags"); //flags in the position 15
 		
 		//inserting this arraylist into the execprogram collections
 		ass.setExecProgram(sampleexec);
 		
 		//now the test!
-		//RPG0 must be replaced by 0 
-		//RPG1 must be replaced by 1
-		//PC must be replaced by 2
-		//IR must be replaced by 3
+		//the ids are the positions in the registers list of the architecture
+		//REG0 must be replaced by 0 
+		//REG1 must be replaced by 1
+		//REG3 must be replaced by 3
+		//PC must be replaced by 4
+		//IR must be replaced by 5
+		//Flags must be replaced by 6
 		
 		ass.replaceRegisters();
 		
 		//getting the positions 
-		//rpg0 is now the number 0. It must be found in positions 6 and 11
+		//reg0 is now the number 0. It must be found in positions 6 and 11
 		assertEquals("0", ass.getExecProgram().get(6));
 		assertEquals("0", ass.getExecProgram().get(11));
 		
-		//rpg1 is now the number 1. It must be found in positions 1 and 13 
+		//reg1 is now the number 1. It must be found in positions 1 and 13 
 		assertEquals("1", ass.getExecProgram().get(1));
 		assertEquals("1", ass.getExecProgram().get(13));
 		
-		//pc is now the number 2. It must be found in position 4 
-		assertEquals("2", ass.getExecProgram().get(4));
-
-		//ir is now the number 3. It must be found in position 9 
-		assertEquals("3", ass.getExecProgram().get(9));
+		//reg3 is now the number 3. It must be found in position 14 
+		assertEquals("3", ass.getExecProgram().get(14));
 		
+		//pc is now the number 4. It must be found in position 4 
+		assertEquals("4", ass.getExecProgram().get(4));
 
+		//ir is now the number 5. It must be found in position 9 
+		assertEquals("5", ass.getExecProgram().get(9));
+		
+		//flags is now the number 6. It must be found in position 15 
+		assertEquals("6", ass.getExecProgram().get(15));
+		
+		//the other lines are kept
+		assertEquals("9", ass.getExecProgram().get(0));
 		
 	}
 	
@@ -606,6 +546,52 @@ public class testAssembler {
 	}
 	
 	
+	@Test
+	public void testParseSource() throws IOException {
+		//tabs, repeated spaces, comments, blank lines and a label in the same line of a command
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add("total		; the sum");
+		lines.add("");
+		lines.add("  move   -3	%REG0   # counter");
+		lines.add("loop:	add 5 %REG1");
+		lines.add("	inc %REG0");
+		lines.add("	jn   loop");
+		lines.add("move %REG1 total");
+		lines.add("; the end");
+		Assembler ass = new Assembler();
+		ass.setLines(lines);
+		ass.parse();
+		assertEquals("total", ass.getVariables().get(0));
+		assertEquals(1, ass.getVariables().size());
+		assertEquals(3, (int) ass.getLabelsAddresses().get(0));
+		File file = File.createTempFile("parse", ".dxf");
+		file.deleteOnExit();
+		String filename = file.getPath().substring(0, file.getPath().length()-4);
+		ass.makeExecutable(filename);
+		int expected[] = {14, -3, 0, 3, 5, 1, 15, 0, 17, 3, 12, 1, 127};
+		for (int i=0;i<expected.length;i++)
+			assertEquals(Integer.toString(expected[i]), ass.getExecProgram().get(i));
+		assertEquals(expected.length, ass.getExecProgram().size());
+		//the executable runs in the architecture
+		Architecture arch = new Architecture(false, true);
+		arch.readExec(filename);
+		arch.controlUnitEexec();
+		assertEquals(15, arch.getRegistersList().get(1).getData());
+		assertEquals(13, arch.getRegistersList().get(4).getData());
+	}
+
+	@Test
+	public void testParseErrors() throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add("move %REG0"); //missing operand
+		lines.add("jmp %REG0"); //jmp needs an address
+		lines.add("inc 3"); //inc needs a register
+		Assembler ass = new Assembler();
+		ass.setLines(lines);
+		ass.parse();
+		assertEquals(0, ass.getObjProgram().size());
+	}
+
 	//@Test
 	public void testRead() {
 		fail("Not yet implemented");
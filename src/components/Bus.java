@@ -3,6 +3,7 @@ package components;
 public class Bus {
 	
 	private int data;
+	private Counters counters; //null if the transfers are not counted
 	
 	
 	
@@ -10,14 +11,31 @@ public class Bus {
 		data = 0;
 	}
 
+	/**
+	 * This method makes the bus count its transfers (null stops the counting)
+	 * @param counters
+	 */
+	public void setCounters(Counters counters) {
+		this.counters = counters;
+	}
+
 	/**
 	 * This method implements the storing of a data into the bus
 	 * @param data
 	 */
 	public void put(int data){
 		this.data = data;
+		if (counters != null)
+			counters.count(Counters.BUS_TRANSFERS);
 	}
 	
+	/**
+	 * This method clears the data in the bus
+	 */
+	public void reset() {
+		this.data = 0;
+	}
+
 	/**
 	 * This methos implements the retrieving of a data from the bus
 	 * @return
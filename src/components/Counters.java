@@ -0,0 +1,123 @@
+package components;
+
+import java.util.Arrays;
+
+/**
+ * This class counts the operations performed by the components: bus transfers, register reads
+ * and stores, memory reads and stores and ula operations.
+ *
+ * The counts are kept in rows, and the owner of the components selects the row that receives
+ * the next operations (the architecture uses one row per command, see architecture.Architecture.setCounting()).
+ * Components only count while they have counters (see setCounters() in each one of them),
+ * so nothing else is spent when nothing is counted.
+ */
+public class Counters {
+
+	//kinds of operations
+	public static final int BUS_TRANSFERS = 0;
+	public static final int REGISTER_READS = 1;
+	public static final int REGISTER_STORES = 2;
+	public static final int MEMORY_READS = 3;
+	public static final int MEMORY_STORES = 4;
+	public static final int ULA_OPERATIONS = 5;
+	public static final int KINDS = 6;
+	public static final String KIND_NAMES[] = {"bus", "regRead", "regStore", "memRead", "memStore", "ula"};
+
+	private long counts[][]; //[row][kind]
+	private long executions[]; //times each row was executed
+	private long current[]; //the row receiving the operations
+
+	/**
+	 * @param rows
+	 */
+	public Counters(int rows) {
+		counts = new long[rows][KINDS];
+		executions = new long[rows];
+		current = counts[0];
+	}
+
+	public int getRows() {
+		return counts.length;
+	}
+
+	/**
+	 * This method chooses the row that receives the next operations
+	 * @param row
+	 */
+	public void select(int row) {
+		current = counts[row];
+	}
+
+	/**
+	 * This method counts an operation in the selected row
+	 * @param kind
+	 */
+	public void count(int kind) {
+		current[kind]++;
+	}
+
+	/**
+	 * This method counts one execution of a row
+	 * @param row
+	 */
+	public void executed(int row) {
+		executions[row]++;
+	}
+
+	/**
+	 * This method adds all the operations of a row into another one, clearing the first one.
+	 * It is used when the operations are known only after being performed
+	 * (the fetch of a command is counted before the command is decoded)
+	 * @param from
+	 * @param to
+	 */
+	public void move(int from, int to) {
+		for (int kind=0;kind<KINDS;kind++) {
+			counts[to][kind] += counts[from][kind];
+			counts[from][kind] = 0;
+		}
+	}
+
+	public long get(int row, int kind) {
+		return counts[row][kind];
+	}
+
+	public long getExecutions(int row) {
+		return executions[row];
+	}
+
+	/**
+	 * This method returns the microsteps of a row: the operations of the registers, the memories and the ula.
+	 * The bus transfers are not microsteps by themselves, since they are performed by those operations
+	 * @param row
+	 * @return
+	 */
+	public long getMicrosteps(int row) {
+		long microsteps = 0;
+		for (int kind=REGISTER_READS;kind<KINDS;kind++)
+			microsteps += counts[row][kind];
+		return microsteps;
+	}
+
+	/**
+	 * This method returns the operations of a kind in all the rows
+	 * @param kind
+	 * @return
+	 */
+	public long getTotal(int kind) {
+		long total = 0;
+		for (long row[] : counts)
+			total += row[kind];
+		return total;
+	}
+
+	/**
+	 * This method clears all the counts
+	 */
+	public void clear() {
+		for (long row[] : counts)
+			Arrays.fill(row, 0);
+		Arrays.fill(executions, 0);
+	}
+
+}
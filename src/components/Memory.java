@@ -1,42 +1,344 @@
 package components;
 
+import java.util.Arrays;
+
 public class Memory {
+
+	//size of the copy-on-write pages (see fork())
+	public static final int PAGE_SHIFT = 10; //1k words per page
+	public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	//pages in each leaf of the directory
+	private static final int LEAF_SHIFT = 6;
+	private static final int LEAF_SIZE = 1 << LEAF_SHIFT;
+	private static final int LEAF_MASK = LEAF_SIZE - 1;
+
+	/**
+	 * A part of the page table. Like the pages, it is shared by the forked memories until one of them changes it
+	 */
+	private static final class Leaf {
+		final Object owner; //the memory that may change this leaf
+		final int pages[][];
+		final Object pageOwners[]; //the memory that may change each page
+
+		Leaf(Object owner, int pages[][], Object pageOwners[]) {
+			this.owner = owner;
+			this.pages = pages;
+			this.pageOwners = pageOwners;
+		}
+	}
 	
 	private Bus bus;
+	private Counters counters; //null if the reads and stores are not counted
 	private int storePosition; //this value indicates that the memory has read an
 					// address and is waiting for a data to be storesd in this position
 	private int size;
-	private int dataList[];
+	private int dataList[]; //the positions, while the memory is not paged (null otherwise)
+
+	//copy-on-write pages, used after the memory is forked: a directory of leaves, each one with LEAF_SIZE pages.
+	//The directory, the leaves and the pages are changed only by their owner, and the others copy them first
+	private Leaf directory[]; //null while the memory is not paged
+	private Object directoryOwner;
+	private Object owner; //identifies this memory as an owner. Each fork gives it a new one
+	private int pagesCopied; //amount of pages copied since the memory was forked
 	
 	public Memory(int size, Bus bus) {
 		storePosition = -1; //negative values indicates the memory is not storing
 		this.size = size;
-		dataList = new int[size];
+		dataList = new int[size]; //java already fills it with zeros
+		this.bus = bus;
+	}
+
+	/**
+	 * This constructor is used by memories that keep their positions somewhere else
+	 * (see OffHeapMemory and SparseMemory), so no data list is built
+	 * @param size
+	 * @param bus
+	 * @param heap must be false
+	 */
+	protected Memory(int size, Bus bus, boolean heap) {
+		storePosition = -1;
+		this.size = size;
 		this.bus = bus;
-		for (int i=0;i<size;i++) {
-			dataList[i] = 0;
+	}
+
+	/**
+	 * This constructor builds a memory sharing the directory of another one
+	 */
+	private Memory(Memory parent, Bus bus) {
+		this.size = parent.size;
+		this.bus = bus;
+		this.storePosition = parent.storePosition;
+		this.directory = parent.directory;
+		this.directoryOwner = parent.directoryOwner;
+		this.owner = new Object();
+	}
+
+	/**
+	 * This method builds a copy of this memory attached to another bus.
+	 * Both memories share the same directory of pages, and neither one owns it anymore, so a store
+	 * copies only the directory, the leaf and the page it goes through, the first time it does.
+	 * Forking does not depend on the size of the memory, except the first one of a memory that is
+	 * not paged yet, that splits the data list into pages
+	 * @param bus
+	 * @return
+	 */
+	public Memory fork(Bus bus) {
+		if (directory == null)
+			split();
+		owner = new Object(); //everything is now shared with the child
+		return new Memory(this, bus);
+	}
+
+	/**
+	 * This method turns the data list into pages
+	 */
+	private void split() {
+		int numPages = (size + PAGE_SIZE - 1) >> PAGE_SHIFT;
+		owner = new Object();
+		directory = new Leaf[(numPages + LEAF_SIZE - 1) >> LEAF_SHIFT];
+		directoryOwner = owner;
+		for (int l=0;l<directory.length;l++) {
+			int pages[][] = new int[Math.min(LEAF_SIZE, numPages - (l << LEAF_SHIFT))][];
+			Object pageOwners[] = new Object[pages.length];
+			for (int i=0;i<pages.length;i++) {
+				int start = ((l << LEAF_SHIFT) + i) << PAGE_SHIFT;
+				pages[i] = Arrays.copyOfRange(dataList, start, Math.min(start + PAGE_SIZE, size));
+				pageOwners[i] = owner;
+			}
+			directory[l] = new Leaf(owner, pages, pageOwners);
 		}
+		dataList = null;
+	}
+
+	/**
+	 * This method returns a page that this memory may change, copying it (and the parts of the
+	 * directory leading to it) if it is shared
+	 * @param p the number of the page
+	 * @return
+	 */
+	private int[] ownPage(int p) {
+		if (directoryOwner != owner) {
+			directory = directory.clone();
+			directoryOwner = owner;
+		}
+		int l = p >> LEAF_SHIFT;
+		Leaf leaf = directory[l];
+		if (leaf.owner != owner) {
+			leaf = new Leaf(owner, leaf.pages.clone(), leaf.pageOwners.clone());
+			directory[l] = leaf;
+		}
+		int i = p & LEAF_MASK;
+		if (leaf.pageOwners[i] != owner) {
+			leaf.pages[i] = leaf.pages[i].clone();
+			leaf.pageOwners[i] = owner;
+			pagesCopied++;
+		}
+		return leaf.pages[i];
+	}
+
+	/**
+	 * This method copies all the pages into an array
+	 */
+	private void copyPages(int destination[], int offset) {
+		for (int l=0;l<directory.length;l++) {
+			int pages[][] = directory[l].pages;
+			for (int i=0;i<pages.length;i++)
+				System.arraycopy(pages[i], 0, destination, offset + (((l << LEAF_SHIFT) + i) << PAGE_SHIFT), pages[i].length);
+		}
+	}
+
+	/**
+	 * This method returns true if the memory is paged, that is, it was forked
+	 * and getDataList() was not called since then
+	 * @return
+	 */
+	public boolean isPaged() {
+		return directory != null;
+	}
+
+	/**
+	 * This method returns the amount of pages copied because they were shared
+	 * @return
+	 */
+	public int getPagesCopied() {
+		return pagesCopied;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * This method returns true if the positions are kept out of the java heap
+	 * @return
+	 */
+	public boolean isOffHeap() {
+		return false;
+	}
+
+	/**
+	 * This method returns false for memories that have no data list (off-heap and sparse ones):
+	 * their positions must be accessed by getData() and setData()
+	 * @return
+	 */
+	public boolean hasDataList() {
+		return true;
+	}
+
+	/**
+	 * This method returns the data in a position directly, without using any bus
+	 * @param position
+	 * @return
+	 */
+	public int getData(int position) {
+		return get(position);
+	}
+
+	/**
+	 * This method sets the data in a position directly, without using any bus
+	 * @param position
+	 * @param data
+	 */
+	public void setData(int position, int data) {
+		set(position, data);
+	}
+
+	/**
+	 * This method copies all the positions into an array
+	 * @param destination
+	 * @param offset the position of the array where the position 0 is copied to
+	 */
+	public void copyTo(int destination[], int offset) {
+		if (dataList != null)
+			System.arraycopy(dataList, 0, destination, offset, size);
+		else
+			copyPages(destination, offset);
+	}
+
+	/**
+	 * This method replaces all the positions by the ones in an array
+	 * @param source
+	 * @param offset the position of the array where the position 0 is copied from
+	 */
+	public void copyFrom(int source[], int offset) {
+		if (dataList == null)
+			reset();
+		System.arraycopy(source, offset, dataList, 0, size);
+	}
+
+	/**
+	 * This method returns the data in a position, that must be in the memory range
+	 * @param position
+	 * @return
+	 */
+	protected int get(int position) {
+		if (dataList != null)
+			return dataList[position];
+		int p = position >> PAGE_SHIFT;
+		return directory[p >> LEAF_SHIFT].pages[p & LEAF_MASK][position & PAGE_MASK];
+	}
+
+	/**
+	 * This method sets the data in a position. A shared page is copied before being changed
+	 * @param position
+	 * @param data
+	 */
+	protected void set(int position, int data) {
+		if (dataList != null) {
+			dataList[position] = data;
+			return;
+		}
+		ownPage(position >> PAGE_SHIFT)[position & PAGE_MASK] = data;
+	}
+
+	/**
+	 * This method clears all the positions and cancels any storing being performed
+	 */
+	public void reset() {
+		if (dataList == null)
+			dataList = new int[size];
+		else
+			Arrays.fill(dataList, 0);
+		directory = null;
+		directoryOwner = null;
+		storePosition = -1;
+	}
+
+	/**
+	 * This method stores an image starting from the position 0 and clears all the other positions.
+	 * Words that do not fit into the memory are ignored
+	 * @param image
+	 */
+	public void load(int image[]) {
+		if (dataList == null) {
+			dataList = new int[size];
+			directory = null;
+			directoryOwner = null;
+		}
+		int length = Math.min(image.length, size);
+		System.arraycopy(image, 0, dataList, 0, length);
+		Arrays.fill(dataList, length, size, 0);
+		storePosition = -1;
 	}
 
 	/**
 	 * This method is used for TDD and Simulation purposes only
+	 * A paged memory is copied into one single array, and it is not paged anymore.
+	 * Memories with no data list (see hasDataList()) return a copy of their positions, so changing
+	 * it does not change them
 	 * NOT TESTED
 	 * @return
 	 */
 	public int[] getDataList() {
+		if (!hasDataList()) {
+			int copy[] = new int[size];
+			copyTo(copy, 0);
+			return copy;
+		}
+		if (dataList == null) {
+			dataList = new int[size];
+			copyPages(dataList, 0);
+			directory = null;
+			directoryOwner = null;
+		}
 		return dataList;
 	}
 
+	/**
+	 * This method makes the memory count its reads and stores (null stops the counting).
+	 * Only the operations through the bus are counted, not getData() and setData()
+	 * @param counters
+	 */
+	public void setCounters(Counters counters) {
+		this.counters = counters;
+	}
+
+	/**
+	 * This method returns the position waiting for a data to be stored, or a negative value
+	 * if no storing is being performed
+	 * @return
+	 */
+	public int getStorePosition() {
+		return storePosition;
+	}
+
+	public void setStorePosition(int storePosition) {
+		this.storePosition = storePosition;
+	}
+
 	/**
 	 * This method stores into position the data found in the bus
 	 * @param position
 	 */
 	public void store() {
+		if (counters != null)
+			counters.count(Counters.MEMORY_STORES);
 		if (storePosition < 0) { //the storing is just starting
 			this.storePosition = bus.get();
 		}
 		else {//the storing was initiated, in the bus is the data
-			this.dataList[storePosition] = bus.get();
+			set(storePosition, bus.get());
 			storePosition = -1; //no storing is being performed anymore
 		}
 	}
@@ -46,22 +348,28 @@ public class Memory {
 	 * @param position
 	 */
 	public void read() {
+		if (counters != null)
+			counters.count(Counters.MEMORY_READS);
 		if ((bus.get() < size)&&(bus.get() >=0))
-			bus.put(dataList[bus.get()]);
+			bus.put(get(bus.get()));
 	}
 	
 	/**
 	 * Special method used in statusm memory to store the data in the position 0
 	 */
 	public void storeIn0() { 
-		this.dataList[0] = bus.get();
+		if (counters != null)
+			counters.count(Counters.MEMORY_STORES);
+		set(0, bus.get());
 	}
 
 	/**
 	 * Special method used in statusm memory to store the data in the position 1
 	 */
 	public void storeIn1() { 
-		this.dataList[1] = bus.get();
+		if (counters != null)
+			counters.count(Counters.MEMORY_STORES);
+		set(1, bus.get());
 	}
 
 }
@@ -0,0 +1,148 @@
+package components;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * This memory keeps its positions out of the java heap, in direct buffers, so very large
+ * memories (millions of words) do not put pressure on the garbage collector.
+ *
+ * The positions are split into chunks, and each chunk is allocated only when a data is stored
+ * into it for the first time. Chunks never stored into are read as zeros, so a new (or reset)
+ * memory costs nothing until it is used.
+ */
+public class OffHeapMemory extends Memory {
+
+	public static final int CHUNK_SHIFT = 16; //64k words per chunk
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private IntBuffer chunks[]; //null while the chunk was never stored into
+	private int allocatedChunks;
+
+	public OffHeapMemory(int size, Bus bus) {
+		super(size, bus, false);
+		chunks = new IntBuffer[(size + CHUNK_SIZE - 1) >> CHUNK_SHIFT];
+	}
+
+	@Override
+	public boolean isOffHeap() {
+		return true;
+	}
+
+	@Override
+	public boolean hasDataList() {
+		return false;
+	}
+
+	/**
+	 * This method returns the amount of chunks allocated, that is, chunks that were stored into
+	 * @return
+	 */
+	public int getAllocatedChunks() {
+		return allocatedChunks;
+	}
+
+	@Override
+	protected int get(int position) {
+		IntBuffer chunk = chunks[position >> CHUNK_SHIFT];
+		if (chunk == null)
+			return 0;
+		return chunk.get(position & CHUNK_MASK);
+	}
+
+	@Override
+	protected void set(int position, int data) {
+		chunk(position >> CHUNK_SHIFT).put(position & CHUNK_MASK, data);
+	}
+
+	/**
+	 * This method returns a chunk, allocating it if it was never used
+	 */
+	private IntBuffer chunk(int c) {
+		IntBuffer chunk = chunks[c];
+		if (chunk == null) {
+			int words = Math.min(CHUNK_SIZE, getSize() - (c << CHUNK_SHIFT));
+			chunk = ByteBuffer.allocateDirect(words*4).order(ByteOrder.nativeOrder()).asIntBuffer();
+			chunks[c] = chunk;
+			allocatedChunks++;
+		}
+		return chunk;
+	}
+
+	/**
+	 * The chunks are released, so all the positions are read as zeros again
+	 */
+	@Override
+	public void reset() {
+		Arrays.fill(chunks, null);
+		allocatedChunks = 0;
+		setStorePosition(-1);
+	}
+
+	@Override
+	public void load(int image[]) {
+		reset();
+		copyRange(image, 0, Math.min(image.length, getSize()));
+	}
+
+	/**
+	 * The chunks are not shared: the allocated ones are copied into new buffers,
+	 * so forking costs the chunks stored into
+	 */
+	@Override
+	public Memory fork(Bus bus) {
+		OffHeapMemory child = new OffHeapMemory(getSize(), bus);
+		for (int c=0;c<chunks.length;c++) {
+			if (chunks[c] == null)
+				continue;
+			IntBuffer source = chunks[c].duplicate();
+			source.position(0);
+			child.chunk(c).duplicate().put(source);
+		}
+		child.setStorePosition(getStorePosition());
+		return child;
+	}
+
+	@Override
+	public void copyTo(int destination[], int offset) {
+		for (int c=0;c<chunks.length;c++) {
+			int start = c << CHUNK_SHIFT;
+			int words = Math.min(CHUNK_SIZE, getSize() - start);
+			if (chunks[c] == null)
+				Arrays.fill(destination, offset + start, offset + start + words, 0);
+			else {
+				IntBuffer chunk = chunks[c].duplicate();
+				chunk.position(0);
+				chunk.get(destination, offset + start, words);
+			}
+		}
+	}
+
+	@Override
+	public void copyFrom(int source[], int offset) {
+		reset();
+		copyRange(source, offset, getSize());
+	}
+
+	/**
+	 * This method copies words from the array into the positions 0 to words-1.
+	 * Chunks with zeros only are not allocated
+	 */
+	private void copyRange(int source[], int offset, int words) {
+		for (int start=0;start<words;start+=CHUNK_SIZE) {
+			int length = Math.min(CHUNK_SIZE, words - start);
+			boolean zeros = true;
+			for (int i=0;(i<length)&&zeros;i++)
+				zeros = (source[offset + start + i] == 0);
+			if (zeros)
+				continue;
+			IntBuffer chunk = chunk(start >> CHUNK_SHIFT).duplicate();
+			chunk.position(0);
+			chunk.put(source, offset + start, length);
+		}
+	}
+
+}
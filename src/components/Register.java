@@ -9,6 +9,7 @@ public class Register {
 	
 	private int data;
 	private Bus busExt, busInt;
+	private Counters counters; //null if the reads and stores are not counted
 	
 	/**
 	 * Default constructor
@@ -23,6 +24,15 @@ public class Register {
 	public int getData() {
 		return data;
 	}
+
+	/**
+	 * This method sets the data directly, without using any bus.
+	 * It is used by the functional execution mode, that does not simulate the buses
+	 * @param data
+	 */
+	public void setData(int data) {
+		this.data = data;
+	}
 	
 	/**
 	 * This special constructor is used to make Flags register
@@ -41,6 +51,24 @@ public class Register {
 		this.busExt = bus;
 	}
 	
+	/**
+	 * This method clears the data and all the special bits
+	 */
+	public void reset() {
+		data = 0;
+		for (int i=0;i<numFlags;i++) {
+			flagBits[i] = 0;
+		}
+	}
+
+	/**
+	 * This method makes the register count its reads and stores (null stops the counting)
+	 * @param counters
+	 */
+	public void setCounters(Counters counters) {
+		this.counters = counters;
+	}
+
 	public String getRegisterName() {
 		return registerName;
 	}
@@ -69,6 +97,8 @@ public class Register {
 	 */
 	public void store() {
 		data = busExt.get();
+		if (counters != null)
+			counters.count(Counters.REGISTER_STORES);
 	}
 	
 	/**
@@ -76,6 +106,8 @@ public class Register {
 	 */
 	public void read() {
 		busExt.put(data);
+		if (counters != null)
+			counters.count(Counters.REGISTER_READS);
 	}
 	
 	/**
@@ -83,6 +115,8 @@ public class Register {
 	 */
 	public void internalRead() {
 		busInt.put(data);
+		if (counters != null)
+			counters.count(Counters.REGISTER_READS);
 	}
 	
 	/**
@@ -90,6 +124,8 @@ public class Register {
 	 */
 	public void internalStore() {
 		data = busInt.get();
+		if (counters != null)
+			counters.count(Counters.REGISTER_STORES);
 	}
 
 
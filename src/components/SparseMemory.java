@@ -0,0 +1,145 @@
+package components;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This memory allocates its positions in pages, and each page is allocated only when a data
+ * is stored into it for the first time. Pages never stored into are read as zeros, so huge
+ * address spaces cost only the pages a program really uses.
+ *
+ * Programs usually access positions close to each other, so the last page used is kept aside
+ * and most accesses do not need to look for the page in the map.
+ *
+ * The bus protocol (read(), and store() in two steps using the store position) is the same
+ * of Memory, only the way the positions are kept is different.
+ */
+public class SparseMemory extends Memory {
+
+	public static final int SPARSE_PAGE_SHIFT = 10; //1k words per page
+	public static final int SPARSE_PAGE_SIZE = 1 << SPARSE_PAGE_SHIFT;
+	private static final int SPARSE_PAGE_MASK = SPARSE_PAGE_SIZE - 1;
+
+	private Map<Integer, int[]> pages; //only the pages already stored into
+
+	//last page used
+	private int lastPageNumber;
+	private int lastPage[]; //null if the last page used was never stored into
+
+	public SparseMemory(int size, Bus bus) {
+		super(size, bus, false);
+		pages = new HashMap<>();
+		lastPageNumber = -1;
+	}
+
+	@Override
+	public boolean hasDataList() {
+		return false;
+	}
+
+	/**
+	 * This method returns the amount of pages allocated, that is, pages that were stored into
+	 * @return
+	 */
+	public int getAllocatedPages() {
+		return pages.size();
+	}
+
+	@Override
+	protected int get(int position) {
+		int page[] = page(position >> SPARSE_PAGE_SHIFT);
+		if (page == null)
+			return 0;
+		return page[position & SPARSE_PAGE_MASK];
+	}
+
+	@Override
+	protected void set(int position, int data) {
+		int p = position >> SPARSE_PAGE_SHIFT;
+		int page[] = page(p);
+		if (page == null) {
+			if (data == 0)
+				return; //the position is already read as zero
+			page = new int[Math.min(SPARSE_PAGE_SIZE, getSize() - (p << SPARSE_PAGE_SHIFT))];
+			pages.put(p, page);
+			lastPage = page;
+		}
+		page[position & SPARSE_PAGE_MASK] = data;
+	}
+
+	/**
+	 * This method returns a page (or null if it was never stored into), using the last page
+	 * when it is the same one
+	 */
+	private int[] page(int p) {
+		if (p != lastPageNumber) {
+			lastPage = pages.get(p);
+			lastPageNumber = p;
+		}
+		return lastPage;
+	}
+
+	/**
+	 * The pages are released, so all the positions are read as zeros again
+	 */
+	@Override
+	public void reset() {
+		pages.clear();
+		lastPageNumber = -1;
+		lastPage = null;
+		setStorePosition(-1);
+	}
+
+	@Override
+	public void load(int image[]) {
+		reset();
+		copyRange(image, 0, Math.min(image.length, getSize()));
+	}
+
+	/**
+	 * The pages are not shared: the allocated ones are copied, so forking costs the pages stored into
+	 */
+	@Override
+	public Memory fork(Bus bus) {
+		SparseMemory child = new SparseMemory(getSize(), bus);
+		for (Map.Entry<Integer, int[]> page : pages.entrySet())
+			child.pages.put(page.getKey(), page.getValue().clone());
+		child.setStorePosition(getStorePosition());
+		return child;
+	}
+
+	@Override
+	public void copyTo(int destination[], int offset) {
+		Arrays.fill(destination, offset, offset + getSize(), 0);
+		for (Map.Entry<Integer, int[]> page : pages.entrySet())
+			System.arraycopy(page.getValue(), 0, destination, offset + (page.getKey() << SPARSE_PAGE_SHIFT), page.getValue().length);
+	}
+
+	@Override
+	public void copyFrom(int source[], int offset) {
+		reset();
+		copyRange(source, offset, getSize());
+	}
+
+	/**
+	 * This method copies words from the array into the positions 0 to words-1.
+	 * Pages with zeros only are not allocated
+	 */
+	private void copyRange(int source[], int offset, int words) {
+		for (int start=0;start<words;start+=SPARSE_PAGE_SIZE) {
+			int length = Math.min(SPARSE_PAGE_SIZE, words - start);
+			boolean zeros = true;
+			for (int i=0;(i<length)&&zeros;i++)
+				zeros = (source[offset + start + i] == 0);
+			if (zeros)
+				continue;
+			int page[] = new int[Math.min(SPARSE_PAGE_SIZE, getSize() - start)];
+			System.arraycopy(source, offset + start, page, 0, length);
+			pages.put(start >> SPARSE_PAGE_SHIFT, page);
+		}
+		lastPageNumber = -1;
+		lastPage = null;
+	}
+
+}
@@ -0,0 +1,76 @@
+package components;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestCounters {
+
+	@Test
+	public void testComponents() {
+		Counters counters = new Counters(2);
+		Bus bus = new Bus();
+		Bus internal = new Bus();
+		Register register = new Register("R", bus, internal);
+		Memory memory = new Memory(16, bus);
+		Ula ula = new Ula(bus, internal);
+		bus.setCounters(counters);
+		internal.setCounters(counters);
+		register.setCounters(counters);
+		memory.setCounters(counters);
+		ula.setCounters(counters);
+
+		bus.put(3); //1 transfer
+		register.store(); //1 store
+		register.internalRead(); //1 read, 1 transfer (internal bus)
+		counters.select(1);
+		memory.store(); //the position
+		bus.put(9);
+		memory.store(); //the data
+		bus.put(3);
+		memory.read(); //1 read, 1 transfer (the data)
+		ula.store(1); //1 ula operation (its registers are not counted)
+		ula.inc();
+
+		assertEquals(2, counters.get(0, Counters.BUS_TRANSFERS));
+		assertEquals(1, counters.get(0, Counters.REGISTER_STORES));
+		assertEquals(1, counters.get(0, Counters.REGISTER_READS));
+		assertEquals(2, counters.getMicrosteps(0));
+		assertEquals(3, counters.get(1, Counters.BUS_TRANSFERS));
+		assertEquals(2, counters.get(1, Counters.MEMORY_STORES));
+		assertEquals(1, counters.get(1, Counters.MEMORY_READS));
+		assertEquals(2, counters.get(1, Counters.ULA_OPERATIONS));
+		assertEquals(5, counters.getMicrosteps(1));
+		assertEquals(9, memory.getData(3));
+
+		//getData and setData do not use the bus, so they are not counted
+		memory.setData(0, 1);
+		memory.getData(0);
+		assertEquals(5, counters.getMicrosteps(1));
+
+		//without counters, nothing is counted
+		bus.setCounters(null);
+		bus.put(1);
+		assertEquals(5, counters.getTotal(Counters.BUS_TRANSFERS));
+	}
+
+	@Test
+	public void testMoveClear() {
+		Counters counters = new Counters(3);
+		counters.select(2);
+		counters.count(Counters.REGISTER_READS);
+		counters.count(Counters.BUS_TRANSFERS);
+		counters.move(2, 0);
+		counters.executed(0);
+		assertEquals(1, counters.get(0, Counters.REGISTER_READS));
+		assertEquals(1, counters.get(0, Counters.BUS_TRANSFERS));
+		assertEquals(0, counters.getMicrosteps(2));
+		assertEquals(1, counters.getExecutions(0));
+		counters.count(Counters.ULA_OPERATIONS); //the selected row is still 2
+		assertEquals(1, counters.get(2, Counters.ULA_OPERATIONS));
+		counters.clear();
+		assertEquals(0, counters.getTotal(Counters.REGISTER_READS));
+		assertEquals(0, counters.getExecutions(0));
+	}
+
+}
@@ -66,5 +66,78 @@ public class TestMemory {
 		assertEquals(10, bus.get());
 	}
 
+	@Test
+	public void testFork() {
+		Bus bus = new Bus();
+		int size = 2*Memory.PAGE_SIZE + 8; //3 pages
+		int changed = Memory.PAGE_SIZE + 3; //in the second page
+		Memory parent = new Memory(size, bus);
+		for (int i=0;i<size;i++) {
+			bus.put(i);
+			parent.store();
+			bus.put(100+i);
+			parent.store();
+		}
+		Bus childBus = new Bus();
+		Memory child = parent.fork(childBus);
+		assertTrue(child.isPaged());
+		//the child sees the same data
+		for (int i=0;i<size;i++) {
+			childBus.put(i);
+			child.read();
+			assertEquals(100+i, childBus.get());
+		}
+		assertEquals(0, child.getPagesCopied());
+		//storing into the child copies only the page changed
+		childBus.put(changed);
+		child.store();
+		childBus.put(-7);
+		child.store();
+		assertEquals(1, child.getPagesCopied());
+		bus.put(changed);
+		parent.read();
+		assertEquals(100+changed, bus.get()); //the parent is not changed
+		//storing into the parent does not change the child
+		bus.put(2);
+		parent.store();
+		bus.put(-2);
+		parent.store();
+		assertEquals(1, parent.getPagesCopied());
+		childBus.put(2);
+		child.read();
+		assertEquals(102, childBus.get());
+		//the data list of the child has all the positions
+		int data[] = child.getDataList();
+		assertFalse(child.isPaged());
+		assertEquals(size, data.length);
+		assertEquals(-7, data[changed]);
+		assertEquals(100+size-1, data[size-1]);
+		assertEquals(-2, parent.getDataList()[2]);
+	}
+
+	@Test
+	public void testForkGenerations() {
+		//many leaves of the directory, and forks of forks: each store copies one single page
+		int size = 200*Memory.PAGE_SIZE + 5;
+		Memory memory = new Memory(size, new Bus());
+		memory.setData(size-1, 1);
+		Memory generations[] = new Memory[10];
+		generations[0] = memory.fork(new Bus());
+		for (int g=1;g<generations.length;g++) {
+			generations[g] = generations[g-1].fork(new Bus());
+			generations[g].setData(g*20*Memory.PAGE_SIZE, g); //a page in another leaf
+			generations[g].setData(size-1, g+1);
+			assertEquals(2, generations[g].getPagesCopied());
+		}
+		for (int g=1;g<generations.length;g++) {
+			for (int h=1;h<generations.length;h++) //each generation sees the stores of its ancestors only
+				assertEquals((h <= g)?h:0, generations[g].getData(h*20*Memory.PAGE_SIZE));
+			assertEquals(g+1, generations[g].getData(size-1));
+		}
+		assertEquals(1, generations[0].getData(size-1));
+		assertEquals(1, memory.getData(size-1));
+		assertEquals(0, memory.getPagesCopied());
+		assertEquals(0, generations[0].getPagesCopied());
+	}
 
 }
@@ -0,0 +1,81 @@
+package components;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestOffHeapMemory {
+
+	@Test
+	public void testReadStore() {
+		Bus bus = new Bus();
+		OffHeapMemory memory = new OffHeapMemory(3*OffHeapMemory.CHUNK_SIZE+10, bus);
+		assertTrue(memory.isOffHeap());
+		//all positions are read as zeros, and nothing is allocated
+		for (int i=0;i<memory.getSize();i+=1000) {
+			bus.put(i);
+			memory.read();
+			assertEquals(0, bus.get());
+		}
+		assertEquals(0, memory.getAllocatedChunks());
+		//storing uses the same protocol of Memory: the position, then the data
+		int last = memory.getSize()-1;
+		bus.put(last);
+		memory.store();
+		bus.put(42);
+		memory.store();
+		assertEquals(1, memory.getAllocatedChunks());
+		bus.put(last);
+		memory.read();
+		assertEquals(42, bus.get());
+		//out of range addresses make no effect into the bus
+		bus.put(last+1);
+		memory.read();
+		assertEquals(last+1, bus.get());
+		memory.reset();
+		assertEquals(0, memory.getAllocatedChunks());
+		assertEquals(0, memory.getData(last));
+	}
+
+	@Test
+	public void testLoadCopy() {
+		OffHeapMemory memory = new OffHeapMemory(2*OffHeapMemory.CHUNK_SIZE, new Bus());
+		memory.load(new int[] {5, 6, 7});
+		assertEquals(1, memory.getAllocatedChunks());
+		assertEquals(7, memory.getData(2));
+		memory.setData(OffHeapMemory.CHUNK_SIZE+1, -3);
+		int copy[] = new int[memory.getSize()+1];
+		memory.copyTo(copy, 1);
+		assertEquals(5, copy[1]);
+		assertEquals(-3, copy[OffHeapMemory.CHUNK_SIZE+2]);
+		OffHeapMemory other = new OffHeapMemory(memory.getSize(), new Bus());
+		other.copyFrom(copy, 1);
+		assertEquals(6, other.getData(1));
+		assertEquals(-3, other.getData(OffHeapMemory.CHUNK_SIZE+1));
+	}
+
+	@Test
+	public void testFork() {
+		OffHeapMemory memory = new OffHeapMemory(OffHeapMemory.CHUNK_SIZE*3, new Bus());
+		memory.setData(5, 7);
+		memory.setData(OffHeapMemory.CHUNK_SIZE*2, -2);
+		OffHeapMemory child = (OffHeapMemory) memory.fork(new Bus());
+		assertEquals(2, child.getAllocatedChunks());
+		assertEquals(7, child.getData(5));
+		assertEquals(-2, child.getData(OffHeapMemory.CHUNK_SIZE*2));
+		child.setData(5, 8); //the chunks are not shared
+		assertEquals(7, memory.getData(5));
+	}
+
+	@Test
+	public void testNoDataList() {
+		OffHeapMemory memory = new OffHeapMemory(10, new Bus());
+		memory.setData(3, 7);
+		int copy[] = memory.getDataList(); //a copy of the positions
+		assertEquals(10, copy.length);
+		assertEquals(7, copy[3]);
+		copy[3] = 8;
+		assertEquals(7, memory.getData(3));
+	}
+
+}
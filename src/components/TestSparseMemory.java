@@ -0,0 +1,95 @@
+package components;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestSparseMemory {
+
+	@Test
+	public void testReadStore() {
+		Bus bus = new Bus();
+		SparseMemory memory = new SparseMemory(1 << 30, bus);
+		assertFalse(memory.hasDataList());
+		//all positions are read as zeros, and nothing is allocated
+		for (int i=0;i<memory.getSize();i+=1<<20) {
+			bus.put(i);
+			memory.read();
+			assertEquals(0, bus.get());
+		}
+		assertEquals(0, memory.getAllocatedPages());
+		//storing uses the same protocol of Memory: the position, then the data
+		int last = memory.getSize()-1;
+		bus.put(last);
+		memory.store();
+		assertEquals(last, memory.getStorePosition());
+		assertEquals(0, memory.getAllocatedPages());
+		bus.put(42);
+		memory.store();
+		assertEquals(-1, memory.getStorePosition());
+		assertEquals(1, memory.getAllocatedPages());
+		bus.put(last);
+		memory.read();
+		assertEquals(42, bus.get());
+		//storing zeros into a page never used allocates nothing
+		memory.setData(0, 0);
+		assertEquals(1, memory.getAllocatedPages());
+		//positions of the same page share it
+		memory.setData(last-1, 7);
+		assertEquals(1, memory.getAllocatedPages());
+		assertEquals(7, memory.getData(last-1));
+		assertEquals(0, memory.getData(1));
+		assertEquals(42, memory.getData(last));
+		//out of range addresses make no effect into the bus
+		bus.put(-1);
+		memory.read();
+		assertEquals(-1, bus.get());
+		memory.reset();
+		assertEquals(0, memory.getAllocatedPages());
+		assertEquals(0, memory.getData(last));
+	}
+
+	@Test
+	public void testLoadCopy() {
+		SparseMemory memory = new SparseMemory(3*SparseMemory.SPARSE_PAGE_SIZE+5, new Bus());
+		memory.load(new int[] {5, 6, 7});
+		assertEquals(1, memory.getAllocatedPages());
+		assertEquals(7, memory.getData(2));
+		memory.setData(memory.getSize()-1, -3);
+		assertEquals(2, memory.getAllocatedPages());
+		int copy[] = new int[memory.getSize()+1];
+		memory.copyTo(copy, 1);
+		assertEquals(5, copy[1]);
+		assertEquals(-3, copy[memory.getSize()]);
+		SparseMemory other = new SparseMemory(memory.getSize(), new Bus());
+		other.copyFrom(copy, 1);
+		assertEquals(2, other.getAllocatedPages());
+		assertEquals(6, other.getData(1));
+		assertEquals(-3, other.getData(memory.getSize()-1));
+	}
+
+	@Test
+	public void testFork() {
+		SparseMemory memory = new SparseMemory(1 << 20, new Bus());
+		memory.setData(5, 7);
+		memory.setData(memory.getSize()-1, -2);
+		SparseMemory child = (SparseMemory) memory.fork(new Bus());
+		assertEquals(2, child.getAllocatedPages());
+		assertEquals(7, child.getData(5));
+		assertEquals(-2, child.getData(memory.getSize()-1));
+		child.setData(5, 8); //the pages are not shared
+		assertEquals(7, memory.getData(5));
+	}
+
+	@Test
+	public void testNoDataList() {
+		SparseMemory memory = new SparseMemory(10, new Bus());
+		memory.setData(3, 7);
+		int copy[] = memory.getDataList(); //a copy of the positions
+		assertEquals(10, copy.length);
+		assertEquals(7, copy[3]);
+		copy[3] = 8;
+		assertEquals(7, memory.getData(3));
+	}
+
+}
@@ -7,6 +7,7 @@ public class Ula {
 	private Bus extBus2;
 	private Register reg1;
 	private Register reg2;
+	private Counters counters; //null if the operations are not counted
 	
 	
 	public Ula(Bus extBus1, Bus extBus2) {
@@ -18,10 +19,53 @@ public class Ula {
 		reg2 = new Register("UlaReg1", extBus1, intBus);
 	}
 
+	/**
+	 * This method makes the ula count its operations (null stops the counting)
+	 * @param counters
+	 */
+	public void setCounters(Counters counters) {
+		this.counters = counters;
+	}
+
+	/**
+	 * This method clears both ula registers and the internal bus
+	 */
+	public void reset() {
+		intBus.reset();
+		reg1.reset();
+		reg2.reset();
+	}
+
+	/**
+	 * This method returns the data of #reg directly, without using any bus
+	 * @param reg
+	 * @return
+	 */
+	public int getData(int reg) {
+		if (reg==0)
+			return reg1.getData();
+		else
+			return reg2.getData();
+	}
+
+	/**
+	 * This method sets the data of #reg directly, without using any bus
+	 * @param reg
+	 * @param data
+	 */
+	public void setData(int reg, int data) {
+		if (reg==0)
+			reg1.setData(data);
+		else
+			reg2.setData(data);
+	}
+
 	/**
 	 * This method adds the reg1 and reg2 values, storing the result in reg2.
 	 */
 	public void add() {
+		if (counters != null)
+			counters.count(Counters.ULA_OPERATIONS);
 		int res=0;
 		intBus.put(0);
 		reg1.internalRead(); //puts its data into the internal bus
@@ -37,6 +81,8 @@ public class Ula {
 	 * This processing uses a Ula's internal bus
 	 */
 	public void sub() {
+		if (counters != null)
+			counters.count(Counters.ULA_OPERATIONS);
 				
 		int res=0;
 		intBus.put(0);
@@ -53,6 +99,8 @@ public class Ula {
 	 * This method increments by 1 the value stored into reg2
 	 */
 	public void inc() {
+		if (counters != null)
+			counters.count(Counters.ULA_OPERATIONS);
 		
 		reg2.internalRead();
 		int res = intBus.get();
@@ -67,6 +115,8 @@ public class Ula {
 	 * @param reg
 	 */
 	public void store(int reg) {
+		if (counters != null)
+			counters.count(Counters.ULA_OPERATIONS);
 		if (reg==0)
 			reg1.store();
 		else
@@ -78,6 +128,8 @@ public class Ula {
 	 * @param reg
 	 */
 	public void read (int reg) {
+		if (counters != null)
+			counters.count(Counters.ULA_OPERATIONS);
 		if (reg==0)
 			reg1.read();
 		else
@@ -89,6 +141,8 @@ public class Ula {
 	 * @param reg
 	 */
 	public void internalStore(int reg) {
+		if (counters != null)
+			counters.count(Counters.ULA_OPERATIONS);
 		extBus1.put(extBus2.get()); //moving the data from a bus to another
 		//inserting the data in the correct register
 		if (reg==0)
@@ -102,6 +156,8 @@ public class Ula {
 	 * @param reg
 	 */
 	public void internalRead (int reg) {
+		if (counters != null)
+			counters.count(Counters.ULA_OPERATIONS);
 		if (reg==0)
 			reg1.read();
 		else